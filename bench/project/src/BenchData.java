@@ -0,0 +1,91 @@
+package project.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes synthetic products and accounts files for the benchmarks, in the
+ * same formats the store reads. The data comes from a fixed seed, so every
+ * run of a benchmark sees the same catalog.
+ *
+ * @author Josh Howson
+ */
+final class BenchData {
+
+    private static final String[] BRANDS = {"Acer", "Apple", "ASUS", "Dell", "HP", "Lenovo", "LG", "Logitech",
+        "Microsoft", "Samsung", "Sony", "Toshiba"};
+
+    private static final String[] ITEMS = {"Laptop", "Monitor", "Keyboard", "Mouse", "Headphones", "Phone",
+        "Tablet", "Speaker", "Webcam", "Router", "Printer", "Charger"};
+
+    private static final String[] WORDS = {"fast", "wireless", "portable", "gaming", "ultra", "slim", "quiet",
+        "bright", "durable", "compact", "premium", "ergonomic"};
+
+    private BenchData() {
+
+    }
+
+    /**
+     *
+     * @return a new temporary directory, deleted when the JVM exits
+     * @throws IOException if it cannot be created
+     */
+    static File tempDir() throws IOException {
+
+        File dir = Files.createTempDirectory("minusone-bench").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Writes a products file. LINES CONTAIN: (NAME,PRICE,IMAGEURL,DESCRIPTION)
+     *
+     * @param dir the directory to write it in
+     * @param count the number of products
+     * @return the file
+     * @throws IOException if it cannot be written
+     */
+    static File writeProducts(File dir, int count) throws IOException {
+
+        File file = new File(dir, "products-" + count + ".txt");
+        file.deleteOnExit();
+        Random rand = new Random(42);
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int i = 0; i < count; i++) {
+                String brand = BRANDS[rand.nextInt(BRANDS.length)];
+                String item = ITEMS[rand.nextInt(ITEMS.length)];
+                StringBuilder description = new StringBuilder();
+                for (int w = 0; w < 12; w++) {
+                    description.append(WORDS[rand.nextInt(WORDS.length)]).append(' ');
+                }
+                writer.println(brand + " " + item + " " + i + "," + (1 + rand.nextInt(200_000)) / 100.0 + ","
+                        + (1 + i % 34) + ".png," + description.toString().trim());
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes an accounts file. LINES CONTAIN: (USERNAME,PASSWORD,BALANCE).
+     * Account i is "user" + i with the password "pass" + i.
+     *
+     * @param dir the directory to write it in
+     * @param count the number of accounts
+     * @return the file
+     * @throws IOException if it cannot be written
+     */
+    static File writeAccounts(File dir, int count) throws IOException {
+
+        File file = new File(dir, "accounts-" + count + ".txt");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int i = 0; i < count; i++) {
+                writer.println("user" + i + ",pass" + i + "," + (i % 1000) + ".50");
+            }
+        }
+        return file;
+    }
+}
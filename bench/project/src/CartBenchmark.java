@@ -0,0 +1,94 @@
+package project.src;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for changing a cart and for turning carts and products into
+ * orders, by the number of different products in the cart.
+ *
+ * @author Josh Howson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartBenchmark {
+
+    /**
+     * The number of different products already in the cart
+     */
+    @Param({"1", "10", "100"})
+    public int cartLines;
+
+    private Product[] products;
+
+    private Cart cart;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        //more products than lines, so adds hit both new and existing lines
+        products = new Product[cartLines * 2];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product(i, "Product " + i, Money.ofCents(100 + i * 37), i + ".png", "");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fillCart() {
+
+        cart = new Cart();
+        for (int i = 0; i < cartLines; i++) {
+            cart.setQuantity(products[i], 1 + i % 3);
+        }
+    }
+
+    /**
+     * Adds a product to the cart and takes it out again, reading the total
+     * after each as the cart page does
+     */
+    @Benchmark
+    public void addRemove(Blackhole bh) {
+
+        Product p = products[next++ % products.length];
+        cart.addToCart(p);
+        bh.consume(cart.getTotalCents());
+        cart.removeFromCart(p);
+        bh.consume(cart.getTotalCents());
+    }
+
+    /**
+     * Turns the cart into an order, as checking out does
+     */
+    @Benchmark
+    public Order orderFromCart() {
+
+        return new Order(cart, cart.getTotal().plus(CheckoutEngine.SHIPPING));
+    }
+
+    /**
+     * A "Buy It Now" order of one product
+     */
+    @Benchmark
+    public Order orderOfOne() {
+
+        return new Order(products[next++ % products.length], Money.ZERO);
+    }
+}
@@ -0,0 +1,112 @@
+package project.src;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stress check for CheckoutEngine. Many threads buy products and add credit on
+ * a small number of shared accounts at the same time. Afterwards every
+ * account's balance must equal its starting balance plus everything credited
+ * minus everything successfully spent, must never be negative, and must have
+ * exactly one order per successful purchase. Any lost update or overdraft
+ * makes it fail.
+ *
+ * Kept with the benchmarks, not the app, and compiled by "ant bench-compile".
+ * Run with: java -cp build/classes:build/bench/classes
+ * project.src.CheckoutStress [threads] [accounts] [operations per thread]
+ *
+ * Exits with status 1 if a check fails.
+ *
+ * @author Josh Howson
+ */
+public class CheckoutStress {
+
+    /**
+     * Runs the stress check
+     *
+     * @param args optional thread count, account count and operations per
+     * thread
+     * @throws InterruptedException if interrupted while waiting for the
+     * threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        //a few products at different prices
+        Product[] products = new Product[10];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product(i, "Stress product " + i, Money.ofCents(100 + i * 137), i + ".png", "");
+        }
+
+        //accounts start with a little credit so purchases fail as well as succeed
+        long startBalance = 10_000;
+        Account[] accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Account("stress" + i, "password", Money.ofCents(startBalance));
+        }
+
+        //what each account should have had added, spent and ordered
+        AtomicLongArray credited = new AtomicLongArray(accountCount);
+        AtomicLongArray spent = new AtomicLongArray(accountCount);
+        AtomicLongArray bought = new AtomicLongArray(accountCount);
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < operations; i++) {
+                        int a = rand.nextInt(accountCount);
+                        if (rand.nextBoolean()) {
+                            long cents = 1 + rand.nextInt(500);
+                            CheckoutEngine.addCredit(accounts[a], Money.ofCents(cents));
+                            credited.addAndGet(a, cents);
+                        } else {
+                            Product p = products[rand.nextInt(products.length)];
+                            if (CheckoutEngine.buyNow(accounts[a], p) != null) {
+                                spent.addAndGet(a, p.getPrice().getCents());
+                                bought.incrementAndGet(a);
+                            }
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "checkout-stress-" + t).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        boolean passed = true;
+        for (int a = 0; a < accountCount; a++) {
+            long expected = startBalance + credited.get(a) - spent.get(a);
+            long actual = accounts[a].getBalance().getCents();
+            List<Order> orders = accounts[a].getOrders();
+            if (actual != expected || actual < 0 || orders.size() != bought.get(a)) {
+                passed = false;
+                System.out.println("FAIL " + accounts[a].getUsername() + ": balance " + actual
+                        + " expected " + expected + ", orders " + orders.size() + " expected " + bought.get(a));
+            }
+        }
+
+        long totalOps = (long) threads * operations;
+        System.out.printf("%d threads, %d accounts, %d operations in %.2fs (%.0f ops/s)%n",
+                threads, accountCount, totalOps, elapsed / 1e9, totalOps / (elapsed / 1e9));
+        System.out.println(passed ? "PASS: no lost updates or overdrafts" : "FAIL");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package project.src;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark for Inventory. Simulates a flash sale on one hot
+ * product, at 1, 2, 4... up to the given number of threads, and prints the
+ * throughput of each:
+ *
+ * synchronized and striped: every thread buys one unit at a time, never
+ * putting any back, until the freshly stocked product is sold out. Run
+ * against a single synchronized counter for comparison, and against the
+ * inventory's striped counter alone (no reservation bookkeeping).
+ *
+ * reserve+commit: every thread repeatedly reserves a unit for its cart and
+ * then either buys it or abandons the cart.
+ * Thread counts above the number of processors show how each copes
+ * with contention but cannot run any faster.
+ *
+ * Afterwards a sell-out check has every thread buy until the product runs
+ * out, and fails if more or fewer units were sold than were in stock.
+ *
+ * Kept with the benchmarks, not the app, and compiled by "ant bench-compile".
+ * Run with: java -cp build/classes:build/bench/classes
+ * project.src.InventoryBench [max threads] [operations per thread]
+ *
+ * Exits with status 1 if the sell-out check fails.
+ *
+ * @author Josh Howson
+ */
+public class InventoryBench {
+
+    /**
+     * The id of the hot product
+     */
+    private static final int HOT = 0;
+
+    /**
+     * The baseline: one counter behind one lock
+     */
+    private static class SynchronizedStock {
+
+        private long units;
+
+        SynchronizedStock(long units) {
+
+            this.units = units;
+        }
+
+        synchronized boolean take(int n) {
+
+            if (units < n) {
+                return false;
+            }
+            units -= n;
+            return true;
+        }
+    }
+
+    /**
+     * Something one thread does over and over
+     */
+    private interface Operation {
+
+        void run(int thread, int i);
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args optional maximum thread count and operations per thread
+     * @throws InterruptedException if interrupted while waiting for the
+     * threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        //one cart per thread
+        String[] holders = new String[maxThreads];
+        for (int t = 0; t < maxThreads; t++) {
+            holders[t] = "cart" + t;
+        }
+
+        System.out.println("threads  synchronized ops/s  striped ops/s  reserve+commit ops/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            //warm up each, then measure. The drains get exactly enough stock
+            //to sell out on their last operation.
+            run(threads, operations / 10, drainNaive(threads, operations / 10));
+            run(threads, operations / 10, drainStriped(threads, operations / 10, maxThreads * 2));
+            double naiveRate = run(threads, operations, drainNaive(threads, operations));
+            double stripedRate = run(threads, operations, drainStriped(threads, operations, maxThreads * 2));
+
+            //enough stock that it does not run out during the run
+            Inventory inventory = new Inventory(maxThreads * 2, Inventory.DEFAULT_RESERVATION_MILLIS);
+            inventory.setStock(HOT, Long.MAX_VALUE / 2);
+            run(threads, operations / 10, (t, i) -> inventoryOp(inventory, holders[t], i));
+            double reserveRate = run(threads, operations, (t, i) -> inventoryOp(inventory, holders[t], i));
+
+            System.out.println(String.format("%7d  %18.0f  %13.0f  %20.0f", threads, naiveRate, stripedRate, reserveRate));
+        }
+
+        if (!sellOut(maxThreads, 100_000)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Buys one unit at a time from a freshly stocked synchronized counter
+     *
+     * @param threads the number of buyers
+     * @param operations the number of units each buyer takes
+     * @return the operation
+     */
+    private static Operation drainNaive(int threads, int operations) {
+
+        SynchronizedStock stock = new SynchronizedStock((long) threads * operations);
+        return (t, i) -> stock.take(1);
+    }
+
+    /**
+     * The same as drainNaive, on the inventory's striped counter
+     *
+     * @param threads the number of buyers
+     * @param operations the number of units each buyer takes
+     * @param stripes the number of stripes
+     * @return the operation
+     */
+    private static Operation drainStriped(int threads, int operations, int stripes) {
+
+        Inventory inventory = new Inventory(stripes, Inventory.DEFAULT_RESERVATION_MILLIS);
+        inventory.setStock(HOT, (long) threads * operations);
+        return (t, i) -> inventory.take(HOT, 1);
+    }
+
+    /**
+     * One cart on the inventory: reserve a unit, then commit or release it
+     */
+    private static void inventoryOp(Inventory inventory, String holder, int i) {
+
+        if (inventory.reserve(holder, HOT, 1)) {
+            if ((i & 1) == 1) {
+                inventory.releaseAll(holder);
+            } else {
+                inventory.commit(holder);
+            }
+        }
+    }
+
+    /**
+     * Runs an operation on several threads at once
+     *
+     * @param threads the number of threads
+     * @param operations the number of operations each thread does
+     * @param op the operation
+     * @return the operations per second across every thread
+     */
+    private static double run(int threads, int operations, Operation op) throws InterruptedException {
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < operations; i++) {
+                        op.run(thread, i);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        return (double) threads * operations * 1_000_000_000L / elapsed;
+    }
+
+    /**
+     * Has every thread buy the hot product, through reservations and straight
+     * away, until it runs out
+     *
+     * @param threads the number of buyers
+     * @param stock the units in stock at the start
+     * @return true if exactly the units in stock were sold
+     */
+    private static boolean sellOut(int threads, long stock) throws InterruptedException {
+
+        Inventory inventory = new Inventory(threads, Inventory.DEFAULT_RESERVATION_MILLIS);
+        inventory.setStock(HOT, stock);
+        AtomicLong sold = new AtomicLong();
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String holder = "buyer" + t;
+            int thread = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    //reserving threads buy a few at a time, the others one
+                    int quantity = thread % 2 == 0 ? 1 + thread % 3 : 1;
+                    while (true) {
+                        if (thread % 2 == 0) {
+                            if (!inventory.reserve(holder, HOT, quantity)) {
+                                //a few units may be left that are fewer than we want
+                                if (quantity == 1) {
+                                    break;
+                                }
+                                quantity = 1;
+                                continue;
+                            }
+                            inventory.commit(holder);
+                        } else if (!inventory.take(HOT, 1)) {
+                            break;
+                        }
+                        sold.addAndGet(quantity);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+
+        long left = inventory.getAvailable(HOT);
+        boolean ok = sold.get() == stock && left == 0;
+        System.out.println((ok ? "PASS" : "FAIL") + ": sold " + sold.get() + " of " + stock
+                + " units, " + left + " left");
+        return ok;
+    }
+}
@@ -0,0 +1,84 @@
+package project.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for signing in, by account directory size. Store.login() only
+ * passes the details on to StoreEngine.login(), so the engine is measured
+ * directly.
+ *
+ * @author Josh Howson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginBenchmark {
+
+    /**
+     * The number of accounts in the directory
+     */
+    @Param({"100", "10000", "100000"})
+    public int accountCount;
+
+    private StoreEngine engine;
+
+    private String[] usernames;
+
+    private String[] passwords;
+
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+
+        File dir = BenchData.tempDir();
+        engine = new StoreEngine(new File(dir, "products.txt"), BenchData.writeAccounts(dir, accountCount));
+        engine.loadAccounts();
+
+        //build the strings up front so only the login is measured
+        usernames = new String[accountCount];
+        passwords = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            usernames[i] = "user" + i;
+            passwords[i] = "pass" + i;
+        }
+    }
+
+    /**
+     * Signs in to a different account each time, then signs out again so the
+     * session map does not grow
+     */
+    @Benchmark
+    public Session login() {
+
+        int i = next++ % accountCount;
+        Session s = engine.login(usernames[i], passwords[i]);
+        engine.logout(s.getId());
+        return s;
+    }
+
+    /**
+     * A wrong password for an existing account
+     */
+    @Benchmark
+    public Session loginFailed() {
+
+        return engine.login(usernames[next++ % accountCount], "wrong");
+    }
+}
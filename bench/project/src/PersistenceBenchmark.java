@@ -0,0 +1,94 @@
+package project.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for reading and writing the data files, by catalog and account
+ * directory size. These are what Store.readProducts(), readAccounts() and
+ * saveAccounts() run, without their JavaFX error alerts.
+ *
+ * @author Josh Howson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    /**
+     * An engine with a products file of catalogSize products
+     */
+    @State(Scope.Benchmark)
+    public static class Products {
+
+        @Param({"100", "10000", "100000"})
+        public int catalogSize;
+
+        StoreEngine engine;
+
+        @Setup
+        public void setup() throws IOException {
+
+            File dir = BenchData.tempDir();
+            engine = new StoreEngine(BenchData.writeProducts(dir, catalogSize), new File(dir, "accounts.txt"));
+        }
+    }
+
+    /**
+     * An engine with an accounts file of accountCount accounts
+     */
+    @State(Scope.Benchmark)
+    public static class Accounts {
+
+        @Param({"100", "10000", "100000"})
+        public int accountCount;
+
+        StoreEngine engine;
+
+        @Setup
+        public void setup() throws IOException {
+
+            File dir = BenchData.tempDir();
+            engine = new StoreEngine(new File(dir, "products.txt"), BenchData.writeAccounts(dir, accountCount));
+            engine.loadAccounts();
+        }
+    }
+
+    @Benchmark
+    public StoreEngine readProducts(Products state) throws IOException {
+
+        state.engine.loadProducts();
+        return state.engine;
+    }
+
+    @Benchmark
+    public StoreEngine readAccounts(Accounts state) throws IOException {
+
+        state.engine.loadAccounts();
+        return state.engine;
+    }
+
+    /**
+     * Writes the same accounts back to the file they were read from
+     */
+    @Benchmark
+    public StoreEngine saveAccounts(Accounts state) throws IOException {
+
+        state.engine.saveAccounts();
+        return state.engine;
+    }
+}
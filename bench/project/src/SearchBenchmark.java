@@ -0,0 +1,85 @@
+package project.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for searching the catalog, by catalog size. Store.searchQuery()
+ * only passes the query on to StoreEngine.search(), so the engine is measured
+ * directly to keep JavaFX out of the benchmark.
+ *
+ * @author Josh Howson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    /**
+     * The number of products in the catalog
+     */
+    @Param({"100", "10000", "100000"})
+    public int catalogSize;
+
+    /**
+     * The query searched for. "sam" matches name prefixes, "mouse" the middle
+     * of names and "ergonomic" only descriptions, so each pass is covered.
+     */
+    @Param({"sam", "mouse", "ergonomic"})
+    public String query;
+
+    private StoreEngine engine;
+
+    @Setup
+    public void setup() throws IOException {
+
+        File dir = BenchData.tempDir();
+        engine = new StoreEngine(BenchData.writeProducts(dir, catalogSize), new File(dir, "accounts.txt"));
+        engine.loadProducts();
+        engine.refreshSuggestions();
+    }
+
+    /**
+     * Every match at once, as the old search page did
+     */
+    @Benchmark
+    public ArrayList<Product> searchAll() {
+
+        return engine.search(query);
+    }
+
+    /**
+     * The first page of matches, as the search page does now
+     */
+    @Benchmark
+    public SearchPage searchFirstPage() {
+
+        return engine.search(query, null, 24);
+    }
+
+    /**
+     * Autocomplete for the query, as the search field does on every keystroke
+     */
+    @Benchmark
+    public List<Product> suggest() {
+
+        return engine.suggest(query, 8);
+    }
+}
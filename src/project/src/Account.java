@@ -1,16 +1,16 @@
 package project.src;
 
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
-import java.util.Optional;
-import javafx.geometry.Insets;
-import javafx.scene.control.Alert;
-import javafx.scene.control.ButtonType;
-import javafx.scene.control.PasswordField;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Account is a class that holds all data about a user. Can get username,
- * balance and add credit and controls adding to and removing from cart as well
- * as purchasing an order.
+ * balance and add credit and keeps the account's orders. Carts belong to the
+ * signed in Session and purchases are made through CheckoutEngine.
  *
  * TODO: check that username is not in use before creating the object
  *
@@ -29,31 +29,38 @@ public class Account {
     private String password;
 
     /**
-     * Account's current balance
+     * Account's current balance, in cents. Only changed with compare-and-set
+     * (see debit() and credit()) so that concurrent checkouts and credits
+     * never lose an update or overdraw the account.
      */
-    private double balance;
+    private final AtomicLong balance;
     /**
-     * Cart belonging to the Account. Contains all added items
+     * Contains a list of all orders placed by the Account. Synchronized
+     * because orders may be placed from more than one thread.
      */
-    private Cart cart;
+    private final List<Order> orders;
     /**
-     * Contains a list of all orders placed by the Account
+     * Notifies listeners (such as the page header) when the balance changes so
+     * that they do not have to poll getBalance()
      */
-    private final ArrayList<Order> orders;
+    private final PropertyChangeSupport changes = new PropertyChangeSupport(this);
 
     /**
      * Constructor for Account. Default value for balance is zero.
      *
      * @param username The value to set the username
      * @param password The value to set the password
+     * @throws IllegalArgumentException if either contains a comma or a
+     * control character
      */
     public Account(String username, String password) {
 
-        this.cart = new Cart();
+        checkField("Username", username);
+        checkField("Password", password);
         this.username = username;
         this.password = password;
-        balance = 0;
-        orders = new ArrayList<>();
+        balance = new AtomicLong();
+        orders = Collections.synchronizedList(new ArrayList<>());
     }
 
     /**
@@ -63,41 +70,62 @@ public class Account {
      * @param username The account's username
      * @param password The account's password
      * @param balance The account's balance
+     * @throws IllegalArgumentException if the username or password contains a
+     * comma or a control character
      */
-    public Account(String username, String password, double balance) {
+    public Account(String username, String password, Money balance) {
 
-        this.cart = new Cart();
+        checkField("Username", username);
+        checkField("Password", password);
         this.username = username;
         this.password = password;
-        this.balance = balance;
-        orders = new ArrayList<>();
+        this.balance = new AtomicLong(balance.getCents());
+        orders = Collections.synchronizedList(new ArrayList<>());
     }
 
     /**
+     * Checks that a username or password can be written to the accounts file.
+     * Accounts are saved one per line as comma separated values, so a comma
+     * or a line break (eg: "%0A" in a sign up request) would corrupt the file
+     * and stop the store from starting.
      *
-     * @return the account's username
+     * @param what what the value is, for the error message, eg: "Username"
+     * @param value the value to check
+     * @throws IllegalArgumentException if the value contains a comma or a
+     * control character
      */
-    public String getUsername() {
-
-        return username;
+    static void checkField(String what, String value) throws IllegalArgumentException {
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            //Scanner also ends lines at the Unicode line and paragraph separators
+            if (c == ',' || Character.isISOControl(c) || Character.getType(c) == Character.LINE_SEPARATOR
+                    || Character.getType(c) == Character.PARAGRAPH_SEPARATOR) {
+                throw new IllegalArgumentException(what + " must not contain commas or control characters");
+            }
+        }
     }
 
     /**
      *
-     * @return the account's cart
+     * @return the account's username
      */
-    public Cart getCart() {
+    public String getUsername() {
 
-        return cart;
+        return username;
     }
 
     /**
+     * Returns a copy of the account's orders, so the caller can go through
+     * them while other orders are being placed.
      *
      * @return the account's orders
      */
-    public ArrayList<Order> getOrders() {
+    public List<Order> getOrders() {
 
-        return orders;
+        synchronized (orders) {
+            return new ArrayList<>(orders);
+        }
     }
 
     /**
@@ -113,9 +141,88 @@ public class Account {
      *
      * @return the account's current balance
      */
-    public double getBalance() {
+    public Money getBalance() {
+
+        return Money.ofCents(balance.get());
+    }
+
+    /**
+     * Atomically subtracts an amount from the balance if the balance is high
+     * enough. Retries with compare-and-set until it either succeeds or sees a
+     * balance that is too low, so two checkouts can never both spend the same
+     * credits.
+     *
+     * @param amount the amount to take from the balance
+     * @return true if the amount was taken, false if there was not enough
+     * @throws IllegalArgumentException if the given amount is a negative value
+     */
+    boolean debit(Money amount) throws IllegalArgumentException {
+
+        long cents = amount.getCents();
+        if (cents < 0) {
+            throw new IllegalArgumentException("Amount must be a positive value");
+        }
+
+        long oldBalance;
+        do {
+            oldBalance = balance.get();
+            if (oldBalance < cents) {
+                return false;
+            }
+        } while (!balance.compareAndSet(oldBalance, oldBalance - cents));
+
+        balanceChanged(oldBalance, oldBalance - cents);
+        return true;
+    }
+
+    /**
+     * Atomically adds an amount to the balance
+     *
+     * @param cents the amount to add, in cents
+     */
+    private void credit(long cents) {
+
+        long oldBalance;
+        long newBalance;
+        do {
+            oldBalance = balance.get();
+            newBalance = Math.addExact(oldBalance, cents);
+        } while (!balance.compareAndSet(oldBalance, newBalance));
+
+        balanceChanged(oldBalance, newBalance);
+    }
+
+    /**
+     * Tells any listeners that the balance has changed
+     *
+     * @param oldBalance the balance before the change, in cents
+     * @param newBalance the balance after the change, in cents
+     */
+    private void balanceChanged(long oldBalance, long newBalance) {
 
-        return balance;
+        changes.firePropertyChange("balance", Money.ofCents(oldBalance), Money.ofCents(newBalance));
+    }
+
+    /**
+     * Registers a listener that is called whenever the named property changes.
+     * Used to bind the balance shown in the page header to this account.
+     *
+     * @param propertyName the name of the property, eg: "balance"
+     * @param listener the listener to add
+     */
+    public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener) {
+
+        changes.addPropertyChangeListener(propertyName, listener);
+    }
+
+    /**
+     *
+     * @param propertyName the name of the property the listener was added to
+     * @param listener the listener to remove
+     */
+    public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener) {
+
+        changes.removePropertyChangeListener(propertyName, listener);
     }
 
     /**
@@ -125,7 +232,7 @@ public class Account {
      */
     public String getBalanceAsString() {
 
-        return String.format("$%.2f", balance);
+        return Money.appendTo(new StringBuilder(12), balance.get()).toString();
     }
 
     /**
@@ -135,10 +242,10 @@ public class Account {
      * @param amount The amount of credits to add to the balance
      * @throws IllegalArgumentException if the given amount is a negative value
      */
-    public void addCredit(double amount) throws IllegalArgumentException {
+    public void addCredit(Money amount) throws IllegalArgumentException {
 
-        if (amount >= 0) {
-            balance += amount;
+        if (!amount.isNegative()) {
+            credit(amount.getCents());
         } else {
             throw new IllegalArgumentException("Amount must be a positive value");
         }
@@ -158,9 +265,12 @@ public class Account {
      * old password
      * @throws IllegalArgumentException if the given oldPass does not match the
      * current password
+     * @throws IllegalArgumentException if the given newPass contains a comma
+     * or a control character
      */
     public void setPassword(String oldPass, String newPass) {
 
+        checkField("Password", newPass);
         if (oldPass.equals(this.password)) {
             if (!oldPass.equals(newPass)) {
                 this.password = newPass;
@@ -173,23 +283,14 @@ public class Account {
     }
 
     /**
-     * Adds the given item to the account's cart.
+     * Adds a newly placed order to the account's orders. Called by
+     * CheckoutEngine once the order has been paid for.
      *
-     * @param p The item to be added to the cart
+     * @param o the order that was placed
      */
-    public void addToCart(Product p) {
-        
-        cart.addToCart(p);
-    }
+    void addOrder(Order o) {
 
-    /**
-     * Removes the given item from the cart
-     *
-     * @param p The item to be added to the cart
-     */
-    public void removeFromCart(Product p) {
-        
-        cart.removeFromCart(p);
+        orders.add(o);
     }
 
     /**
@@ -199,145 +300,7 @@ public class Account {
      */
     public String toCSV() {
         
-        String format = "%s,%s,%.2f";
-        return String.format(format, username, password, balance);
-    }
-
-    /**
-     * If account has enough credits, create new order and subtract credits.
-     * User must re-enter password
-     *
-     * wow, this method got bigger than I expected. If I have time, I'll
-     * consolidate the alerts into a more compact method
-     */
-    public void purchase() {
-
-        //get quantity and total
-        int quantity = cart.getItemCount();
-
-        //add shipping to total ($7.80)
-        double amount = cart.getTotal() + 7.8;
-
-        //enter password alert
-        Alert confirmPassword = new Alert(Alert.AlertType.INFORMATION);
-        confirmPassword.setHeaderText("Enter password to continue");
-        PasswordField passwordField = new PasswordField();
-        confirmPassword.getDialogPane().setContent(passwordField);
-        confirmPassword.getDialogPane().setPadding(new Insets(10));
-
-        if (balance >= amount) {
-            //confirm correct password before purchasing
-            Optional<ButtonType> result = confirmPassword.showAndWait();
-            result.ifPresent(e -> {
-                if (result.get() == ButtonType.OK) {
-                    if (passwordField.getText().equals(Store.currentAccount.getPassword())) {
-                        //attempt topurchase
-
-                        orders.add(new Order(cart.getItems(), amount, quantity));
-                        balance -= amount;
-
-                        //save to file
-                        Store.saveAccounts();
-
-                        Alert purchaseSuccess = new Alert(Alert.AlertType.INFORMATION);
-                        purchaseSuccess.setTitle("Success");
-                        purchaseSuccess.setHeaderText("Your purchase was successful");
-                        purchaseSuccess.setContentText("Your order is on the way!");
-                        purchaseSuccess.show();
-
-                        //TODO: if I get view orders screen working, redirect to that screen instead
-                        SceneLoader.currentStage.setScene(SceneLoader.getOrderView(orders));
-
-                        //remove items from cart when purchased
-                        cart = new Cart();
-
-                    } else {
-                        //not enough credits
-                        Alert wrongPass = new Alert(Alert.AlertType.ERROR);
-                        wrongPass.setTitle("Error");
-                        wrongPass.setHeaderText("Incorrect Password");
-                        wrongPass.setContentText("Please try again");
-                        wrongPass.show();
-
-                    }
-                }
-            });
-
-        } else {
-            //not enough credits
-            Alert notEnough = new Alert(Alert.AlertType.ERROR);
-            notEnough.setTitle("Error");
-            notEnough.setHeaderText("Not enough credits");
-            notEnough.setContentText("Use the 'Add credit' button to increase your balance");
-            notEnough.show();
-        }
-    }
-
-    /**
-     * Overloads the purchase method, passing only one product instead of an
-     * entire cart of products.
-     *
-     * If account has enough credits, create new order and subtract credits.
-     * User must re-enter password.
-     *
-     * @param p
-     */
-    public void purchase(Product p) {
-
-        double amount = p.getPrice();
-        int quantity = 1;
-        Cart tempCart = new Cart();
-        tempCart.addToCart(p);
-
-        //enter password alert
-        Alert confirmPassword = new Alert(Alert.AlertType.INFORMATION);
-        confirmPassword.setHeaderText("Enter password to continue");
-        PasswordField passwordField = new PasswordField();
-        confirmPassword.getDialogPane().setContent(passwordField);
-        confirmPassword.getDialogPane().setPadding(new Insets(10));
-
-        if (balance >= amount) {
-            //confirm correct password before purchasing
-            Optional<ButtonType> result = confirmPassword.showAndWait();
-            result.ifPresent(e -> {
-                if (result.get() == ButtonType.OK) {
-                    if (passwordField.getText().equals(Store.currentAccount.getPassword())) {
-                        //attempt topurchase
-
-                        orders.add(new Order(tempCart.getItems(), amount, quantity));
-                        balance -= amount;
-
-                        //save to file
-                        Store.saveAccounts();
-
-                        Alert purchaseSuccess = new Alert(Alert.AlertType.INFORMATION);
-                        purchaseSuccess.setTitle("Success");
-                        purchaseSuccess.setHeaderText("Your purchase was successful");
-                        purchaseSuccess.setContentText("Your order is on the way!");
-                        purchaseSuccess.show();
-
-                        //TODO: if I get view orders screen working, redirect to that screen instead
-                        SceneLoader.currentStage.setScene(SceneLoader.getOrderView(orders));
-
-                    } else {
-                        //not enough credits
-                        Alert wrongPass = new Alert(Alert.AlertType.ERROR);
-                        wrongPass.setTitle("Error");
-                        wrongPass.setHeaderText("Incorrect Password");
-                        wrongPass.setContentText("Please try again");
-                        wrongPass.show();
-
-                    }
-                }
-            });
-
-        } else {
-            //not enough credits
-            Alert notEnough = new Alert(Alert.AlertType.ERROR);
-            notEnough.setTitle("Error");
-            notEnough.setHeaderText("Not enough credits");
-            notEnough.setContentText("Use the 'Add credit' button to increase your balance");
-            notEnough.show();
-        }
+        String format = "%s,%s,%s";
+        return String.format(format, username, password, getBalance().toPlainString());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,530 @@
+package project.src;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * The store's images bundled into one file, which is memory-mapped when it is
+ * opened. Looking an image up is then a slice of the mapping instead of a
+ * classpath lookup and a file open per image, and the operating system keeps
+ * the images in its page cache rather than the Java heap holding a copy.
+ *
+ * Each image is kept as its original file, and optionally with a thumbnail
+ * that has already been decoded and shrunk, so small views (search results,
+ * the cart, order history) can be drawn straight from the mapped pixels
+ * without decoding the full image at all.
+ *
+ * The file is laid out as follows, with every number a big-endian int:
+ *
+ * header: MAGIC, VERSION, the thumbnail width, the number of images and the
+ * offset of the index.
+ *
+ * data: each image's file as it was, followed by its thumbnail, if it has
+ * one, as premultiplied BGRA pixels (4 bytes each) row by row.
+ *
+ * index: for each image, the length of its name then the name in UTF-8, the
+ * offset and length of its file and the offset, width and height of its
+ * thumbnail (offset -1 if it has none).
+ *
+ * Images are named by their URL in the store, eg: "images/1.png". Every
+ * offset is checked against the size of the file when the pack is opened, so
+ * a damaged pack is refused rather than read outside the mapping.
+ *
+ * Packs are built from a directory of images with: java -cp build/classes
+ * project.src.AssetPack [--images DIR] [--out FILE] [--thumbnail WIDTH]
+ * (the build does this after compiling). The desktop app opens images.pack
+ * from its working directory at startup, or the file named by the system
+ * property "minusone.assets", and falls back to the classpath without one.
+ *
+ * An opened pack is read-only and may be used from any thread.
+ *
+ * @author Josh Howson
+ */
+public final class AssetPack {
+
+    /**
+     * The first int of every pack: "MOAP"
+     */
+    public static final int MAGIC = 0x4D4F4150;
+
+    /**
+     * The version of the layout this class reads and writes
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The width thumbnails are shrunk to by default, the width of the search
+     * results' thumbnails
+     */
+    public static final int DEFAULT_THUMBNAIL_WIDTH = 176;
+
+    /**
+     * What every image's name starts with, as in the store's image URLs
+     */
+    private static final String PREFIX = "images/";
+
+    /**
+     * The size of the header, in bytes
+     */
+    private static final int HEADER_LENGTH = 5 * Integer.BYTES;
+
+    /**
+     * The whole file, mapped read-only. Never read from directly: each read
+     * works on its own duplicate, so readers do not share a position.
+     */
+    private final ByteBuffer mapping;
+
+    /**
+     * Each image's entry, by name
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * The width the pack's thumbnails were shrunk to. Images narrower than
+     * this have thumbnails of their own size.
+     */
+    private final int thumbnailWidth;
+
+    /**
+     * Reads the index of a mapped pack
+     *
+     * @param mapping the whole file
+     * @param name the file's name, for error messages
+     * @throws IllegalArgumentException if the file is not a pack, or its
+     * index points outside the file
+     */
+    private AssetPack(ByteBuffer mapping, String name) {
+
+        this.mapping = mapping;
+        ByteBuffer in = mapping.duplicate();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException(name + " is not an asset pack");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException(name + " is version " + version + ", expected " + VERSION);
+            }
+            thumbnailWidth = in.getInt();
+            int count = in.getInt();
+            int indexOffset = in.getInt();
+            checkRange(name, "index", indexOffset, 0);
+            ((Buffer) in).position(indexOffset);
+
+            entries = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int nameLength = in.getInt();
+                if (nameLength < 0 || nameLength > in.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                byte[] nameBytes = new byte[nameLength];
+                in.get(nameBytes);
+                Entry entry = new Entry(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt());
+                String image = new String(nameBytes, StandardCharsets.UTF_8);
+                checkRange(name, image, entry.offset, entry.length);
+                if (entry.thumbnailOffset != -1) {
+                    if (entry.thumbnailWidth <= 0 || entry.thumbnailHeight <= 0
+                            || entry.thumbnailWidth > mapping.capacity() / 4 / entry.thumbnailHeight) {
+                        throw new IllegalArgumentException(name + " has a bad thumbnail size for " + image);
+                    }
+                    checkRange(name, image, entry.thumbnailOffset, entry.thumbnailWidth * entry.thumbnailHeight * 4);
+                }
+                entries.put(image, entry);
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException(name + " is cut short or its index is damaged");
+        }
+    }
+
+    /**
+     * Maps a pack into memory and reads its index
+     *
+     * @param file the pack
+     * @return the opened pack
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a pack, is damaged
+     * or is too big to map in one piece (2GB)
+     */
+    public static AssetPack open(File file) throws IOException {
+
+        ByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + " is too big to map");
+            }
+            //the mapping stays valid after the channel is closed
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new AssetPack(mapping, file.toString());
+    }
+
+    /**
+     * Builds a pack from the command line. Options, all optional:
+     *
+     * --images DIR: the directory of images to pack (default src/images)
+     *
+     * --out FILE: the pack to write (default images.pack). Replaced if it
+     * exists. If it cannot be replaced because a running app has it open
+     * (Windows does not allow that), the old pack is kept, a message is
+     * printed and the build carries on; the next build tries again.
+     *
+     * --thumbnail WIDTH: the width to shrink thumbnails to (default
+     * DEFAULT_THUMBNAIL_WIDTH), 0 for no thumbnails
+     *
+     * @param args the command line arguments
+     * @throws IOException if an image cannot be read or the pack cannot be
+     * written
+     */
+    public static void main(String[] args) throws IOException {
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        File images = new File(options.getOrDefault("images", "src/images"));
+        File out = new File(options.getOrDefault("out", "images.pack"));
+        int thumbnailWidth = Integer.parseInt(options.getOrDefault("thumbnail", String.valueOf(DEFAULT_THUMBNAIL_WIDTH)));
+
+        long start = System.nanoTime();
+        int count;
+        try {
+            count = write(images, out, thumbnailWidth);
+        } catch (IllegalStateException ex) {
+            System.out.println(ex.getMessage());
+            return;
+        }
+        System.out.println(String.format("Packed %,d images into %s (%,d bytes) in %.1fs",
+                count, out, out.length(), (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Writes a pack of every image in a directory. Images are read one at a
+     * time, so the directory can be bigger than memory.
+     *
+     * The pack is written to a temporary file that then replaces the old
+     * one, so a running store that has the old pack mapped keeps reading the
+     * old file rather than one being rewritten under it. Windows does not
+     * allow a mapped file to be replaced at all; the old pack is then kept
+     * and an IllegalStateException thrown.
+     *
+     * @param images the directory of images. Every file in it is packed;
+     * thumbnails are made for the ones Java can decode (PNG, JPEG, GIF and
+     * BMP).
+     * @param out the pack to write
+     * @param thumbnailWidth the width to shrink thumbnails to, 0 for no
+     * thumbnails
+     * @return the number of images packed
+     * @throws IOException if an image cannot be read or the pack cannot be
+     * written
+     * @throws IllegalArgumentException if images is not a directory, the
+     * thumbnail width is negative or the pack would be bigger than 2GB
+     * @throws IllegalStateException if out exists and could not be replaced,
+     * eg: because a running app has it mapped (the new pack is thrown away)
+     */
+    public static int write(File images, File out, int thumbnailWidth) throws IOException {
+
+        File[] files = images.listFiles(File::isFile);
+        if (files == null) {
+            throw new IllegalArgumentException(images + " is not a directory");
+        }
+        if (thumbnailWidth < 0) {
+            throw new IllegalArgumentException("Thumbnail width cannot be negative: " + thumbnailWidth);
+        }
+        Arrays.sort(files);
+
+        File temp = new File(out.getAbsoluteFile().getParentFile(), out.getName() + ".tmp");
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        long offset = HEADER_LENGTH;
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            //the index offset is filled in once the data is written
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(thumbnailWidth);
+            data.writeInt(files.length);
+            data.writeInt(0);
+
+            for (File file : files) {
+                byte[] bytes = Files.readAllBytes(file.toPath());
+                BufferedImage thumbnail = thumbnailWidth == 0 ? null : thumbnail(bytes, thumbnailWidth);
+                long fileOffset = offset;
+                long thumbnailOffset = thumbnail == null ? -1 : offset + bytes.length;
+                data.write(bytes);
+                offset += bytes.length;
+                if (thumbnail != null) {
+                    offset += writePixels(thumbnail, data);
+                }
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The images in " + images + " are too big to pack");
+                }
+
+                byte[] name = (PREFIX + file.getName()).getBytes(StandardCharsets.UTF_8);
+                indexOut.writeInt(name.length);
+                indexOut.write(name);
+                indexOut.writeInt((int) fileOffset);
+                indexOut.writeInt(bytes.length);
+                indexOut.writeInt((int) thumbnailOffset);
+                indexOut.writeInt(thumbnail == null ? 0 : thumbnail.getWidth());
+                indexOut.writeInt(thumbnail == null ? 0 : thumbnail.getHeight());
+            }
+            if (offset + index.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The images in " + images + " are too big to pack");
+            }
+            index.writeTo(data);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.seek(HEADER_LENGTH - Integer.BYTES);
+            file.writeInt((int) offset);
+        }
+        try {
+            Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            if (!out.exists()) {
+                throw ex;
+            }
+            Files.deleteIfExists(temp.toPath());
+            throw new IllegalStateException(out + " was not replaced, it may be open in a running app ("
+                    + ex + "). Kept the old pack; build again once the app is closed.");
+        }
+        return files.length;
+    }
+
+    /**
+     * Decodes an image and shrinks it to a thumbnail. Images no wider than
+     * the thumbnail keep their size.
+     *
+     * @param bytes the image file
+     * @param width the width to shrink to
+     * @return the thumbnail, with premultiplied alpha, or null if the image
+     * cannot be decoded
+     * @throws IOException if the image is damaged
+     */
+    private static BufferedImage thumbnail(byte[] bytes, int width) throws IOException {
+
+        BufferedImage image = javax.imageio.ImageIO.read(new ByteArrayInputStream(bytes));
+        if (image == null) {
+            return null;
+        }
+        int w = Math.min(width, image.getWidth());
+        int h = Math.max(1, (int) Math.round((double) image.getHeight() * w / image.getWidth()));
+
+        BufferedImage thumbnail = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = thumbnail.createGraphics();
+        //area averaging looks better than interpolation when shrinking a lot
+        g.drawImage(image.getScaledInstance(w, h, java.awt.Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        g.dispose();
+        return thumbnail;
+    }
+
+    /**
+     * Writes a thumbnail's pixels as premultiplied BGRA
+     *
+     * @param thumbnail the thumbnail, as made by thumbnail()
+     * @param out where to write the pixels
+     * @return the number of bytes written
+     * @throws IOException if the pixels cannot be written
+     */
+    private static int writePixels(BufferedImage thumbnail, DataOutputStream out) throws IOException {
+
+        int[] pixels = ((DataBufferInt) thumbnail.getRaster().getDataBuffer()).getData();
+        for (int argb : pixels) {
+            //an ARGB int's bytes from lowest to highest are B, G, R, A
+            out.writeInt(Integer.reverseBytes(argb));
+        }
+        return pixels.length * 4;
+    }
+
+    /**
+     *
+     * @param url the image's URL, eg: "images/1.png"
+     * @return true if the pack has the image
+     */
+    public boolean contains(String url) {
+
+        return entries.containsKey(url);
+    }
+
+    /**
+     *
+     * @return the number of images in the pack
+     */
+    public int size() {
+
+        return entries.size();
+    }
+
+    /**
+     * Gets an image's file, as it was packed, without copying it
+     *
+     * @param url the image's URL, eg: "images/1.png"
+     * @return a read-only buffer over the image's bytes in the mapping, or
+     * null if the pack does not have the image
+     */
+    public ByteBuffer getImageData(String url) {
+
+        Entry entry = entries.get(url);
+        return entry == null ? null : slice(entry.offset, entry.length);
+    }
+
+    /**
+     * Loads an image from the pack
+     *
+     * @param url the image's URL, eg: "images/1.png"
+     * @return the image, or null if the pack does not have it
+     */
+    public Image loadImage(String url) {
+
+        ByteBuffer data = getImageData(url);
+        return data == null ? null : new Image(new BufferInputStream(data));
+    }
+
+    /**
+     * Loads an image's thumbnail from the pack, copying its decoded pixels
+     * straight out of the mapping.
+     *
+     * @param url the image's URL, eg: "images/1.png"
+     * @param width the width the image will be shown at
+     * @return the thumbnail, or null if the pack has no thumbnail of the
+     * image at least that wide (or as wide as the image itself)
+     */
+    public Image loadThumbnail(String url, int width) {
+
+        Entry entry = entries.get(url);
+        if (entry == null || entry.thumbnailOffset == -1
+                || (entry.thumbnailWidth < width && entry.thumbnailWidth == thumbnailWidth)) {
+            return null;
+        }
+        int w = entry.thumbnailWidth;
+        int h = entry.thumbnailHeight;
+        WritableImage image = new WritableImage(w, h);
+        image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getByteBgraPreInstance(),
+                slice(entry.thumbnailOffset, w * h * 4), w * 4);
+        return image;
+    }
+
+    /**
+     * Checks that a range is inside the file
+     *
+     * @param name the file's name, for the error message
+     * @param what what the range holds, for the error message
+     * @param offset where the range starts
+     * @param length the length of the range
+     * @throws IllegalArgumentException if the range is not inside the file
+     */
+    private void checkRange(String name, String what, int offset, int length) {
+
+        if (offset < 0 || length < 0 || offset > mapping.capacity() - length) {
+            throw new IllegalArgumentException(name + " has " + what + " outside the file: " + offset + "+" + length);
+        }
+    }
+
+    /**
+     * Slices part of the mapping. Ranges have been checked when the pack
+     * was opened, but are checked again so that no mistake here can read
+     * outside the mapping.
+     *
+     * @param offset where the slice starts
+     * @param length the length of the slice
+     * @return a read-only buffer over the range, with its own position
+     */
+    private ByteBuffer slice(int offset, int length) {
+
+        if (offset < 0 || length < 0 || offset > mapping.capacity() - length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is outside the pack");
+        }
+        ByteBuffer slice = mapping.duplicate();
+        //cast to Buffer so these link against Java 8, which has no
+        //ByteBuffer versions of them
+        ((Buffer) slice).position(offset);
+        ((Buffer) slice).limit(offset + length);
+        return slice.slice();
+    }
+
+    /**
+     * Where an image and its thumbnail are in the pack
+     */
+    private static final class Entry {
+
+        private final int offset;
+        private final int length;
+        private final int thumbnailOffset;
+        private final int thumbnailWidth;
+        private final int thumbnailHeight;
+
+        Entry(int offset, int length, int thumbnailOffset, int thumbnailWidth, int thumbnailHeight) {
+
+            this.offset = offset;
+            this.length = length;
+            this.thumbnailOffset = thumbnailOffset;
+            this.thumbnailWidth = thumbnailWidth;
+            this.thumbnailHeight = thumbnailHeight;
+        }
+    }
+
+    /**
+     * Reads a buffer as a stream, for decoders that only take streams
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+
+            return buffer.remaining();
+        }
+    }
+}
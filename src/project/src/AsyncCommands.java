@@ -0,0 +1,191 @@
+package project.src;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.concurrent.Task;
+import javafx.scene.control.ProgressIndicator;
+
+/**
+ * Runs the desktop app's slow commands (signing in, creating an account,
+ * purchasing, adding credit, signing out) on a small pool of worker threads
+ * instead of the JavaFX Application Thread. These check passwords and write
+ * the accounts file, and while the Application Thread is busy with them the
+ * window cannot repaint or respond to the user.
+ *
+ * A command's result is handed back on the Application Thread, so the
+ * callbacks may update the scene. While any command is running the busy
+ * property is true: pages show a progress indicator bound to it and disable
+ * the buttons that start commands, so a command cannot be started twice.
+ *
+ * The pool is bounded: at most WORKERS commands run at once and QUEUE_SIZE
+ * more can wait. A command submitted when the queue is full fails straight
+ * away rather than blocking the Application Thread. Because this class will
+ * not be instantiated, all of its fields and methods are static.
+ *
+ * @author Josh Howson
+ */
+public class AsyncCommands {
+
+    /**
+     * The number of worker threads
+     */
+    private static final int WORKERS = 2;
+
+    /**
+     * The number of commands that can wait for a worker
+     */
+    private static final int QUEUE_SIZE = 16;
+
+    /**
+     * The worker pool. Its threads are daemons so they never keep the app
+     * open; shutdown() lets queued commands finish first.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKERS, WORKERS,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                Thread t = new Thread(r, "command-worker");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /**
+     * True while any command is queued or running. Only changed on the
+     * Application Thread.
+     */
+    private static final ReadOnlyBooleanWrapper busy = new ReadOnlyBooleanWrapper(false);
+
+    /**
+     * The number of commands queued or running. Only used on the Application
+     * Thread.
+     */
+    private static int running = 0;
+
+    static {
+        //idle workers exit, so the pool costs nothing between commands
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs a command on a worker thread. Must be called on the Application
+     * Thread.
+     *
+     * @param <T> the type of the command's result
+     * @param command the work to do off the Application Thread. Must not touch
+     * the scene.
+     * @param onSucceeded given the command's result on the Application Thread
+     * @param onFailed given whatever the command threw, on the Application
+     * Thread
+     */
+    public static <T> void submit(Callable<T> command, Consumer<T> onSucceeded, Consumer<Throwable> onFailed) {
+
+        Task<T> task = new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+
+                return command.call();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            finished();
+            onSucceeded.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            finished();
+            System.out.println(task.getException().toString());
+            onFailed.accept(task.getException());
+        });
+
+        running++;
+        busy.set(true);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            //too many commands waiting
+            finished();
+            onFailed.accept(ex);
+        }
+    }
+
+    /**
+     * Marks a command as done, on the Application Thread
+     */
+    private static void finished() {
+
+        running--;
+        busy.set(running > 0);
+    }
+
+    /**
+     *
+     * @return true while a command is queued or running
+     */
+    public static boolean isBusy() {
+
+        return busy.get();
+    }
+
+    /**
+     *
+     * @return a property that is true while a command is queued or running.
+     * Bind buttons' disable property to it so they cannot start a second
+     * command.
+     */
+    public static ReadOnlyBooleanProperty busyProperty() {
+
+        return busy.getReadOnlyProperty();
+    }
+
+    /**
+     * Creates a small spinning progress indicator that is only visible while a
+     * command is running
+     *
+     * @return the progress indicator
+     */
+    public static ProgressIndicator createProgressIndicator() {
+
+        ProgressIndicator progress = new ProgressIndicator();
+        progress.setPrefSize(20, 20);
+        progress.setMaxSize(20, 20);
+        progress.visibleProperty().bind(busy);
+        return progress;
+    }
+
+    /**
+     * Runs code on the Application Thread: straight away if already on it,
+     * otherwise as soon as it is free. Used for anything a worker thread needs
+     * to show, such as an alert.
+     *
+     * @param r the code to run
+     */
+    public static void runOnFxThread(Runnable r) {
+
+        if (Platform.isFxApplicationThread()) {
+            r.run();
+        } else {
+            Platform.runLater(r);
+        }
+    }
+
+    /**
+     * Stops taking commands and waits a few seconds for those already
+     * submitted to finish, so that an accounts file being written when the
+     * app closes is not cut short
+     */
+    public static void shutdown() {
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.out.println("Commands still running at exit");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
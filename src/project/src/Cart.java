@@ -1,104 +1,201 @@
 package project.src;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Cart extends ProductGroup and adds the ability to add and remove items from
- * the cart as well as the ability to purchase.
+ * Cart holds the line items an account is going to buy. Each line item is a
+ * product id and the quantity of that product in the cart.
+ *
+ * The item count and total are kept up to date as items are added and removed
+ * instead of being recalculated from every item, so every change to the cart
+ * takes constant time. Each line remembers the unit price it was totalled at,
+ * so a line whose product changes price is moved to the new price exactly
+ * (see reprice()).
  *
  * @author Josh Howson
  */
 public class Cart {
 
     /**
-     * List of items in the cary
+     * The most of one product that can be put in the cart
+     */
+    public static final int MAX_QUANTITY = 99;
+
+    /**
+     * The quantity of each product in the cart, by product id. Kept in the
+     * order the products were first added.
+     */
+    private final LinkedHashMap<Integer, Integer> quantities;
+
+    /**
+     * The unit price each line is counted in the total at, in cents, by
+     * product id
      */
-    private final ArrayList<Product> items;
+    private final HashMap<Integer, Long> unitPrices;
 
     /**
-     * The number of items in the cart
+     * The number of items in the cart, counting every unit of every product
      */
     private int itemCount;
 
     /**
-     * The sum of the price of the items in the cart
+     * The sum of the price of the items in the cart, in cents
      */
-    private double total;
+    private long total;
 
     /**
      * The no-arg constructor for the cart
      */
     public Cart() {
-        
-        this.items = new ArrayList<>();
+
+        this.quantities = new LinkedHashMap<>();
+        this.unitPrices = new HashMap<>();
         this.total = 0;
     }
 
     /**
-     * Adds given item to cart (Arraylist items inherited from ProductGroup) and
-     * recalculates total
+     * Adds one of the given item to the cart and updates the count and total
      *
      * @param p The product to be added to the cart
      */
     public void addToCart(Product p) {
 
-        items.add(p);
-        itemCount = items.size();
-        total = calcTotal();
+        setQuantity(p, getQuantity(p) + 1);
     }
 
     /**
-     * Removes given item from cart (Arraylist items inherited from
-     * ProductGroup) and recalculates total
+     * Removes one of the given item from the cart and updates the count and
+     * total. Does nothing if the item is not in the cart.
      *
      * @param p The product to be removed from the cart
      */
     public void removeFromCart(Product p) {
 
-        items.remove(p);
-        itemCount = items.size();
-        total = calcTotal();
+        int quantity = getQuantity(p);
+        if (quantity > 0) {
+            setQuantity(p, quantity - 1);
+        }
     }
 
     /**
-     * 
-     * @return The items in the cart
+     * Removes every unit of the given item from the cart
+     *
+     * @param p The product whose line item is removed
      */
-    public ArrayList<Product> getItems() {
-        
-        return items;
+    public void removeLine(Product p) {
+
+        setQuantity(p, 0);
     }
 
     /**
-     * 
+     * Empties the cart
+     */
+    public void clear() {
+
+        quantities.clear();
+        unitPrices.clear();
+        itemCount = 0;
+        total = 0;
+    }
+
+    /**
+     * Sets how many of the given item are in the cart and updates the count
+     * and total by the difference. A quantity of zero removes the line item.
+     * The whole line is counted at the given product's price.
+     *
+     * @param p The product to change the quantity of
+     * @param quantity The new quantity
+     * @throws IllegalArgumentException if the quantity is negative
+     */
+    public void setQuantity(Product p, int quantity) throws IllegalArgumentException {
+
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+
+        int oldQuantity = getQuantity(p);
+        Long oldPrice = unitPrices.get(p.getId());
+        long price = p.getPrice().getCents();
+        if (quantity == 0) {
+            quantities.remove(p.getId());
+            unitPrices.remove(p.getId());
+        } else {
+            quantities.put(p.getId(), quantity);
+            unitPrices.put(p.getId(), price);
+        }
+        itemCount += quantity - oldQuantity;
+        total += quantity * price - (oldPrice == null ? 0 : oldQuantity * oldPrice);
+    }
+
+    /**
+     * Moves every line whose product's price has changed to the current
+     * price, eg: after the catalog is reloaded
+     *
+     * @param catalog the current catalog
+     * @return true if the total changed
+     */
+    boolean reprice(Catalog catalog) {
+
+        long oldTotal = total;
+        for (Map.Entry<Integer, Long> line : unitPrices.entrySet()) {
+            long price = catalog.get(line.getKey()).getPrice().getCents();
+            if (price != line.getValue()) {
+                total += quantities.get(line.getKey()) * (price - line.getValue());
+                line.setValue(price);
+            }
+        }
+        return total != oldTotal;
+    }
+
+    /**
+     *
+     * @param p The product to look up
+     * @return How many of the product are in the cart
+     */
+    public int getQuantity(Product p) {
+
+        Integer quantity = quantities.get(p.getId());
+        return (quantity == null) ? 0 : quantity;
+    }
+
+    /**
+     *
+     * @return Read-only view of the line items: product id -&gt; quantity
+     */
+    public Map<Integer, Integer> getLineItems() {
+
+        return Collections.unmodifiableMap(quantities);
+    }
+
+    /**
+     *
      * @return The number of items in the cart
      */
     public int getItemCount() {
-        
+
         return itemCount;
     }
 
     /**
-     * 
+     *
      * @return The cart's current total price
      */
-    public double getTotal() {
-        
-        return total;
+    public Money getTotal() {
+
+        return Money.ofCents(total);
     }
 
     /**
-     * Recalculates the total price of the cart
-     * 
-     * @return the recalculated price
+     * Same as getTotal() without creating a Money, for formatting straight
+     * into a buffer
+     *
+     * @return The cart's current total price in cents
      */
-    private double calcTotal() {
-        
-        double result = 0;
-        for (Product p : items) {
-            result += p.getPrice();
-        }
-        
-        return result;
+    public long getTotalCents() {
+
+        return total;
     }
 }
@@ -0,0 +1,151 @@
+package project.src;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of every product in the store, indexed by product id.
+ * A product's id is its index in the catalog, so looking one up is a single
+ * array access.
+ *
+ * The catalog also keeps the lowercase name of every product, in an array
+ * indexed by id, so that searches do not lowercase the whole catalog each
+ * time they run. These are taken when the catalog is built. Descriptions are
+ * searched in their compressed form instead (see TextDictionary.Matcher).
+ *
+ * The store never changes a catalog once it is published. Adding or changing
+ * products builds a new one that replaces it, so readers never need a lock: a
+ * search or page that is already running keeps using the catalog it started
+ * with. A new catalog built from an old one only lowercases the products that
+ * changed and shares everything else.
+ *
+ * @author Josh Howson
+ */
+final class Catalog {
+
+    /**
+     * A catalog with no products
+     */
+    static final Catalog EMPTY = new Catalog(new Product[0]);
+
+    /**
+     * Every product, by id
+     */
+    private final Product[] products;
+
+    /**
+     * Read-only list view of products
+     */
+    private final List<Product> view;
+
+    /**
+     * Each product's name in lowercase, by id
+     */
+    private final String[] names;
+
+    /**
+     * Constructor for a catalog
+     *
+     * @param products every product. Each product's id must be its index in
+     * the array. The array is kept, so must not be changed afterwards.
+     * @throws IllegalArgumentException if a product's id does not match its
+     * index
+     */
+    Catalog(Product[] products) {
+
+        this.products = products;
+        this.view = Collections.unmodifiableList(Arrays.asList(products));
+        this.names = new String[products.length];
+        for (int id = 0; id < products.length; id++) {
+            if (products[id].getId() != id) {
+                throw new IllegalArgumentException("Product at " + id + " has the id " + products[id].getId());
+            }
+            names[id] = products[id].getName().toLowerCase();
+        }
+    }
+
+    /**
+     * Constructor for a catalog that replaces another. Lowercase names are
+     * copied from the old catalog except for the changed products and any new
+     * ones on the end.
+     *
+     * @param base the catalog being replaced
+     * @param products every product, by id. Must be at least as long as the
+     * old catalog. The array is kept, so must not be changed afterwards.
+     * @param changed the ids of products that differ from base's
+     * @throws IllegalArgumentException if a changed or new product's id does
+     * not match its index, or there are fewer products than before
+     */
+    Catalog(Catalog base, Product[] products, BitSet changed) {
+
+        if (products.length < base.size()) {
+            throw new IllegalArgumentException("Products cannot be removed from a catalog");
+        }
+        this.products = products;
+        this.view = Collections.unmodifiableList(Arrays.asList(products));
+        this.names = Arrays.copyOf(base.names, products.length);
+        //changed products, then every new one
+        changed = (BitSet) changed.clone();
+        changed.set(base.size(), products.length);
+        for (int id = changed.nextSetBit(0); id >= 0; id = changed.nextSetBit(id + 1)) {
+            if (products[id].getId() != id) {
+                throw new IllegalArgumentException("Product at " + id + " has the id " + products[id].getId());
+            }
+            names[id] = products[id].getName().toLowerCase();
+        }
+    }
+
+    /**
+     * Builds a new catalog with more products on the end
+     *
+     * @param added the products to add. Their ids must carry on from size().
+     * @return the new catalog
+     */
+    Catalog plus(Product... added) {
+
+        Product[] updated = Arrays.copyOf(products, products.length + added.length);
+        System.arraycopy(added, 0, updated, products.length, added.length);
+        return new Catalog(this, updated, new BitSet());
+    }
+
+    /**
+     *
+     * @return the number of products
+     */
+    int size() {
+
+        return products.length;
+    }
+
+    /**
+     *
+     * @param id the product's id
+     * @return the product with that id
+     * @throws IndexOutOfBoundsException if there is no product with that id
+     */
+    Product get(int id) {
+
+        return products[id];
+    }
+
+    /**
+     *
+     * @return read-only view of every product, in id order
+     */
+    List<Product> asList() {
+
+        return view;
+    }
+
+    /**
+     *
+     * @param id the product's id
+     * @return the product's name in lowercase
+     */
+    String getLowerName(int id) {
+
+        return names[id];
+    }
+}
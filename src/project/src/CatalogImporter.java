@@ -0,0 +1,793 @@
+package project.src;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Imports a supplier's product feed into a store, so new products do not have
+ * to be added to products.txt by hand. Feeds can be any size: they are
+ * streamed, never read into memory whole.
+ *
+ * Two formats are read. CSV has the products file's columns
+ * (NAME,PRICE,IMAGE,DESCRIPTION), with fields that contain commas in double
+ * quotes and an optional header line. JSON lines has one object per line,
+ * with "name", "price" (or "priceCents"), "image" and "description".
+ *
+ * The feed goes through three stages, each on its own thread, joined by
+ * bounded queues:
+ *
+ * read: splits the feed into lines. Lines longer than MAX_LINE_LENGTH are
+ * skipped without being kept.
+ *
+ * check: parses each line, tidies its fields (trims them and collapses runs
+ * of spaces and line breaks) and validates them.
+ *
+ * apply: rejects names already in the catalog or earlier in the feed, writes
+ * every rejected line to the rejects file and appends the accepted products to
+ * the catalog and the products file in batches (see
+ * StoreEngine.appendProducts()).
+ *
+ * When a stage gets ahead of the next one it waits for room in the queue
+ * between them, so only a few thousand lines are in memory at once. Apart
+ * from the products added to the catalog, only the names seen (to catch
+ * duplicates) grow with the feed.
+ *
+ * Rejected lines are written as (LINE NUMBER,REASON,ORIGINAL LINE). Batches
+ * that have been applied stay applied if a later one fails.
+ *
+ * Run with: java -cp build/classes project.src.CatalogImporter --feed FILE
+ * [--data DIR] [--rejects FILE] [--format csv|jsonl] [--batch N]
+ *
+ * @author Josh Howson
+ */
+public class CatalogImporter {
+
+    /**
+     * The number of products appended at a time, by default
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The most lines waiting between two stages
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Longer lines are rejected
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Longer names are rejected
+     */
+    private static final int MAX_NAME_LENGTH = 200;
+
+    /**
+     * A plain image filename. The store looks for it in the images folder.
+     */
+    private static final Pattern IMAGE = Pattern.compile("[A-Za-z0-9_.-]+\\.(png|jpe?g|gif)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Marks the end of the feed in a queue
+     */
+    private static final Row END = new Row(-1, null);
+
+    /**
+     * The store the feed is imported into
+     */
+    private final StoreEngine engine;
+
+    /**
+     * True if the feed is JSON lines, false if it is CSV
+     */
+    private final boolean jsonLines;
+
+    /**
+     * The number of products appended at a time
+     */
+    private final int batchSize;
+
+    /**
+     * Why the read stage stopped early, or null
+     */
+    private volatile IOException readFailure;
+
+    /**
+     * Constructor for an importer
+     *
+     * @param engine the store to import into
+     * @param jsonLines true if feeds are JSON lines, false if they are CSV
+     * @param batchSize the number of products appended at a time
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public CatalogImporter(StoreEngine engine, boolean jsonLines, int batchSize) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.engine = engine;
+        this.jsonLines = jsonLines;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a feed
+     *
+     * @param args the options, see the class comment
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while importing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        if (!options.containsKey("feed")) {
+            throw new IllegalArgumentException("Missing option: --feed FILE");
+        }
+        File feed = new File(options.get("feed"));
+        File data = new File(options.getOrDefault("data", "."));
+        File rejects = new File(options.getOrDefault("rejects", feed.getPath() + ".rejects"));
+        String format = options.getOrDefault("format", feed.getName().endsWith(".jsonl") ? "jsonl" : "csv");
+        if (!format.equals("csv") && !format.equals("jsonl")) {
+            throw new IllegalArgumentException("Format must be csv or jsonl, got: " + format);
+        }
+        int batch = Integer.parseInt(options.getOrDefault("batch", String.valueOf(DEFAULT_BATCH_SIZE)));
+
+        StoreEngine engine = new StoreEngine(new File(data, "products.txt"), new File(data, "accounts.txt"));
+        engine.loadProducts();
+        Result result = new CatalogImporter(engine, format.equals("jsonl"), batch).run(feed, rejects);
+        System.out.println(result + (result.getRejected() > 0 ? ", rejects written to " + rejects : ""));
+    }
+
+    /**
+     * Imports a feed into the store
+     *
+     * @param feed the feed to read
+     * @param rejects the file to write rejected lines to. Replaced if it
+     * exists.
+     * @return how many lines were read, accepted and rejected
+     * @throws IOException if the feed cannot be read, or the rejects or
+     * products file cannot be written
+     * @throws InterruptedException if interrupted while importing
+     */
+    public Result run(File feed, File rejects) throws IOException, InterruptedException {
+
+        long start = System.nanoTime();
+        BlockingQueue<Row> read = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Row> checked = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Thread reader = stage("import-read", () -> read(feed, read));
+        Thread checker = stage("import-check", () -> check(read, checked));
+        reader.start();
+        checker.start();
+
+        Result result = new Result();
+        try {
+            apply(checked, rejects, result);
+        } finally {
+            //stops the other stages if apply failed, they may be waiting for
+            //room in a queue
+            reader.interrupt();
+            checker.interrupt();
+            reader.join();
+            checker.join();
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * Creates a daemon thread for a stage
+     */
+    private static Thread stage(String name, Runnable task) {
+
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * The read stage: puts each line of the feed in the queue, then END
+     *
+     * @param feed the feed to read
+     * @param out the queue to the check stage
+     */
+    private void read(File feed, BlockingQueue<Row> out) {
+
+        try {
+            try (Reader in = new InputStreamReader(new FileInputStream(feed), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[1 << 16];
+                StringBuilder line = new StringBuilder(1024);
+                boolean tooLong = false;
+                int number = 0;
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    for (int i = 0; i < n; i++) {
+                        char c = buffer[i];
+                        if (c == '\n') {
+                            out.put(row(++number, line, tooLong));
+                            line.setLength(0);
+                            tooLong = false;
+                        } else if (line.length() < MAX_LINE_LENGTH) {
+                            line.append(c);
+                        } else {
+                            tooLong = true;
+                        }
+                    }
+                }
+                if (line.length() > 0) {
+                    out.put(row(++number, line, tooLong));
+                }
+            } catch (IOException ex) {
+                readFailure = ex;
+            }
+            out.put(END);
+        } catch (InterruptedException ex) {
+            //the import was stopped
+        }
+    }
+
+    /**
+     * Creates the row for a line read from the feed
+     *
+     * @param number the line number
+     * @param line the line, cut to MAX_LINE_LENGTH
+     * @param tooLong true if the line was cut
+     * @return the row, already rejected if the line was too long
+     */
+    private static Row row(int number, StringBuilder line, boolean tooLong) {
+
+        if (tooLong) {
+            Row row = new Row(number, line.substring(0, 80) + "...");
+            row.reason = "line longer than " + MAX_LINE_LENGTH + " characters";
+            return row;
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            length--;
+        }
+        //a byte order mark at the start of the file
+        int start = number == 1 && length > 0 && line.charAt(0) == '\uFEFF' ? 1 : 0;
+        return new Row(number, line.substring(start, length));
+    }
+
+    /**
+     * The check stage: parses and validates each line, then passes it on
+     * with either its products file line or the reason it was rejected
+     *
+     * @param in the queue from the read stage
+     * @param out the queue to the apply stage
+     */
+    private void check(BlockingQueue<Row> in, BlockingQueue<Row> out) {
+
+        try {
+            Row row;
+            while ((row = in.take()) != END) {
+                if (row.reason == null && !skipped(row)) {
+                    try {
+                        row.product = jsonLines ? fromJson(row.text) : fromCsv(row.text);
+                    } catch (IllegalArgumentException ex) {
+                        row.reason = ex.getMessage();
+                    } catch (RuntimeException ex) {
+                        //a bug here must not stop the pipeline
+                        row.reason = ex.toString();
+                    }
+                }
+                out.put(row);
+            }
+            out.put(END);
+        } catch (InterruptedException ex) {
+            //the import was stopped
+        }
+    }
+
+    /**
+     *
+     * @return true for blank lines and a CSV header line, which are neither
+     * accepted nor rejected
+     */
+    private boolean skipped(Row row) {
+
+        if (row.text.trim().isEmpty()) {
+            return true;
+        }
+        return !jsonLines && row.line == 1 && row.text.toLowerCase(Locale.ROOT).startsWith("name,");
+    }
+
+    /**
+     * The apply stage: drops duplicate names, writes rejects and appends
+     * accepted products in batches
+     *
+     * @param in the queue from the check stage
+     * @param rejects the file to write rejected lines to
+     * @param result the counts to add to
+     * @throws IOException if the rejects or products file cannot be written
+     * @throws InterruptedException if interrupted while waiting for a line
+     */
+    private void apply(BlockingQueue<Row> in, File rejects, Result result) throws IOException, InterruptedException {
+
+        HashSet<String> names = new HashSet<>();
+        for (Product p : engine.getProducts()) {
+            names.add(p.getName().toLowerCase(Locale.ROOT));
+        }
+        ArrayList<String> batch = new ArrayList<>(batchSize);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rejects),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            Row row;
+            while ((row = in.take()) != END) {
+                if (row.product == null && row.reason == null) {
+                    //blank or a header
+                    continue;
+                }
+                result.read++;
+                if (row.product != null) {
+                    String name = row.product.substring(0, row.product.indexOf(','));
+                    if (!names.add(name.toLowerCase(Locale.ROOT))) {
+                        row.reason = "duplicate name";
+                    }
+                }
+                if (row.reason != null) {
+                    result.rejected++;
+                    //keep the reason to one field
+                    out.write(row.line + "," + row.reason.replace(',', ';') + "," + row.text
+                            + System.lineSeparator());
+                } else if (row.product != null) {
+                    batch.add(row.product);
+                    if (batch.size() == batchSize) {
+                        flush(batch, result);
+                    }
+                }
+            }
+            flush(batch, result);
+        }
+    }
+
+    /**
+     * Appends a batch of products to the store and empties it
+     */
+    private void flush(ArrayList<String> batch, Result result) throws IOException {
+
+        if (batch.isEmpty()) {
+            return;
+        }
+        engine.appendProducts(batch);
+        result.accepted += batch.size();
+        result.batches++;
+        batch.clear();
+    }
+
+    /**
+     * Reads a CSV line
+     *
+     * @param line the line
+     * @return the product as a line of the products file
+     * @throws IllegalArgumentException if the line is invalid
+     */
+    static String fromCsv(String line) {
+
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("expected 4 fields but found " + fields.size());
+        }
+        return product(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+    }
+
+    /**
+     * Reads a JSON lines line
+     *
+     * @param line the line
+     * @return the product as a line of the products file
+     * @throws IllegalArgumentException if the line is invalid
+     */
+    static String fromJson(String line) {
+
+        Map<String, String> fields = parseJson(line);
+        String price = fields.get("price");
+        if (price == null && fields.get("priceCents") != null) {
+            try {
+                price = Money.ofCents(Long.parseLong(fields.get("priceCents"))).toPlainString();
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("bad priceCents: " + fields.get("priceCents"));
+            }
+        }
+        return product(fields.get("name"), price, fields.get("image"), fields.get("description"));
+    }
+
+    /**
+     * Tidies and validates the fields of a product
+     *
+     * @return the product as a line of the products file
+     * @throws IllegalArgumentException if a field is missing or invalid
+     */
+    private static String product(String name, String price, String image, String description) {
+
+        name = tidy(name, "name");
+        image = tidy(image, "image");
+        description = tidy(description, "description");
+        //the products file has no quoting, so only the last field can have commas
+        if (name.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("name contains a comma");
+        }
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("name longer than " + MAX_NAME_LENGTH + " characters");
+        }
+        if (!IMAGE.matcher(image).matches()) {
+            throw new IllegalArgumentException("image is not a png/jpg/gif filename: " + image);
+        }
+
+        Money amount;
+        try {
+            amount = Money.parse(tidy(price, "price"));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("bad price: " + price.trim());
+        }
+        if (amount.getCents() <= 0) {
+            throw new IllegalArgumentException("price must be more than zero");
+        }
+        return name + "," + amount.toPlainString() + "," + image + "," + description;
+    }
+
+    /**
+     * Trims a field and makes each run of spaces, line breaks and other
+     * control characters in it into a single space
+     *
+     * @param value the field, or null if it is missing
+     * @param field the field's name, for the error message
+     * @return the tidied field
+     * @throws IllegalArgumentException if the field is missing or blank
+     */
+    private static String tidy(String value, String field) {
+
+        String tidied = value == null ? "" : value;
+        if (!isTidy(tidied)) {
+            StringBuilder sb = new StringBuilder(tidied.length());
+            for (int i = 0; i < tidied.length(); i++) {
+                char c = tidied.charAt(i);
+                if (!isSpace(c)) {
+                    sb.append(c);
+                } else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ') {
+                sb.setLength(sb.length() - 1);
+            }
+            tidied = sb.toString();
+        }
+        if (tidied.isEmpty()) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        return tidied;
+    }
+
+    /**
+     * Checks a field in one pass, since most are already tidy
+     *
+     * @return true if the field has no spaces at either end, no runs of
+     * spaces and no other whitespace or control characters
+     */
+    private static boolean isTidy(String value) {
+
+        char previous = ' ';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ' ' ? previous == ' ' : isSpace(c)) {
+                return false;
+            }
+            previous = c;
+        }
+        return previous != ' ' || value.isEmpty();
+    }
+
+    /**
+     *
+     * @return true for whitespace and control characters
+     */
+    private static boolean isSpace(char c) {
+
+        return Character.isWhitespace(c) || Character.isISOControl(c);
+    }
+
+    /**
+     * Splits a CSV line into fields. Fields in double quotes may contain
+     * commas, and "" inside them is a quote.
+     *
+     * @param line the line
+     * @return the fields
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> splitCsv(String line) {
+
+        ArrayList<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unclosed quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Reads a flat JSON object whose values are strings, numbers, booleans
+     * or null. Numbers and booleans are kept as written; null values are
+     * left out.
+     *
+     * @param line the object
+     * @return the object's fields
+     * @throws IllegalArgumentException if the line is not a flat JSON object
+     */
+    static Map<String, String> parseJson(String line) {
+
+        HashMap<String, String> fields = new HashMap<>();
+        int[] at = {skipSpaces(line, 0)};
+        expect(line, at, '{');
+        if (peek(line, at) == '}') {
+            at[0]++;
+        } else {
+            while (true) {
+                String key = readString(line, at);
+                expect(line, at, ':');
+                char c = peek(line, at);
+                if (c == '"') {
+                    fields.put(key, readString(line, at));
+                } else if (c == '{' || c == '[') {
+                    throw new IllegalArgumentException("unsupported value for " + key);
+                } else {
+                    int start = at[0];
+                    while (at[0] < line.length() && ",} \t".indexOf(line.charAt(at[0])) < 0) {
+                        at[0]++;
+                    }
+                    String value = line.substring(start, at[0]);
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("missing value for " + key);
+                    }
+                    if (!value.equals("null")) {
+                        fields.put(key, value);
+                    }
+                }
+                if (peek(line, at) == ',') {
+                    at[0]++;
+                } else {
+                    expect(line, at, '}');
+                    break;
+                }
+            }
+        }
+        if (skipSpaces(line, at[0]) < line.length()) {
+            throw new IllegalArgumentException("text after the object");
+        }
+        return fields;
+    }
+
+    /**
+     * Reads a JSON string, with its escapes
+     *
+     * @param line the text
+     * @param at the position of the opening quote, moved past the closing one
+     * @return the string
+     */
+    private static String readString(String line, int[] at) {
+
+        expect(line, at, '"');
+        StringBuilder sb = new StringBuilder();
+        int i = at[0];
+        while (i < line.length() && line.charAt(i) != '"') {
+            char c = line.charAt(i++);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= line.length()) {
+                break;
+            }
+            char e = line.charAt(i++);
+            switch (e) {
+                case 'n':
+                case 'r':
+                case 't':
+                case 'b':
+                case 'f':
+                    //tidied into a space anyway
+                    sb.append(' ');
+                    break;
+                case 'u':
+                    if (i + 4 > line.length()) {
+                        throw new IllegalArgumentException("bad \\u escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("bad \\u escape");
+                    }
+                    i += 4;
+                    break;
+                default:
+                    //\" \\ and \/
+                    sb.append(e);
+            }
+        }
+        if (i >= line.length()) {
+            throw new IllegalArgumentException("unclosed string");
+        }
+        at[0] = i + 1;
+        return sb.toString();
+    }
+
+    /**
+     * Skips spaces, then checks for and skips a character
+     *
+     * @throws IllegalArgumentException if the next character is not c
+     */
+    private static void expect(String line, int[] at, char c) {
+
+        if (peek(line, at) != c) {
+            throw new IllegalArgumentException("expected '" + c + "' at character " + (at[0] + 1));
+        }
+        at[0]++;
+    }
+
+    /**
+     * Skips spaces
+     *
+     * @return the next character, or 0 at the end of the line
+     */
+    private static char peek(String line, int[] at) {
+
+        at[0] = skipSpaces(line, at[0]);
+        return at[0] < line.length() ? line.charAt(at[0]) : 0;
+    }
+
+    private static int skipSpaces(String line, int i) {
+
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A line of the feed on its way through the stages
+     */
+    private static final class Row {
+
+        /**
+         * The line number, from 1
+         */
+        private final int line;
+
+        /**
+         * The line as read
+         */
+        private final String text;
+
+        /**
+         * The product as a line of the products file, once it has been
+         * checked and found valid
+         */
+        private String product;
+
+        /**
+         * Why the line was rejected, or null
+         */
+        private String reason;
+
+        Row(int line, String text) {
+
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    /**
+     * What an import did
+     */
+    public static final class Result {
+
+        /**
+         * The numbers of lines read, products added and lines rejected, and
+         * of batches appended
+         */
+        private long read, accepted, rejected, batches;
+
+        /**
+         * How long the import took
+         */
+        private long millis;
+
+        /**
+         *
+         * @return the number of lines read, not counting blank lines or a
+         * header
+         */
+        public long getRead() {
+
+            return read;
+        }
+
+        /**
+         *
+         * @return the number of products added to the store
+         */
+        public long getAccepted() {
+
+            return accepted;
+        }
+
+        /**
+         *
+         * @return the number of lines rejected
+         */
+        public long getRejected() {
+
+            return rejected;
+        }
+
+        /**
+         *
+         * @return the number of batches the products were added in
+         */
+        public long getBatches() {
+
+            return batches;
+        }
+
+        /**
+         * Formats the result like: "Imported 980 of 1000 lines in 2
+         * batches (20 rejected) in 1.2s"
+         *
+         * @return the formatted result
+         */
+        @Override
+        public String toString() {
+
+            return String.format("Imported %,d of %,d lines in %,d batches (%,d rejected) in %.1fs",
+                    accepted, read, batches, rejected, millis / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package project.src;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a store's products file and reloads the catalog whenever the file
+ * changes, so prices can be changed and products added without restarting
+ * the app or the server. See StoreEngine.reloadProducts() for how changes are
+ * applied.
+ *
+ * Editors often save a file in several steps, so after a change the watcher
+ * waits until the file has been quiet for QUIET_MILLIS before reloading. If
+ * the file cannot be read (eg: a line is only half written) the old catalog
+ * is kept, and the next change tries again.
+ *
+ * Turned on with the system property "minusone.watchProducts=true".
+ *
+ * @author Josh Howson
+ */
+public class CatalogWatcher implements Closeable {
+
+    /**
+     * How long the file must go without changing before it is reloaded
+     */
+    private static final long QUIET_MILLIS = 250;
+
+    /**
+     * The store to reload
+     */
+    private final StoreEngine engine;
+
+    /**
+     * The products file's name, compared with the names in watch events
+     */
+    private final Path fileName;
+
+    /**
+     * Watches the directory holding the products file
+     */
+    private final WatchService watcher;
+
+    /**
+     * Waits for changes and reloads
+     */
+    private final Thread thread;
+
+    /**
+     * Constructor for a watcher. Nothing is watched until start() is called.
+     *
+     * @param engine the store whose products file is watched
+     * @throws IOException if the file's directory cannot be watched
+     */
+    public CatalogWatcher(StoreEngine engine) throws IOException {
+
+        this.engine = engine;
+        Path file = engine.getProductsFile().toPath().toAbsolutePath();
+        this.fileName = file.getFileName();
+        this.watcher = file.getFileSystem().newWatchService();
+        //editors that save by writing a new file and renaming it create it
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "catalog-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching on a daemon thread
+     */
+    public void start() {
+
+        thread.start();
+        System.out.println("Watching " + engine.getProductsFile() + " for changes");
+    }
+
+    /**
+     * Stops watching
+     *
+     * @throws IOException if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+
+        watcher.close();
+        thread.interrupt();
+    }
+
+    /**
+     * Waits for changes to the products file and reloads it, until closed
+     */
+    private void run() {
+
+        try {
+            while (true) {
+                if (!changed(watcher.take())) {
+                    continue;
+                }
+                //wait for the writes to stop
+                WatchKey key;
+                while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            //closed
+        }
+    }
+
+    /**
+     * Reads a watch key's events and resets it
+     *
+     * @param key the key that was signalled
+     * @return true if one of the events was for the products file
+     */
+    private boolean changed(WatchKey key) {
+
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            //an overflow means events were lost, so the file may have changed
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Reloads the catalog, keeping the old one if the file cannot be read
+     */
+    private void reload() {
+
+        try {
+            engine.reloadProducts();
+        } catch (FileNotFoundException ex) {
+            //deleted or being replaced, wait for it to be created again
+            System.out.println(ex.toString());
+        } catch (RuntimeException ex) {
+            //bad line, bad price or a half written file
+            System.out.println("Products not reloaded: " + ex.toString());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package project.src;
+
+/**
+ * Applies payments to accounts. Every debit and credit is made atomically on
+ * the account's balance with compare-and-set, so any number of checkouts can
+ * run at once (from any number of threads or sessions) without locking, and
+ * without losing an update or spending the same credits twice.
+ *
+ * Has no UI code, so it can be used by the desktop app and by headless
+ * clients alike. Because this class will not be instantiated, all of its
+ * methods are static.
+ *
+ * @author Josh Howson
+ */
+public class CheckoutEngine {
+
+    /**
+     * Flat rate shipping charged on every cart purchase
+     */
+    public static final Money SHIPPING = Money.ofCents(780);
+
+    /**
+     * The most credit that can be added at once, from the desktop app or the
+     * HTTP API
+     */
+    public static final Money MAX_CREDIT = Money.ofCents(1_000_000);
+
+    /**
+     * Buys everything in a cart, plus shipping. The order is built from the
+     * cart before paying, and the cart is emptied once the payment has gone
+     * through.
+     *
+     * @param account the account paying for the order
+     * @param cart the cart being bought
+     * @return the order that was placed, or null if the account did not have
+     * enough credits (nothing is changed in that case)
+     */
+    public static Order checkout(Account account, Cart cart) {
+
+        Money amount = cart.getTotal().plus(SHIPPING);
+        Order order = new Order(cart, amount);
+        if (!account.debit(amount)) {
+            return null;
+        }
+        account.addOrder(order);
+
+        //remove items from cart when purchased
+        cart.clear();
+        return order;
+    }
+
+    /**
+     * Buys a single product straight away ("Buy It Now").
+     *
+     * @param account the account paying for the order
+     * @param p the product being bought
+     * @return the order that was placed, or null if the account did not have
+     * enough credits
+     */
+    public static Order buyNow(Account account, Product p) {
+
+        Money amount = p.getPrice();
+        if (!account.debit(amount)) {
+            return null;
+        }
+        Order order = new Order(p, amount);
+        account.addOrder(order);
+        return order;
+    }
+
+    /**
+     * Adds credit to an account's balance
+     *
+     * @param account the account to add to
+     * @param amount the amount to add
+     * @throws IllegalArgumentException if the given amount is a negative value
+     */
+    public static void addCredit(Account account, Money amount) throws IllegalArgumentException {
+
+        account.addCredit(amount);
+    }
+}
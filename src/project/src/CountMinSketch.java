@@ -0,0 +1,128 @@
+package project.src;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch: approximate counts of any number of different strings
+ * in a fixed amount of memory. Each string adds to one counter in each of
+ * DEPTH rows, picked by a different hash per row, and its estimate is the
+ * smallest of those counters. Strings that share a counter can only push it
+ * up, so an estimate is never below the true count, and is above it by at
+ * most about e / width of the total count with high probability.
+ *
+ * Not thread-safe.
+ *
+ * @author Josh Howson
+ */
+final class CountMinSketch {
+
+    /**
+     * The number of rows, each with its own hash
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * The counters, row after row
+     */
+    private final int[] counters;
+
+    /**
+     * The number of counters in each row, a power of two
+     */
+    private final int width;
+
+    /**
+     * Constructor for an empty sketch
+     *
+     * @param width the number of counters in each row, rounded up to a power
+     * of two
+     * @throws IllegalArgumentException if width is less than 1
+     */
+    CountMinSketch(int width) {
+
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive");
+        }
+        int w = 1;
+        while (w < width) {
+            w <<= 1;
+        }
+        this.width = w;
+        this.counters = new int[DEPTH * w];
+    }
+
+    /**
+     * Adds one to a string's count
+     *
+     * @param key the string
+     * @return the string's new estimated count
+     */
+    int add(String key) {
+
+        int h1 = key.hashCode();
+        int h2 = secondHash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = row * width + index(h1, h2, row);
+            //saturate rather than wrap around
+            if (counters[i] < Integer.MAX_VALUE) {
+                counters[i]++;
+            }
+            min = Math.min(min, counters[i]);
+        }
+        return min;
+    }
+
+    /**
+     *
+     * @param key the string
+     * @return the string's estimated count, never less than the true count
+     */
+    int estimate(String key) {
+
+        int h1 = key.hashCode();
+        int h2 = secondHash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[row * width + index(h1, h2, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Sets every count back to zero
+     */
+    void clear() {
+
+        Arrays.fill(counters, 0);
+    }
+
+    /**
+     * Picks a row's counter from two hashes (h1 + row * h2), so only two
+     * hashes are computed however many rows there are
+     */
+    private int index(int h1, int h2, int row) {
+
+        int h = h1 + row * h2;
+        //mix so that the low bits depend on every bit of the hash
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & (width - 1);
+    }
+
+    /**
+     * A second hash of a string (FNV-1a), independent of String.hashCode() so
+     * strings with the same hashCode() still land on different counters
+     */
+    private static int secondHash(String key) {
+
+        int h = 0x811C9DC5;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x01000193;
+        }
+        //odd, so that every row gets a different counter
+        return h | 1;
+    }
+}
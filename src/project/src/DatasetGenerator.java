@@ -0,0 +1,371 @@
+package project.src;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes synthetic products, accounts and order history files for testing the
+ * store at scale, in the formats StoreEngine reads:
+ *
+ * products.txt (NAME,PRICE,IMAGEURL,DESCRIPTION), accounts.txt
+ * (USERNAME,PASSWORD,BALANCE) and orders.txt
+ * (USERNAME,TIMESTAMP,TOTAL,PRODUCT ID:QUANTITY;...).
+ *
+ * The output depends only on the options, so the same seed always gives the
+ * same files. Name, description and price lengths follow log-normal
+ * distributions fitted to the real catalog (names around 47 characters,
+ * descriptions around 340, prices around $157). Images are drawn from the
+ * numbered product images in src/images.
+ *
+ * Orders are skewed: both which products are bought and which accounts buy
+ * them follow a Zipf distribution whose exponent is set with --skew (0 is
+ * uniform, 1 is typical of real shops, higher is more concentrated).
+ *
+ * Account i is named "user" + i with the password "pass" + i, so load tests
+ * can sign in as any of them.
+ *
+ * Run with: java -cp build/classes project.src.DatasetGenerator [--products N]
+ * [--accounts N] [--orders N] [--skew S] [--seed N] [--images DIR] [--out DIR]
+ *
+ * @author Josh Howson
+ */
+public class DatasetGenerator {
+
+    /**
+     * Orders are spread over the year before this time: 1/Jan/2020 GMT. Fixed
+     * so that the output does not depend on when it was generated.
+     */
+    private static final long END_TIME = 1_577_836_800_000L;
+
+    /**
+     * One year in milliseconds
+     */
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private static final String[] BRANDS = {"Acer", "Apple", "ASUS", "Belkin", "Bose", "Canon", "Corsair", "Dell",
+        "Garmin", "HP", "HyperX", "Intel", "JBL", "Kingston", "Lenovo", "LG", "Logitech", "Microsoft", "MSI",
+        "Nikon", "Razer", "Samsung", "SanDisk", "Seagate", "Sony", "SteelSeries", "Toshiba", "Western Digital"};
+
+    private static final String[] ITEMS = {"Laptop", "Notebook", "Desktop", "Monitor", "Keyboard", "Mouse",
+        "Headphones", "Earbuds", "Smartphone", "Tablet", "Speaker", "Webcam", "Router", "Printer", "Charger",
+        "SSD", "Hard Drive", "Graphics Card", "Smartwatch", "Camera", "Microphone", "Power Bank", "USB Hub"};
+
+    private static final String[] SPECS = {"16GB", "32GB", "64GB", "128GB", "256GB", "512GB", "1TB", "2TB",
+        "Wireless", "Bluetooth", "USB-C", "4K", "1080p", "144Hz", "RGB", "Mechanical", "Ultra Slim", "Pro",
+        "Plus", "Max", "Mini", "Gen 2", "Gen 3", "Black", "Silver", "Space Gray", "White", "Blue"};
+
+    private static final String[] WORDS = {"the", "and", "with", "for", "a", "your", "of", "to", "in", "is",
+        "fast", "powerful", "lightweight", "portable", "wireless", "premium", "durable", "sleek", "design",
+        "performance", "battery", "life", "display", "sound", "quality", "storage", "connectivity", "features",
+        "gaming", "work", "travel", "everyday", "use", "experience", "comfortable", "reliable", "advanced",
+        "technology", "crystal", "clear", "ultra", "responsive", "easy", "setup", "compatible", "devices",
+        "great", "value", "all", "day", "high", "speed", "enjoy", "perfect", "home", "office"};
+
+    /**
+     * Image used when no numbered product images can be found
+     */
+    private static final int DEFAULT_IMAGE_COUNT = 34;
+
+    /**
+     * Runs the generator
+     *
+     * @param args the options, see the class comment
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+
+        Map<String, String> options = parseOptions(args);
+        int productCount = Integer.parseInt(options.getOrDefault("products", "100000"));
+        int accountCount = Integer.parseInt(options.getOrDefault("accounts", "10000"));
+        int orderCount = Integer.parseInt(options.getOrDefault("orders", "100000"));
+        double skew = Double.parseDouble(options.getOrDefault("skew", "1.0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        File out = new File(options.getOrDefault("out", "dataset"));
+        String[] images = findImages(new File(options.getOrDefault("images", "src/images")));
+
+        if (productCount < 1 || accountCount < 0 || orderCount < 0 || skew < 0) {
+            throw new IllegalArgumentException("Counts and skew must not be negative, and there must be a product");
+        }
+        if (orderCount > 0 && accountCount == 0) {
+            throw new IllegalArgumentException("Orders need at least one account");
+        }
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new IOException("Could not create " + out);
+        }
+
+        long start = System.nanoTime();
+        long[] prices = writeProducts(new File(out, "products.txt"), productCount, images, new Random(seed));
+        writeAccounts(new File(out, "accounts.txt"), accountCount, new Random(seed + 1));
+        writeOrders(new File(out, "orders.txt"), orderCount, accountCount, prices, skew, new Random(seed + 2));
+
+        System.out.println(String.format("Wrote %,d products, %,d accounts and %,d orders to %s in %.1fs",
+                productCount, accountCount, orderCount, out, (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Writes the products file
+     *
+     * @return the price of each product in cents, by id
+     */
+    private static long[] writeProducts(File file, int count, String[] images, Random rand) throws IOException {
+
+        long[] prices = new long[count];
+        StringBuilder line = new StringBuilder(1024);
+        try (Writer writer = open(file)) {
+            for (int i = 0; i < count; i++) {
+                line.setLength(0);
+
+                //name: brand, item and specs until it is about as long as wanted
+                int nameLength = clamp(logNormal(rand, 47, 0.3), 12, 120);
+                line.append(pick(rand, BRANDS)).append(' ').append(pick(rand, ITEMS));
+                while (line.length() < nameLength) {
+                    line.append(' ').append(pick(rand, SPECS));
+                }
+
+                //prices mostly between $20 and $2000, always ending in 9
+                long cents = clamp(logNormal(rand, 15_700, 1.0), 199, 999_999);
+                cents = cents / 100 * 100 + 99;
+                prices[i] = cents;
+                line.append(',').append(Money.ofCents(cents).toPlainString());
+
+                line.append(',').append(pick(rand, images)).append(',');
+                appendDescription(line, rand, clamp(logNormal(rand, 340, 0.5), 40, 2000));
+
+                writer.write(line.toString());
+                writer.write('\n');
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * Writes the accounts file. Balances are skewed like real wallets: most
+     * are small, a few are large.
+     */
+    private static void writeAccounts(File file, int count, Random rand) throws IOException {
+
+        StringBuilder line = new StringBuilder(64);
+        try (Writer writer = open(file)) {
+            for (int i = 0; i < count; i++) {
+                line.setLength(0);
+                line.append("user").append(i).append(",pass").append(i).append(',');
+                line.append(Money.ofCents(clamp(logNormal(rand, 50_000, 1.2), 0, 100_000_000)).toPlainString());
+                writer.write(line.toString());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes the order history file. Each order has one to a few lines; most
+     * lines are a single unit. Totals include shipping when there is more than
+     * one item, as a checkout would.
+     */
+    private static void writeOrders(File file, int count, int accountCount, long[] prices, double skew, Random rand)
+            throws IOException {
+
+        Zipf products = new Zipf(prices.length, skew);
+        Zipf accounts = new Zipf(Math.max(accountCount, 1), skew);
+        //ranks are shuffled so the popular products and accounts are spread
+        //through the files rather than all at the start
+        int[] productOrder = permutation(prices.length, rand);
+        int[] accountOrder = permutation(Math.max(accountCount, 1), rand);
+
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = END_TIME - (long) (rand.nextDouble() * YEAR_MILLIS);
+        }
+        //written oldest first, like a log
+        Arrays.sort(timestamps);
+
+        try (Writer writer = open(file)) {
+            ArrayList<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int lineCount = 1 + (int) Math.min(9, -Math.log(1 - rand.nextDouble()) * 0.8);
+                ids.clear();
+                while (ids.size() < Math.min(lineCount, prices.length)) {
+                    int id = productOrder[products.sample(rand)];
+                    if (!ids.contains(id)) {
+                        ids.add(id);
+                    }
+                }
+
+                int[] productIds = new int[ids.size()];
+                int[] quantities = new int[ids.size()];
+                long total = 0;
+                int items = 0;
+                for (int l = 0; l < productIds.length; l++) {
+                    productIds[l] = ids.get(l);
+                    quantities[l] = rand.nextInt(10) < 8 ? 1 : 2 + rand.nextInt(3);
+                    total += prices[productIds[l]] * quantities[l];
+                    items += quantities[l];
+                }
+                if (items > 1) {
+                    total += CheckoutEngine.SHIPPING.getCents();
+                }
+
+                Order o = new Order(productIds, quantities, Money.ofCents(total), timestamps[i]);
+                writer.write("user" + accountOrder[accounts.sample(rand)]);
+                writer.write(',');
+                writer.write(o.toCSV());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Appends words until the description is about the given length. Has no
+     * commas, which would split the line.
+     */
+    private static void appendDescription(StringBuilder sb, Random rand, int length) {
+
+        int start = sb.length();
+        boolean sentenceStart = true;
+        while (sb.length() - start < length) {
+            String word = pick(rand, WORDS);
+            if (sentenceStart) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                sentenceStart = false;
+            } else {
+                sb.append(word);
+            }
+            if (rand.nextInt(12) == 0) {
+                sb.append('.');
+                sentenceStart = true;
+            }
+            sb.append(' ');
+        }
+        sb.setLength(sb.length() - 1);
+        if (sb.charAt(sb.length() - 1) != '.') {
+            sb.append('.');
+        }
+    }
+
+    /**
+     * Finds the numbered product images, eg: "12.png"
+     *
+     * @param dir the images directory
+     * @return their file names, or "1.png" to "34.png" if there are none
+     */
+    private static String[] findImages(File dir) {
+
+        ArrayList<String> names = new ArrayList<>();
+        String[] files = dir.list();
+        if (files != null) {
+            for (String f : files) {
+                if (f.matches("[0-9]+\\.png")) {
+                    names.add(f);
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            for (int i = 1; i <= DEFAULT_IMAGE_COUNT; i++) {
+                names.add(i + ".png");
+            }
+        }
+        //directory listings come in no particular order
+        names.sort(null);
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Reads "--name value" pairs
+     *
+     * @throws IllegalArgumentException if an option is malformed
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     *
+     * @return a UTF-8 writer for the file
+     */
+    private static Writer open(File file) throws IOException {
+
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     *
+     * @return a random number from a log-normal distribution with the given
+     * median and spread
+     */
+    private static double logNormal(Random rand, double median, double sigma) {
+
+        return median * Math.exp(rand.nextGaussian() * sigma);
+    }
+
+    private static int clamp(double value, int min, int max) {
+
+        return (int) Math.max(min, Math.min(max, Math.round(value)));
+    }
+
+    private static String pick(Random rand, String[] values) {
+
+        return values[rand.nextInt(values.length)];
+    }
+
+    /**
+     *
+     * @return the numbers 0 to n - 1 in a random order
+     */
+    private static int[] permutation(int n, Random rand) {
+
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) {
+            p[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        return p;
+    }
+
+    /**
+     * Samples ranks 0 to n - 1 with probability proportional to
+     * 1 / (rank + 1)^s, using a cumulative table and binary search
+     */
+    private static class Zipf {
+
+        private final double[] cumulative;
+
+        Zipf(int n, double s) {
+
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, s);
+                cumulative[i] = sum;
+            }
+        }
+
+        int sample(Random rand) {
+
+            double target = rand.nextDouble() * cumulative[cumulative.length - 1];
+            int i = Arrays.binarySearch(cumulative, target);
+            return Math.min(i < 0 ? -i - 1 : i, cumulative.length - 1);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package project.src;
+
+/**
+ * Checks once whether this JVM has Flight Recorder (the jdk.jfr module), so
+ * the store's events (SearchEvent, PurchaseEvent, SaveAccountsEvent and
+ * ScreenBuildEvent) are only created where they can be. Java 8 runtimes
+ * without it would otherwise fail every search and purchase with a
+ * NoClassDefFoundError. Callers create an event only when AVAILABLE is true
+ * and skip it (null) otherwise, so the event classes are never loaded.
+ * Because this class will not be instantiated, all of its members are
+ * static.
+ *
+ * @author Josh Howson
+ */
+final class FlightEvents {
+
+    /**
+     * True if Flight Recorder events can be created
+     */
+    static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Looks for the Flight Recorder event class without initializing it
+     *
+     * @return true if it was found
+     */
+    private static boolean isAvailable() {
+
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            System.out.println("Flight Recorder unavailable, store events will not be recorded");
+            return false;
+        }
+    }
+}
@@ -0,0 +1,1003 @@
+package project.src;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP server exposing a StoreEngine as a JSON API, so the store can
+ * be browsed and bought from by many clients at once instead of just the
+ * desktop window.
+ *
+ * Endpoints (all under /api/, parameters in the query string or a
+ * form-encoded POST body):
+ *
+ * GET /products?offset=&limit= | GET /product?id= (with stock available)
+ * GET /search?q=&cursor=&limit= | GET /suggest?q=&limit= (autocomplete)
+ * POST /signup (username, password) | POST /login (username, password)
+ * POST /logout | GET /account | POST /credit (amount) | GET /orders
+ * GET /cart | POST /cart (product, quantity) | POST /checkout | POST /buy (product)
+ * GET /metrics | GET /searches?limit= (most searched queries of the last hour)
+ * GET /sales?limit= (best sellers of the last week and of all time, and daily
+ * totals of the last 30 days)
+ *
+ * Everything after login needs the session id it returns, sent in the
+ * "X-Session" header (or a "session" parameter).
+ *
+ * Each request is handled on its own virtual thread when the JVM has them
+ * (Java 21 and up), otherwise on a cached thread pool. At most
+ * maxConcurrent requests are handled at once; any more are turned away
+ * straight away with 503 rather than being queued. The time taken by every
+ * request is recorded in a histogram per endpoint.
+ *
+ * Accounts are saved to file in the background every few seconds after a
+ * change, and once more when the server stops.
+ *
+ * @author Josh Howson
+ */
+public class HttpApi {
+
+    /**
+     * The default maximum number of requests handled at once
+     */
+    public static final int DEFAULT_MAX_CONCURRENT = 256;
+
+    /**
+     * The largest page a client may ask for
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * The page size used when the client does not give one
+     */
+    private static final int DEFAULT_PAGE_SIZE = 24;
+
+    /**
+     * The most suggestions a client may ask for, and the number given when
+     * it does not ask
+     */
+    private static final int MAX_SUGGESTIONS = SuggestionIndex.TOP_K;
+
+    /**
+     * The number of "also bought" products returned with a product
+     */
+    private static final int ALSO_BOUGHT_COUNT = 4;
+
+    /**
+     * The engine being served
+     */
+    private final StoreEngine engine;
+
+    /**
+     * The underlying JDK server
+     */
+    private final HttpServer server;
+
+    /**
+     * Runs every request, one (virtual) thread each
+     */
+    private final ExecutorService executor;
+
+    /**
+     * One permit per request that may be handled at once
+     */
+    private final Semaphore limiter;
+
+    /**
+     * The maximum number of requests handled at once
+     */
+    private final int maxConcurrent;
+
+    /**
+     * Time taken by each endpoint, by path
+     */
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Number of requests turned away because the server was at its limit
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Set when an account has changed since the last save
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    /**
+     * Saves changed accounts in the background
+     */
+    private final Timer saver = new Timer("http-api-save", true);
+
+    /**
+     * A handler for one endpoint. Returns the JSON body of a successful
+     * response; failures are thrown as HttpError.
+     */
+    private interface Endpoint {
+
+        String handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    /**
+     * Thrown by an endpoint to send an error response with the given status
+     */
+    private static class HttpError extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Constructor for the API. Nothing is served until start() is called.
+     *
+     * @param engine the engine to serve. Its data should already be loaded.
+     * @param port the port to listen on, 0 picks a free one
+     * @param maxConcurrent the maximum number of requests handled at once
+     * @throws IOException if the port cannot be bound
+     * @throws IllegalArgumentException if maxConcurrent is less than 1
+     */
+    public HttpApi(StoreEngine engine, int port, int maxConcurrent) throws IOException {
+
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed at a time");
+        }
+        this.engine = engine;
+        this.maxConcurrent = maxConcurrent;
+        this.limiter = new Semaphore(maxConcurrent);
+        this.executor = Threads.newThreadPerTaskExecutor("http-api");
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+
+        //catalog
+        register("/api/products", "GET", this::products);
+        register("/api/product", "GET", this::product);
+        register("/api/search", "GET", this::search);
+        register("/api/suggest", "GET", this::suggest);
+
+        //accounts
+        register("/api/signup", "POST", this::signup);
+        register("/api/login", "POST", this::login);
+        register("/api/logout", "POST", this::logout);
+        register("/api/account", "GET", this::account);
+        register("/api/credit", "POST", this::credit);
+        register("/api/orders", "GET", this::orders);
+
+        //cart and purchases
+        register("/api/cart", null, this::cart);
+        register("/api/checkout", "POST", this::checkout);
+        register("/api/buy", "POST", this::buy);
+
+        register("/api/metrics", "GET", (exchange, params) -> metricsJson());
+        register("/api/searches", "GET", this::searches);
+        register("/api/sales", "GET", this::sales);
+    }
+
+    /**
+     * Starts serving requests and saving changed accounts
+     */
+    public void start() {
+
+        server.start();
+        saver.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                saveIfDirty();
+            }
+        }, 5000, 5000);
+    }
+
+    /**
+     * Stops serving, waits up to the given time for requests in progress to
+     * finish and saves any changed accounts.
+     *
+     * @param delaySeconds how long to wait for requests in progress
+     */
+    public void stop(int delaySeconds) {
+
+        server.stop(delaySeconds);
+        executor.shutdown();
+        saver.cancel();
+        saveIfDirty();
+    }
+
+    /**
+     *
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+
+        return server.getAddress().getPort();
+    }
+
+    /**
+     *
+     * @return the maximum number of requests handled at once
+     */
+    public int getMaxConcurrent() {
+
+        return maxConcurrent;
+    }
+
+    /**
+     *
+     * @return the number of requests being handled right now
+     */
+    public int getInFlight() {
+
+        return maxConcurrent - limiter.availablePermits();
+    }
+
+    /**
+     *
+     * @return the number of requests turned away with 503 since startup
+     */
+    public long getRejectedCount() {
+
+        return rejected.sum();
+    }
+
+    /**
+     *
+     * @param path the endpoint's path, eg: "/api/search"
+     * @return the endpoint's latency histogram, or null if it has not been
+     * called yet
+     */
+    public LatencyHistogram getLatency(String path) {
+
+        return latencies.get(path);
+    }
+
+    /**
+     * One line per endpoint, eg: "/api/search n=12 mean=3.1ms p50=2.9ms ..."
+     *
+     * @return a summary of every endpoint's latency
+     */
+    public String summary() {
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(latencies).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue().summary()).append('\n');
+        }
+        sb.append("rejected=").append(rejected.sum());
+        return sb.toString();
+    }
+
+    /**
+     * Runs the API on its own, without the desktop app. The port and limit
+     * are read from the system properties "minusone.http.port" (default 8080)
+     * and "minusone.http.maxConcurrent". With "minusone.watchProducts=true"
+     * the catalog is reloaded whenever products.txt changes.
+     *
+     * @param args unused
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+
+        StoreEngine engine = new StoreEngine(new File("products.txt"), new File("accounts.txt"));
+        engine.loadProducts();
+        engine.loadAccounts();
+        File stock = new File("stock.txt");
+        if (stock.exists()) {
+            engine.loadStock(stock);
+        }
+        File orders = new File("orders.txt");
+        if (orders.exists()) {
+            engine.loadOrders(orders);
+        }
+
+        if (Boolean.getBoolean("minusone.watchProducts")) {
+            new CatalogWatcher(engine).start();
+        }
+
+        int port = Integer.getInteger("minusone.http.port", 8080);
+        int limit = Integer.getInteger("minusone.http.maxConcurrent", DEFAULT_MAX_CONCURRENT);
+        HttpApi api = new HttpApi(engine, port, limit);
+        engine.getMetrics().register("http");
+        api.start();
+
+        //save and print the final metrics on ctrl-c
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop(1);
+            System.out.println(api.summary());
+        }));
+        System.out.println("Serving " + engine.getProducts().size() + " products on http://localhost:"
+                + api.getPort() + "/api/ (max " + limit + " requests at once)");
+    }
+
+    /**
+     * Creates a context for an endpoint that checks the method, applies the
+     * concurrency limit, records the latency and turns the result or error
+     * into a JSON response.
+     *
+     * @param path the endpoint's path
+     * @param method the only method allowed, or null to allow GET and POST
+     * @param endpoint the handler
+     */
+    private void register(String path, String method, Endpoint endpoint) {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        latencies.put(path, histogram);
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            if (!limiter.tryAcquire()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error("Server busy, try again"));
+                return;
+            }
+            try {
+                int status = 200;
+                String body;
+                try {
+                    if (!exchange.getRequestURI().getPath().equals(path)) {
+                        throw new HttpError(404, "No such endpoint");
+                    }
+                    String m = exchange.getRequestMethod();
+                    if (method == null ? !(m.equals("GET") || m.equals("POST")) : !m.equals(method)) {
+                        throw new HttpError(405, "Use " + (method == null ? "GET or POST" : method));
+                    }
+                    body = endpoint.handle(exchange, readParams(exchange));
+                } catch (HttpError ex) {
+                    status = ex.status;
+                    body = error(ex.getMessage());
+                } catch (IllegalStateException ex) {
+                    //sold out
+                    status = 409;
+                    body = error(ex.getMessage());
+                } catch (IndexOutOfBoundsException ex) {
+                    status = 404;
+                    body = error("No such product");
+                } catch (IllegalArgumentException ex) {
+                    //also catches NumberFormatException from bad parameters
+                    status = 400;
+                    body = error(ex.getMessage());
+                } catch (RuntimeException ex) {
+                    System.out.println(ex.toString());
+                    status = 500;
+                    body = error("Internal error");
+                }
+                send(exchange, status, body);
+            } finally {
+                limiter.release();
+                histogram.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * GET /api/products: one page of the catalog
+     */
+    private String products(HttpExchange exchange, Map<String, String> params) {
+
+        List<Product> all = engine.getProducts();
+        int offset = Math.max(0, intParam(params, "offset", 0));
+        int limit = pageSize(params);
+        int end = (int) Math.min(all.size(), (long) offset + limit);
+
+        StringBuilder sb = new StringBuilder(256 * limit);
+        sb.append("{\"total\":").append(all.size()).append(",\"products\":[");
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                sb.append(',');
+            }
+            appendProduct(sb, all.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * GET /api/product: one product and what else its buyers bought
+     */
+    private String product(HttpExchange exchange, Map<String, String> params) {
+
+        Product p = engine.getProduct(intParam(params, "id", -1));
+        engine.recordView(p);
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"product\":");
+        appendProduct(sb, p);
+        Inventory inventory = engine.getInventory();
+        sb.append(",\"available\":");
+        if (inventory.isTracked(p.getId())) {
+            sb.append(inventory.getAvailable(p.getId()));
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"alsoBought\":");
+        appendProducts(sb, engine.getRecommender().getAlsoBought(p, ALSO_BOUGHT_COUNT));
+        return sb.append('}').toString();
+    }
+
+    /**
+     * GET /api/search: one page of search results
+     */
+    private String search(HttpExchange exchange, Map<String, String> params) {
+
+        String query = params.get("q");
+        if (query == null) {
+            throw new IllegalArgumentException("Missing parameter: q");
+        }
+        SearchPage page = engine.search(query, params.get("cursor"), pageSize(params));
+
+        StringBuilder sb = new StringBuilder(256 * page.getResults().size() + 64);
+        sb.append("{\"estimatedTotal\":").append(page.getEstimatedTotal()).append(",\"nextCursor\":");
+        appendString(sb, page.getNextCursor());
+        sb.append(",\"products\":");
+        appendProducts(sb, page.getResults());
+        return sb.append('}').toString();
+    }
+
+    /**
+     * GET /api/suggest: autocomplete for a search field, most popular first
+     */
+    private String suggest(HttpExchange exchange, Map<String, String> params) {
+
+        String query = params.get("q");
+        if (query == null) {
+            throw new IllegalArgumentException("Missing parameter: q");
+        }
+        int limit = Math.max(1, Math.min(MAX_SUGGESTIONS, intParam(params, "limit", MAX_SUGGESTIONS)));
+        List<Product> suggestions = engine.suggest(query, limit);
+
+        StringBuilder sb = new StringBuilder(256 * suggestions.size() + 16);
+        sb.append("{\"products\":");
+        appendProducts(sb, suggestions);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * GET /api/searches: the most searched queries of the last hour, and the
+     * most searched that found nothing
+     */
+    private String searches(HttpExchange exchange, Map<String, String> params) {
+
+        SearchAnalytics analytics = engine.getSearchAnalytics();
+        int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, intParam(params, "limit", 10)));
+
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"windowMillis\":").append(analytics.getWindowMillis());
+        sb.append(",\"searches\":").append(analytics.getSearchCount());
+        sb.append(",\"zeroResults\":").append(analytics.getZeroResultCount());
+        sb.append(",\"top\":");
+        appendQueryCounts(sb, analytics.getTopQueries(limit));
+        sb.append(",\"topZeroResults\":");
+        appendQueryCounts(sb, analytics.getTopZeroResultQueries(limit));
+        return sb.append('}').toString();
+    }
+
+    /**
+     * GET /api/sales: the best sellers of the last RECENT_DAYS days and of all
+     * time, and the store's totals for each of the last DAYS days
+     */
+    private String sales(HttpExchange exchange, Map<String, String> params) {
+
+        SalesAggregator sales = engine.getSales();
+        int limit = Math.max(1, Math.min(SalesAggregator.TOP_K, intParam(params, "limit", 10)));
+
+        StringBuilder sb = new StringBuilder(8192);
+        sb.append("{\"recentDays\":").append(SalesAggregator.RECENT_DAYS);
+        sb.append(",\"orders\":").append(sales.getOrderCount());
+        sb.append(",\"revenueCents\":").append(sales.getTotalRevenue());
+        sb.append(",\"topSellers\":");
+        appendProductSales(sb, sales.getTopSellers(limit));
+        sb.append(",\"allTimeTopSellers\":");
+        appendProductSales(sb, sales.getAllTimeTopSellers(limit));
+        sb.append(",\"daily\":[");
+        List<SalesAggregator.DaySales> days = sales.getDailySales();
+        for (int i = 0; i < days.size(); i++) {
+            SalesAggregator.DaySales d = days.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"day\":");
+            appendString(sb, LocalDate.ofEpochDay(d.getDay()).toString());
+            sb.append(",\"orders\":").append(d.getOrders());
+            sb.append(",\"units\":").append(d.getUnits());
+            sb.append(",\"revenueCents\":").append(d.getRevenueCents()).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Appends products' sales as a JSON array of {"product", "recentUnits",
+     * "units", "revenueCents"} objects
+     */
+    private static void appendProductSales(StringBuilder sb, List<SalesAggregator.ProductSales> sellers) {
+
+        sb.append('[');
+        for (int i = 0; i < sellers.size(); i++) {
+            SalesAggregator.ProductSales s = sellers.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"product\":");
+            appendProduct(sb, s.getProduct());
+            sb.append(",\"recentUnits\":").append(s.getRecentUnits());
+            sb.append(",\"units\":").append(s.getUnits());
+            sb.append(",\"revenueCents\":").append(s.getRevenueCents()).append('}');
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends query counts as a JSON array of {"query", "count"} objects
+     */
+    private static void appendQueryCounts(StringBuilder sb, List<SearchAnalytics.QueryCount> counts) {
+
+        sb.append('[');
+        for (int i = 0; i < counts.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"query\":");
+            appendString(sb, counts.get(i).getQuery());
+            sb.append(",\"count\":").append(counts.get(i).getCount()).append('}');
+        }
+        sb.append(']');
+    }
+
+    /**
+     * POST /api/signup: creates an account and signs in to it
+     */
+    private String signup(HttpExchange exchange, Map<String, String> params) {
+
+        String username = requireParam(params, "username");
+        String password = requireParam(params, "password");
+        if (username.isEmpty() || password.isEmpty()) {
+            throw new IllegalArgumentException("Username and password must not be empty");
+        }
+        //accounts are saved one per line as comma separated values
+        Account.checkField("Username", username);
+        Account.checkField("Password", password);
+        try {
+            engine.createAccount(username, password);
+        } catch (IllegalArgumentException ex) {
+            throw new HttpError(409, ex.getMessage());
+        }
+        dirty.set(true);
+        return login(exchange, params);
+    }
+
+    /**
+     * POST /api/login: starts a session
+     */
+    private String login(HttpExchange exchange, Map<String, String> params) {
+
+        Session s = engine.login(requireParam(params, "username"), requireParam(params, "password"));
+        if (s == null) {
+            throw new HttpError(401, "Incorrect username or password");
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"session\":");
+        appendString(sb, s.getId());
+        sb.append(",\"account\":");
+        appendAccount(sb, s.getAccount());
+        return sb.append('}').toString();
+    }
+
+    /**
+     * POST /api/logout: ends the session
+     */
+    private String logout(HttpExchange exchange, Map<String, String> params) {
+
+        engine.logout(requireSession(exchange, params).getId());
+        return "{}";
+    }
+
+    /**
+     * GET /api/account: the signed in account's details
+     */
+    private String account(HttpExchange exchange, Map<String, String> params) {
+
+        StringBuilder sb = new StringBuilder(128);
+        appendAccount(sb, requireSession(exchange, params).getAccount());
+        return sb.toString();
+    }
+
+    /**
+     * POST /api/credit: adds credit to the signed in account, at most
+     * CheckoutEngine.MAX_CREDIT at once
+     */
+    private String credit(HttpExchange exchange, Map<String, String> params) {
+
+        Session s = requireSession(exchange, params);
+        Money amount = Money.parse(requireParam(params, "amount"));
+        //the same limit as the desktop app's add credit dialog
+        if (amount.compareTo(CheckoutEngine.MAX_CREDIT) > 0) {
+            throw new IllegalArgumentException("No more than " + CheckoutEngine.MAX_CREDIT + " can be added at once");
+        }
+        engine.addCredit(s, amount);
+        dirty.set(true);
+        StringBuilder sb = new StringBuilder(128);
+        appendAccount(sb, s.getAccount());
+        return sb.toString();
+    }
+
+    /**
+     * GET /api/orders: the signed in account's past orders
+     */
+    private String orders(HttpExchange exchange, Map<String, String> params) {
+
+        List<Order> orders = requireSession(exchange, params).getAccount().getOrders();
+        StringBuilder sb = new StringBuilder(128 * orders.size() + 16);
+        sb.append("{\"orders\":[");
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendOrder(sb, orders.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * GET /api/cart: the session's cart. POST /api/cart: sets the quantity of
+     * a product in it (0 removes it, at most Cart.MAX_QUANTITY), then returns
+     * it.
+     */
+    private String cart(HttpExchange exchange, Map<String, String> params) {
+
+        Session s = requireSession(exchange, params);
+        if (exchange.getRequestMethod().equals("POST")) {
+            Product p = engine.getProduct(intParam(params, "product", -1));
+            int quantity = intParam(params, "quantity", 1);
+            if (quantity < 0 || quantity > Cart.MAX_QUANTITY) {
+                throw new IllegalArgumentException("Quantity must be between 0 and " + Cart.MAX_QUANTITY);
+            }
+            if (!engine.setQuantity(s, p, quantity)) {
+                throw new HttpError(409, "Only " + engine.getInventory().getAvailable(p.getId())
+                        + " more of " + p.getName() + " in stock");
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        synchronized (s) {
+            Cart c = s.getCart();
+            sb.append("{\"itemCount\":").append(c.getItemCount());
+            sb.append(",\"totalCents\":").append(c.getTotalCents());
+            sb.append(",\"shippingCents\":").append(CheckoutEngine.SHIPPING.getCents());
+            sb.append(",\"lines\":[");
+            boolean first = true;
+            for (Map.Entry<Integer, Integer> line : c.getLineItems().entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append("{\"product\":").append(line.getKey());
+                sb.append(",\"quantity\":").append(line.getValue()).append('}');
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * POST /api/checkout: buys everything in the session's cart
+     */
+    private String checkout(HttpExchange exchange, Map<String, String> params) {
+
+        Session s = requireSession(exchange, params);
+        synchronized (s) {
+            if (s.getCart().getItemCount() == 0) {
+                throw new HttpError(409, "The cart is empty");
+            }
+        }
+        return placed(engine.checkout(s));
+    }
+
+    /**
+     * POST /api/buy: buys a single product straight away
+     */
+    private String buy(HttpExchange exchange, Map<String, String> params) {
+
+        Session s = requireSession(exchange, params);
+        return placed(engine.buyNow(s, engine.getProduct(intParam(params, "product", -1))));
+    }
+
+    /**
+     * Turns the result of a purchase into a response
+     *
+     * @param o the order placed, or null if there were not enough credits
+     * @return the order as JSON
+     */
+    private String placed(Order o) {
+
+        if (o == null) {
+            throw new HttpError(402, "Not enough credits");
+        }
+        dirty.set(true);
+        StringBuilder sb = new StringBuilder(128);
+        appendOrder(sb, o);
+        return sb.toString();
+    }
+
+    /**
+     *
+     * @return every endpoint's latency percentiles, in nanoseconds
+     */
+    private String metricsJson() {
+
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"inFlight\":").append(getInFlight());
+        sb.append(",\"maxConcurrent\":").append(maxConcurrent);
+        sb.append(",\"rejected\":").append(rejected.sum());
+        sb.append(",\"sessions\":").append(engine.getSessionCount());
+        sb.append(",\"endpoints\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(latencies).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            appendString(sb, e.getKey());
+            sb.append(":{\"count\":").append(h.getCount());
+            sb.append(",\"meanNanos\":").append((long) h.getMean());
+            sb.append(",\"p50Nanos\":").append(h.getValueAtPercentile(50));
+            sb.append(",\"p99Nanos\":").append(h.getValueAtPercentile(99));
+            sb.append(",\"maxNanos\":").append(h.getMax()).append('}');
+        }
+        return sb.append("}}").toString();
+    }
+
+    /**
+     * Writes the accounts to file if any have changed since the last save
+     */
+    private void saveIfDirty() {
+
+        if (dirty.getAndSet(false)) {
+            try {
+                engine.saveAccounts();
+            } catch (IOException ex) {
+                System.out.println(ex.toString());
+                dirty.set(true);
+            }
+        }
+    }
+
+    /**
+     * Looks up the session named by the request
+     *
+     * @return the session
+     * @throws HttpError 401 if there is no such session
+     */
+    private Session requireSession(HttpExchange exchange, Map<String, String> params) {
+
+        String id = exchange.getRequestHeaders().getFirst("X-Session");
+        if (id == null) {
+            id = params.get("session");
+        }
+        Session s = (id == null) ? null : engine.getSession(id);
+        if (s == null) {
+            throw new HttpError(401, "Not signed in");
+        }
+        return s;
+    }
+
+    /**
+     * Reads the query string, and the body of a form-encoded POST, into a map
+     *
+     * @param exchange the request
+     * @return every parameter, by name
+     * @throws IOException if the body cannot be read
+     */
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if (exchange.getRequestMethod().equals("POST")) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            try (InputStream in = exchange.getRequestBody()) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, n);
+                }
+            }
+            parseForm(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    /**
+     * Adds each name=value pair in a form-encoded string to a map
+     *
+     * @param form the encoded string, may be null
+     * @param params the map to add to
+     */
+    private static void parseForm(String form, Map<String, String> params) throws UnsupportedEncodingException {
+
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+    }
+
+    /**
+     *
+     * @return the value of a parameter
+     * @throws IllegalArgumentException if it is missing
+     */
+    private static String requireParam(Map<String, String> params, String name) {
+
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    /**
+     *
+     * @return the value of an int parameter, or the default if it is missing
+     * @throws NumberFormatException if it is not a number
+     */
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+
+        String value = params.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     *
+     * @return the requested page size, between 1 and MAX_PAGE_SIZE
+     */
+    private static int pageSize(Map<String, String> params) {
+
+        return Math.max(1, Math.min(MAX_PAGE_SIZE, intParam(params, "limit", DEFAULT_PAGE_SIZE)));
+    }
+
+    /**
+     * Sends a JSON response and closes the exchange
+     */
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     *
+     * @return an error body, eg: {"error":"Not signed in"}
+     */
+    private static String error(String message) {
+
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{\"error\":");
+        appendString(sb, message);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Appends a product as a JSON object. Prices are in cents.
+     */
+    private static void appendProduct(StringBuilder sb, Product p) {
+
+        sb.append("{\"id\":").append(p.getId());
+        sb.append(",\"name\":");
+        appendString(sb, p.getName());
+        sb.append(",\"priceCents\":").append(p.getPrice().getCents());
+        sb.append(",\"price\":");
+        appendString(sb, p.getPriceAsString());
+        sb.append(",\"image\":");
+        appendString(sb, p.getImageURL());
+        sb.append(",\"description\":");
+        appendString(sb, p.getDescription());
+        sb.append('}');
+    }
+
+    /**
+     * Appends a list of products as a JSON array
+     */
+    private static void appendProducts(StringBuilder sb, List<Product> products) {
+
+        sb.append('[');
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendProduct(sb, products.get(i));
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends an account's public details as a JSON object
+     */
+    private static void appendAccount(StringBuilder sb, Account a) {
+
+        sb.append("{\"username\":");
+        appendString(sb, a.getUsername());
+        sb.append(",\"balanceCents\":").append(a.getBalance().getCents()).append('}');
+    }
+
+    /**
+     * Appends an order as a JSON object
+     */
+    private static void appendOrder(StringBuilder sb, Order o) {
+
+        sb.append("{\"timestamp\":").append(o.getTimestamp());
+        sb.append(",\"totalCents\":").append(o.getTotal().getCents());
+        sb.append(",\"lines\":[");
+        for (int i = 0; i < o.getLineCount(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"product\":").append(o.getProductId(i));
+            sb.append(",\"quantity\":").append(o.getLineQuantity(i)).append('}');
+        }
+        sb.append("]}");
+    }
+
+    /**
+     * Appends a quoted, escaped JSON string, or null
+     */
+    private static void appendString(StringBuilder sb, String s) {
+
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
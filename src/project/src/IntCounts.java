@@ -0,0 +1,132 @@
+package project.src;
+
+import java.util.Arrays;
+
+/**
+ * A count for each of a set of int keys, such as product ids. Works like a
+ * HashMap&lt;Integer, Integer&gt; but stores the keys and counts in two int
+ * arrays (open addressing with linear probing), so there is no boxing and no
+ * entry object per key.
+ *
+ * Keys must not be negative. Not thread-safe.
+ *
+ * @author Josh Howson
+ */
+final class IntCounts {
+
+    /**
+     * Marks an unused slot in keys
+     */
+    private static final int FREE = -1;
+
+    /**
+     * The key in each slot, or FREE
+     */
+    private int[] keys;
+
+    /**
+     * The count of the key in each slot
+     */
+    private int[] counts;
+
+    /**
+     * The number of keys
+     */
+    private int size;
+
+    /**
+     * Constructor for an empty set of counts
+     */
+    IntCounts() {
+
+        keys = new int[8];
+        Arrays.fill(keys, FREE);
+        counts = new int[8];
+    }
+
+    /**
+     * Adds one to a key's count
+     *
+     * @param key the key, not negative
+     * @return the key's new count
+     * @throws IllegalArgumentException if the key is negative
+     */
+    int increment(int key) {
+
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys cannot be negative");
+        }
+        int slot = slot(keys, key);
+        if (keys[slot] == FREE) {
+            //keep the table at most half full so probes stay short
+            if (size * 2 >= keys.length) {
+                grow();
+                slot = slot(keys, key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        return ++counts[slot];
+    }
+
+    /**
+     *
+     * @param key the key
+     * @return the key's count, or zero if it has none
+     */
+    int get(int key) {
+
+        if (key < 0) {
+            return 0;
+        }
+        int slot = slot(keys, key);
+        return keys[slot] == FREE ? 0 : counts[slot];
+    }
+
+    /**
+     *
+     * @return the number of keys with a count
+     */
+    int size() {
+
+        return size;
+    }
+
+    /**
+     * Finds the slot holding a key, or the free slot where it would go
+     *
+     * @param table the keys to search
+     * @param key the key
+     * @return the slot's index
+     */
+    private static int slot(int[] table, int key) {
+
+        int mask = table.length - 1;
+        //spread the bits so sequential ids do not cluster
+        int h = key * 0x9E3779B9;
+        int i = (h ^ h >>> 16) & mask;
+        while (table[i] != FREE && table[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the size of the table
+     */
+    private void grow() {
+
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        counts = new int[oldCounts.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package project.src;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock levels for the products in the store, and the units held for carts.
+ *
+ * Adding a product to a cart reserves the units, taking them out of the stock
+ * straight away so they cannot be sold to anyone else. A purchase commits the
+ * reservation (the units are gone for good), while emptying the cart, signing
+ * out or leaving the reservation alone for longer than the timeout releases
+ * the units back into stock. "Buy It Now" takes units without reserving them.
+ *
+ * Each product's stock is split into stripes, each of which is an atomic
+ * counter updated with compare-and-set. New stock is shared out evenly
+ * between the stripes and threads start at different stripes, so many buyers
+ * of one hot product mostly update different counters instead of fighting
+ * over one lock. A purchase that a single stripe cannot cover
+ * gathers units from several, one such purchase at a time; if the stripes
+ * together are short it puts them back and fails, so stock never goes below
+ * zero.
+ *
+ * Products with no stock level set are not tracked and never run out, so a
+ * store without stock data behaves as it always has.
+ *
+ * @author Josh Howson
+ */
+public class Inventory {
+
+    /**
+     * How long a reservation is held after it was last changed, by default
+     */
+    public static final long DEFAULT_RESERVATION_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * Stock of each tracked product, by product id
+     */
+    private final Map<Integer, StripedStock> stock = new ConcurrentHashMap<>();
+
+    /**
+     * The units each holder (usually a session id) has reserved
+     */
+    private final Map<String, Reservations> holders = new ConcurrentHashMap<>();
+
+    /**
+     * The number of stripes each product's stock is split into
+     */
+    private final int stripes;
+
+    /**
+     * How long a reservation is held after it was last changed
+     */
+    private final long reservationMillis;
+
+    /**
+     * Constructor for an inventory with a stripe per two processors' worth of
+     * threads and the default reservation timeout
+     */
+    public Inventory() {
+
+        this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_RESERVATION_MILLIS);
+    }
+
+    /**
+     * Constructor for an inventory
+     *
+     * @param stripes the number of counters each product's stock is split
+     * into, rounded up to a power of two
+     * @param reservationMillis how long a reservation is held after it was
+     * last changed
+     * @throws IllegalArgumentException if either value is less than 1
+     */
+    public Inventory(int stripes, long reservationMillis) {
+
+        if (stripes < 1 || reservationMillis < 1) {
+            throw new IllegalArgumentException("Stripes and reservation time must be positive");
+        }
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = n;
+        this.reservationMillis = reservationMillis;
+    }
+
+    /**
+     * Sets the number of units in stock of a product, replacing any previous
+     * level. Units already reserved are not counted. Should be done before
+     * the product is put on sale.
+     *
+     * @param productId the product's id
+     * @param units the number of units available to sell
+     * @throws IllegalArgumentException if units is negative
+     */
+    public void setStock(int productId, long units) {
+
+        if (units < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative");
+        }
+        StripedStock s = new StripedStock(stripes);
+        s.spread(units);
+        stock.put(productId, s);
+    }
+
+    /**
+     * Adds units to a tracked product's stock, eg: a delivery
+     *
+     * @param productId the product's id
+     * @param units the number of units to add
+     * @throws IllegalArgumentException if units is negative or the product is
+     * not tracked
+     */
+    public void restock(int productId, long units) {
+
+        if (units < 0) {
+            throw new IllegalArgumentException("Cannot restock a negative amount");
+        }
+        StripedStock s = stock.get(productId);
+        if (s == null) {
+            throw new IllegalArgumentException("Product " + productId + " has no stock level");
+        }
+        s.spread(units);
+    }
+
+    /**
+     *
+     * @param productId the product's id
+     * @return true if the product has a stock level, false if it never runs
+     * out
+     */
+    public boolean isTracked(int productId) {
+
+        return stock.containsKey(productId);
+    }
+
+    /**
+     * The number of units that can be sold or reserved right now. Exact when
+     * nothing is buying the product at the same time.
+     *
+     * @param productId the product's id
+     * @return the units available, or Long.MAX_VALUE if it is not tracked
+     */
+    public long getAvailable(int productId) {
+
+        StripedStock s = stock.get(productId);
+        return s == null ? Long.MAX_VALUE : s.sum();
+    }
+
+    /**
+     * Takes units out of stock without reserving them, eg: for "Buy It Now"
+     *
+     * @param productId the product's id
+     * @param units the number of units to take
+     * @return true if they were taken, false if there were not enough
+     */
+    public boolean take(int productId, int units) {
+
+        StripedStock s = stock.get(productId);
+        return s == null || s.take(units);
+    }
+
+    /**
+     * Puts units that were taken back into stock, eg: when the payment for
+     * them failed
+     *
+     * @param productId the product's id
+     * @param units the number of units to put back
+     */
+    public void putBack(int productId, int units) {
+
+        StripedStock s = stock.get(productId);
+        if (s != null) {
+            s.add(units);
+        }
+    }
+
+    /**
+     * Sets how many units of a product a holder has reserved, taking more out
+     * of stock or putting the extra back as needed, and restarts the holder's
+     * reservation timeout. Zero releases the reservation.
+     *
+     * @param holder who the units are held for, usually a session id
+     * @param productId the product's id
+     * @param units the number of units that should be held
+     * @return true if the holder now has that many units, false if there was
+     * not enough stock (the reservation is then left as it was)
+     * @throws IllegalArgumentException if units is negative
+     */
+    public boolean reserve(String holder, int productId, int units) {
+
+        if (units < 0) {
+            throw new IllegalArgumentException("Cannot reserve a negative amount");
+        }
+        StripedStock s = stock.get(productId);
+        if (s == null) {
+            //untracked products never run out, so there is nothing to hold
+            return true;
+        }
+
+        while (true) {
+            Reservations r = holders.computeIfAbsent(holder, h -> new Reservations());
+            synchronized (r) {
+                if (r.released) {
+                    //expired while we were getting it, start a new one
+                    continue;
+                }
+                Integer held = r.units.get(productId);
+                int delta = units - (held == null ? 0 : held);
+                if (delta > 0 && !s.take(delta)) {
+                    return false;
+                }
+                if (delta < 0) {
+                    s.add(-delta);
+                }
+                if (units == 0) {
+                    r.units.remove(productId);
+                } else {
+                    r.units.put(productId, units);
+                }
+                r.expiresAt = System.currentTimeMillis() + reservationMillis;
+                return true;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param holder who the units are held for
+     * @param productId the product's id
+     * @return the number of units of the product the holder has reserved
+     */
+    public int getReserved(String holder, int productId) {
+
+        Reservations r = holders.get(holder);
+        if (r == null) {
+            return 0;
+        }
+        synchronized (r) {
+            Integer held = r.units.get(productId);
+            return held == null ? 0 : held;
+        }
+    }
+
+    /**
+     * Marks everything a holder has reserved as sold. The units are already
+     * out of stock, so the reservation is simply forgotten.
+     *
+     * @param holder who the units are held for
+     */
+    public void commit(String holder) {
+
+        Reservations r = holders.remove(holder);
+        if (r != null) {
+            synchronized (r) {
+                r.released = true;
+            }
+        }
+    }
+
+    /**
+     * Puts everything a holder has reserved back into stock
+     *
+     * @param holder who the units are held for
+     */
+    public void releaseAll(String holder) {
+
+        Reservations r = holders.remove(holder);
+        if (r != null) {
+            release(r);
+        }
+    }
+
+    /**
+     * Releases every reservation whose timeout has passed. Called
+     * periodically by the store.
+     *
+     * @return the number of holders whose reservations were released
+     */
+    public int expireReservations() {
+
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        for (Map.Entry<String, Reservations> e : holders.entrySet()) {
+            Reservations r = e.getValue();
+            synchronized (r) {
+                //checked again under the lock, as reserve() may have just
+                //extended it, and only removed if commit() or releaseAll()
+                //has not taken it first
+                if (!r.released && r.expiresAt < now && holders.remove(e.getKey(), r)) {
+                    release(r);
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Puts a removed holder's units back into stock
+     *
+     * @param r the holder's reservations, already removed from the map
+     */
+    private void release(Reservations r) {
+
+        synchronized (r) {
+            if (r.released) {
+                return;
+            }
+            r.released = true;
+            for (Map.Entry<Integer, Integer> e : r.units.entrySet()) {
+                putBack(e.getKey(), e.getValue());
+            }
+            r.units.clear();
+        }
+    }
+
+    /**
+     * The units one holder has reserved. Guarded by its own lock, so holders
+     * never wait on each other.
+     */
+    private static class Reservations {
+
+        /**
+         * Units held, by product id
+         */
+        private final HashMap<Integer, Integer> units = new HashMap<>();
+
+        /**
+         * When the reservation times out, in epoch milliseconds
+         */
+        private volatile long expiresAt;
+
+        /**
+         * Set once the reservations have been committed or released, after
+         * which this object must not be used again
+         */
+        private boolean released;
+    }
+
+    /**
+     * A stock counter split into stripes. Each stripe sits on its own cache
+     * line so that threads updating neighbouring stripes do not slow each
+     * other down.
+     */
+    private static class StripedStock {
+
+        /**
+         * Array slots between stripes: 8 longs make a 64 byte cache line
+         */
+        private static final int PAD = 8;
+
+        /**
+         * The stripes' counts, at every PAD-th slot
+         */
+        private final AtomicLongArray counts;
+
+        /**
+         * stripes - 1, used to pick a stripe from a hash
+         */
+        private final int mask;
+
+        StripedStock(int stripes) {
+
+            counts = new AtomicLongArray(stripes * PAD);
+            mask = stripes - 1;
+        }
+
+        /**
+         *
+         * @return the stripe the current thread starts at
+         */
+        private int home() {
+
+            //spread the thread id so neighbouring ids land on different stripes
+            long id = Thread.currentThread().getId();
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        }
+
+        /**
+         * Adds units to the current thread's stripe, eg: putting back units
+         * the thread took
+         */
+        void add(long units) {
+
+            counts.addAndGet(home() * PAD, units);
+        }
+
+        /**
+         * Shares units out evenly between every stripe, with any left over
+         * going to the first stripes. New stock goes in this way so that the
+         * buyers of a product that never has units put back are spread over
+         * every stripe, not all taking from the one it was loaded into.
+         */
+        void spread(long units) {
+
+            int stripes = mask + 1;
+            long each = units / stripes;
+            long extra = units % stripes;
+            for (int i = 0; i < stripes; i++) {
+                long share = each + (i < extra ? 1 : 0);
+                if (share > 0) {
+                    counts.addAndGet(i * PAD, share);
+                }
+            }
+        }
+
+        /**
+         *
+         * @return the total count of every stripe
+         */
+        long sum() {
+
+            long total = 0;
+            for (int i = 0; i <= mask; i++) {
+                total += counts.get(i * PAD);
+            }
+            return total;
+        }
+
+        /**
+         * Takes units from the stripes, starting at the current thread's one.
+         * Only takes the lock when no one stripe has enough.
+         *
+         * @return true if all of them were taken, false if there were not
+         * enough (nothing is taken)
+         */
+        boolean take(long units) {
+
+            int start = home();
+            //fast path: one stripe covers the whole amount
+            for (int i = 0; i <= mask; i++) {
+                int slot = ((start + i) & mask) * PAD;
+                long v = counts.get(slot);
+                while (v >= units) {
+                    if (counts.compareAndSet(slot, v, v - units)) {
+                        return true;
+                    }
+                    v = counts.get(slot);
+                }
+            }
+
+            //slow path: gather what each stripe has, and put it all back if
+            //the stripes together are short. One thread gathers at a time,
+            //otherwise two buyers could each hold part of the stock, both
+            //come up short and both be refused when there was enough for one.
+            synchronized (this) {
+                long needed = units;
+                long[] taken = new long[mask + 1];
+                for (int i = 0; i <= mask && needed > 0; i++) {
+                    int stripe = (start + i) & mask;
+                    int slot = stripe * PAD;
+                    long v = counts.get(slot);
+                    while (v > 0) {
+                        long t = Math.min(v, needed);
+                        if (counts.compareAndSet(slot, v, v - t)) {
+                            taken[stripe] = t;
+                            needed -= t;
+                            break;
+                        }
+                        v = counts.get(slot);
+                    }
+                }
+                if (needed > 0) {
+                    for (int i = 0; i <= mask; i++) {
+                        if (taken[i] > 0) {
+                            counts.addAndGet(i * PAD, taken[i]);
+                        }
+                    }
+                    return false;
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package project.src;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations (or any other non-negative long values) with
+ * buckets that grow exponentially, like an HDR histogram. Every power of two
+ * is split into 16 buckets, so any recorded value is reported to within about
+ * 6% while the whole range of a long fits into 960 counters.
+ *
+ * Recording is lock-free and may be done from any number of threads at once.
+ *
+ * @author Josh Howson
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits used to split each power of two into buckets
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * The number of buckets for each power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Total number of buckets: values below SUB_BUCKETS get a bucket each,
+     * then every power of two up to 2^62 gets SUB_BUCKETS buckets
+     */
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of values recorded in each bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of values recorded
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of all values recorded, used for the mean
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The largest value recorded
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. Negative values are recorded as zero.
+     *
+     * @param value the value to record, usually a duration in nanoseconds
+     */
+    public void record(long value) {
+
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     *
+     * @return the number of values recorded
+     */
+    public long getCount() {
+
+        return count.sum();
+    }
+
+    /**
+     *
+     * @return the mean of the recorded values, 0 if nothing was recorded
+     */
+    public double getMean() {
+
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     *
+     * @return the largest value recorded
+     */
+    public long getMax() {
+
+        return max.get();
+    }
+
+    /**
+     * Finds the value that the given percentage of recorded values are less
+     * than or equal to. The result is the highest value of the bucket the
+     * percentile falls in.
+     *
+     * @param percentile the percentile to find, between 0 and 100
+     * @return the value at the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Formats a summary of the histogram for the log, treating the values as
+     * nanoseconds, eg: "n=12 mean=3.1ms p50=2.9ms p90=4.0ms p99=6.2ms
+     * max=6.3ms"
+     *
+     * @return the formatted summary
+     */
+    public String summary() {
+
+        return "n=" + getCount()
+                + " mean=" + formatMillis((long) getMean())
+                + " p50=" + formatMillis(getValueAtPercentile(50))
+                + " p90=" + formatMillis(getValueAtPercentile(90))
+                + " p99=" + formatMillis(getValueAtPercentile(99))
+                + " max=" + formatMillis(getMax());
+    }
+
+    /**
+     * Formats a duration in nanoseconds as milliseconds, eg: "12.3ms"
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the formatted duration
+     */
+    public static String formatMillis(long nanos) {
+
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    /**
+     * Works out which bucket a value is counted in
+     *
+     * @param value a non-negative value
+     * @return the index of the value's bucket
+     */
+    private static int bucketOf(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        //how far the value's top SUB_BUCKET_BITS bits are from the bottom
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    /**
+     *
+     * @param bucket the index of a bucket
+     * @return the largest value that is counted in the bucket
+     */
+    private static long highestValueIn(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + sub) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,379 @@
+package project.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load driver. Simulates any number of virtual shoppers using the
+ * store at once, straight against a StoreEngine with no user interface, and
+ * reports the throughput and latency percentiles of each operation.
+ *
+ * Each shopper repeatedly runs a session like a real visit: log in, search a
+ * few times, look at a product listing (with its "also bought" products),
+ * add one to three products to the cart, check out and log out. Shoppers are
+ * paced: each aims to start one operation every --pace milliseconds.
+ *
+ * Two latencies are recorded for every operation. Service time runs from
+ * when the operation actually started. Response time runs from when it
+ * should have started by the shopper's schedule. When the store stalls, a
+ * shopper falls behind its schedule, and every operation it then runs late
+ * is charged the wait. This corrects for coordinated omission: service time
+ * alone hides stalls, because a stalled shopper stops sending the requests
+ * that would have measured them. If response time is well above service
+ * time, the store is not keeping up with the offered load.
+ *
+ * Shoppers sign in as "user" + i with the password "pass" + i, as written by
+ * DatasetGenerator. Missing accounts are created, and accounts are given
+ * credit when a checkout is declined. Nothing is saved to file.
+ *
+ * Run with: java -cp build/classes project.src.LoadDriver [--users N]
+ * [--seconds N] [--warmup N] [--pace MS] [--data DIR]
+ *
+ * @author Josh Howson
+ */
+public class LoadDriver {
+
+    /**
+     * The operations in a session, in the order they are run
+     */
+    private static final String[] OPERATIONS = {"login", "search", "listing", "addToCart", "checkout", "logout"};
+
+    /**
+     * Credit added when a checkout is declined
+     */
+    private static final Money TOP_UP = Money.ofCents(1_000_000);
+
+    /**
+     * The engine under load
+     */
+    private final StoreEngine engine;
+
+    /**
+     * The catalog, as an array for quick random picks
+     */
+    private final Product[] products;
+
+    /**
+     * Words from product names, used as search queries
+     */
+    private final String[] queries;
+
+    /**
+     * The time between the scheduled starts of a shopper's operations, in
+     * nanoseconds
+     */
+    private final long paceNanos;
+
+    /**
+     * Operations that finish before this time are not recorded
+     */
+    private volatile long recordFrom;
+
+    /**
+     * Service time of each operation, by name
+     */
+    private final Map<String, LatencyHistogram> service = new HashMap<>();
+
+    /**
+     * Response time (from the scheduled start) of each operation, by name
+     */
+    private final Map<String, LatencyHistogram> response = new HashMap<>();
+
+    /**
+     * Checkouts declined for lack of credit
+     */
+    private final LongAdder declined = new LongAdder();
+
+    /**
+     * Sessions finished
+     */
+    private final LongAdder sessions = new LongAdder();
+
+    /**
+     * Set to stop the shoppers
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Constructor for a driver
+     *
+     * @param engine the engine to drive. Its products should be loaded.
+     * @param paceMillis the time between the scheduled starts of a shopper's
+     * operations
+     * @throws IllegalArgumentException if the engine has no products
+     */
+    public LoadDriver(StoreEngine engine, long paceMillis) {
+
+        List<Product> catalog = engine.getProducts();
+        if (catalog.isEmpty()) {
+            throw new IllegalArgumentException("There are no products to shop for");
+        }
+        this.engine = engine;
+        this.products = catalog.toArray(new Product[0]);
+        this.paceNanos = TimeUnit.MILLISECONDS.toNanos(paceMillis);
+
+        //queries are the brand or item words of product names, some cut
+        //short as if still being typed
+        ArrayList<String> words = new ArrayList<>();
+        for (int i = 0; i < Math.min(products.length, 1000); i++) {
+            String[] nameWords = products[i].getName().split(" ");
+            String w = nameWords[Math.min(i % 2, nameWords.length - 1)].toLowerCase();
+            words.add(i % 3 == 0 && w.length() > 3 ? w.substring(0, 3) : w);
+        }
+        this.queries = words.toArray(new String[0]);
+
+        for (String op : OPERATIONS) {
+            service.put(op, new LatencyHistogram());
+            response.put(op, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Runs the driver
+     *
+     * @param args the options, see the class comment
+     * @throws IOException if the data files cannot be read
+     * @throws InterruptedException if interrupted while running
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        int users = Integer.parseInt(options.getOrDefault("users", "100"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        long pace = Long.parseLong(options.getOrDefault("pace", "50"));
+        File data = new File(options.getOrDefault("data", "."));
+
+        StoreEngine engine = new StoreEngine(new File(data, "products.txt"), new File(data, "accounts.txt"));
+        engine.loadProducts();
+        engine.loadAccounts();
+        File stock = new File(data, "stock.txt");
+        if (stock.exists()) {
+            engine.loadStock(stock);
+        }
+
+        System.out.println("Driving " + engine.getProducts().size() + " products and "
+                + engine.getAccounts().size() + " accounts with " + users + " shoppers for "
+                + warmup + "s warmup + " + seconds + "s, one operation each every " + pace + "ms");
+        engine.getMetrics().register("loaddriver");
+        LoadDriver driver = new LoadDriver(engine, pace);
+        driver.run(users, warmup, seconds);
+        System.out.println(driver.report(seconds));
+    }
+
+    /**
+     * Runs the shoppers for the warmup and then the measured time, then stops
+     * them
+     *
+     * @param users the number of shoppers
+     * @param warmupSeconds how long to run before recording
+     * @param seconds how long to record for
+     * @throws InterruptedException if interrupted while running
+     */
+    public void run(int users, int warmupSeconds, int seconds) throws InterruptedException {
+
+        recordFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        ExecutorService executor = Threads.newThreadPerTaskExecutor("shopper");
+        for (int u = 0; u < users; u++) {
+            int user = u;
+            executor.execute(() -> shop(user));
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds + seconds));
+        stopping = true;
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * One shopper's sessions, until the driver stops
+     *
+     * @param user the shopper's number, which picks its account
+     */
+    private void shop(int user) {
+
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        String username = "user" + user;
+        String password = "pass" + user;
+        if (engine.login(username, password) == null) {
+            try {
+                engine.createAccount(username, password);
+            } catch (IllegalArgumentException ex) {
+                //taken with a different password, use a name of our own
+                username = "loaddriver" + user;
+                engine.createAccount(username, password);
+            }
+        }
+
+        //start at a random point in the pace so shoppers do not move in step
+        long scheduled = System.nanoTime() + (paceNanos > 0 ? rand.nextLong(paceNanos) : 0);
+        while (!stopping) {
+            scheduled = waitFor(scheduled);
+            long start = System.nanoTime();
+            Session s = engine.login(username, password);
+            scheduled = record("login", scheduled, start);
+
+            int searches = 1 + rand.nextInt(3);
+            Product viewed = null;
+            for (int i = 0; i < searches && !stopping; i++) {
+                scheduled = waitFor(scheduled);
+                start = System.nanoTime();
+                SearchPage page = engine.search(queries[rand.nextInt(queries.length)], null, 24);
+                if (!page.getResults().isEmpty()) {
+                    viewed = page.getResults().get(rand.nextInt(page.getResults().size()));
+                }
+                scheduled = record("search", scheduled, start);
+            }
+            if (viewed == null) {
+                viewed = products[rand.nextInt(products.length)];
+            }
+
+            scheduled = waitFor(scheduled);
+            start = System.nanoTime();
+            engine.recordView(viewed);
+            ArrayList<Product> alsoBought = engine.getRecommender().getAlsoBought(viewed, 4);
+            scheduled = record("listing", scheduled, start);
+
+            int adds = 1 + rand.nextInt(3);
+            for (int i = 0; i < adds && !stopping; i++) {
+                Product p = (i == 0 || alsoBought.isEmpty()) ? viewed : alsoBought.get(rand.nextInt(alsoBought.size()));
+                scheduled = waitFor(scheduled);
+                start = System.nanoTime();
+                engine.addToCart(s, p);
+                scheduled = record("addToCart", scheduled, start);
+            }
+
+            scheduled = waitFor(scheduled);
+            start = System.nanoTime();
+            Order o;
+            try {
+                o = engine.checkout(s);
+            } catch (IllegalStateException ex) {
+                //sold out, which is a normal result under load
+                o = null;
+            }
+            scheduled = record("checkout", scheduled, start);
+            if (o == null && s.getAccount().getBalance().compareTo(TOP_UP) < 0) {
+                declined.increment();
+                engine.addCredit(s, TOP_UP);
+            }
+
+            scheduled = waitFor(scheduled);
+            start = System.nanoTime();
+            engine.logout(s.getId());
+            scheduled = record("logout", scheduled, start);
+            if (System.nanoTime() >= recordFrom) {
+                sessions.increment();
+            }
+        }
+    }
+
+    /**
+     * Sleeps until an operation's scheduled start. Does not sleep if the
+     * shopper is already behind.
+     *
+     * @param scheduled the scheduled start, in System.nanoTime() terms
+     * @return the scheduled start
+     */
+    private long waitFor(long scheduled) {
+
+        long wait = scheduled - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                stopping = true;
+            }
+        }
+        return scheduled;
+    }
+
+    /**
+     * Records an operation that has just finished
+     *
+     * @param op the operation's name
+     * @param scheduled when it should have started
+     * @param start when it actually started
+     * @return when the shopper's next operation should start
+     */
+    private long record(String op, long scheduled, long start) {
+
+        long end = System.nanoTime();
+        if (end >= recordFrom) {
+            service.get(op).record(end - start);
+            response.get(op).record(end - scheduled);
+        }
+        return scheduled + paceNanos;
+    }
+
+    /**
+     * Formats the results as a table with one row per operation
+     *
+     * @param seconds how long results were recorded for
+     * @return the formatted table
+     */
+    public String report(int seconds) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-10s %10s %9s | %-32s | %-32s%n", "operation", "count", "ops/s",
+                "service p50 / p99 / p99.9 / max", "response p50 / p99 / p99.9 / max"));
+        long total = 0;
+        for (String op : OPERATIONS) {
+            LatencyHistogram s = service.get(op);
+            LatencyHistogram r = response.get(op);
+            total += s.getCount();
+            sb.append(String.format("%-10s %10d %9.0f | %-32s | %-32s%n", op, s.getCount(),
+                    (double) s.getCount() / seconds, percentiles(s), percentiles(r)));
+        }
+        sb.append(String.format("total %d operations (%.0f/s), %d sessions (%.1f/s), %d checkouts declined",
+                total, (double) total / seconds, sessions.sum(), (double) sessions.sum() / seconds,
+                declined.sum()));
+        return sb.toString();
+    }
+
+    /**
+     *
+     * @return the p50, p99, p99.9 and max of a histogram, in milliseconds
+     */
+    private static String percentiles(LatencyHistogram h) {
+
+        return String.format("%.2f / %.2f / %.2f / %.2f", h.getValueAtPercentile(50) / 1e6,
+                h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMax() / 1e6);
+    }
+
+    /**
+     *
+     * @param op the operation's name, eg: "checkout"
+     * @return the operation's service time histogram
+     */
+    public LatencyHistogram getServiceTime(String op) {
+
+        return service.get(op);
+    }
+
+    /**
+     *
+     * @param op the operation's name, eg: "checkout"
+     * @return the operation's response time histogram, corrected for
+     * coordinated omission
+     */
+    public LatencyHistogram getResponseTime(String op) {
+
+        return response.get(op);
+    }
+}
@@ -0,0 +1,216 @@
+package project.src;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Immutable amount of money stored as a whole number of cents, so adding and
+ * subtracting prices never drifts the way doubles do.
+ *
+ * Each Money remembers its display string ("$12.34") the first time it is
+ * asked for it. Products keep the same Money for their price, so a price is
+ * only ever formatted once. Amounts that change often (balances and totals)
+ * can be written straight into a reusable buffer with appendTo() or a
+ * MoneyFormatter without going through String.format.
+ *
+ * @author Josh Howson
+ */
+public final class Money implements Comparable<Money> {
+
+    /**
+     * No money at all
+     */
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * The longest text parse() will read, well past any amount a long of
+     * cents can hold, so feeds and HTTP clients cannot make it work through
+     * an enormous number
+     */
+    private static final int MAX_LENGTH = 40;
+
+    /**
+     * The amount in cents
+     */
+    private final long cents;
+
+    /**
+     * The formatted amount, eg: "$12.34". Created the first time toString()
+     * is called.
+     */
+    private String display;
+
+    /**
+     * Private constructor, use ofCents() or parse()
+     *
+     * @param cents the amount in cents
+     */
+    private Money(long cents) {
+
+        this.cents = cents;
+    }
+
+    /**
+     * Creates an amount from a number of cents
+     *
+     * @param cents the amount in cents, eg: 1234 for $12.34
+     * @return the amount
+     */
+    public static Money ofCents(long cents) {
+
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Reads an amount written as a decimal number of dollars, like the prices
+     * and balances in the data files (eg: "12.34", "7.8" or "-5"). A leading
+     * "$" is allowed. Amounts with more than two decimal places are rounded to
+     * the nearest cent. Exponents (eg: "1e3") are not allowed: BigDecimal would
+     * expand "1e999999999" in full before finding it out of range.
+     *
+     * @param text the amount to read
+     * @return the amount
+     * @throws NumberFormatException if the text is not a valid amount
+     */
+    public static Money parse(String text) throws NumberFormatException {
+
+        String value = text.trim();
+        if (value.startsWith("$")) {
+            value = value.substring(1);
+        }
+        if (value.length() > MAX_LENGTH) {
+            throw new NumberFormatException("Amount out of range: " + text.substring(0, MAX_LENGTH) + "...");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            //only digits, a sign and a decimal point, no exponent
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != '+') {
+                throw new NumberFormatException("Not an amount: " + text);
+            }
+        }
+        try {
+            return ofCents(new BigDecimal(value).setScale(2, RoundingMode.HALF_UP)
+                    .movePointRight(2).longValueExact());
+        } catch (ArithmeticException ex) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    /**
+     *
+     * @return the amount in cents
+     */
+    public long getCents() {
+
+        return cents;
+    }
+
+    /**
+     *
+     * @param other the amount to add
+     * @return the sum of the two amounts
+     */
+    public Money plus(Money other) {
+
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    /**
+     *
+     * @param other the amount to subtract
+     * @return this amount minus the other amount
+     */
+    public Money minus(Money other) {
+
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    /**
+     *
+     * @param quantity the number to multiply by
+     * @return this amount multiplied by the quantity
+     */
+    public Money times(int quantity) {
+
+        return ofCents(Math.multiplyExact(cents, (long) quantity));
+    }
+
+    /**
+     *
+     * @return true if the amount is less than zero
+     */
+    public boolean isNegative() {
+
+        return cents < 0;
+    }
+
+    /**
+     * Formats the amount for writing to a CSV file, eg: "12.34"
+     *
+     * @return the amount without a dollar sign
+     */
+    public String toPlainString() {
+
+        String formatted = toString();
+        return cents < 0 ? "-" + formatted.substring(2) : formatted.substring(1);
+    }
+
+    /**
+     * Formats the amount like "$12.34". The string is created once and
+     * reused after that.
+     *
+     * @return the formatted amount
+     */
+    @Override
+    public String toString() {
+
+        //a race here can only format the same string twice, which is harmless
+        String result = display;
+        if (result == null) {
+            result = appendTo(new StringBuilder(12), cents).toString();
+            display = result;
+        }
+        return result;
+    }
+
+    /**
+     * Writes an amount of cents into a buffer formatted like "$12.34" (or
+     * "-$12.34"). Uses only StringBuilder's own number formatting, so nothing
+     * is allocated unless the buffer has to grow.
+     *
+     * @param out the buffer to write to
+     * @param cents the amount in cents
+     * @return the buffer, for chaining
+     */
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+
+        long dollars = cents / 100;
+        int remainder = (int) (cents % 100);
+        if (cents < 0) {
+            out.append('-');
+            dollars = -dollars;
+            remainder = -remainder;
+        }
+        return out.append('$').append(dollars).append('.')
+                .append((char) ('0' + remainder / 10))
+                .append((char) ('0' + remainder % 10));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Long.hashCode(cents);
+    }
+}
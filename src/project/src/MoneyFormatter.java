@@ -0,0 +1,46 @@
+package project.src;
+
+/**
+ * Reusable formatter for labelled amounts of money, eg: "Subtotal: $12.34".
+ * It keeps one buffer and writes every amount into it, so formatting does not
+ * create a Formatter or any intermediate strings. Only the final String handed
+ * to the UI is allocated.
+ *
+ * A MoneyFormatter is not thread-safe. Give each page (or thread) its own.
+ *
+ * @author Josh Howson
+ */
+public class MoneyFormatter {
+
+    /**
+     * The buffer every amount is written into
+     */
+    private final StringBuilder buffer = new StringBuilder(32);
+
+    /**
+     * Formats a label followed by an amount
+     *
+     * @param label the text before the amount, eg: "Subtotal: "
+     * @param cents the amount in cents
+     * @return the formatted text, eg: "Subtotal: $12.34"
+     */
+    public String format(String label, long cents) {
+
+        buffer.setLength(0);
+        buffer.append(label);
+        Money.appendTo(buffer, cents);
+        return buffer.toString();
+    }
+
+    /**
+     * Formats a label followed by an amount
+     *
+     * @param label the text before the amount, eg: "Subtotal: "
+     * @param amount the amount
+     * @return the formatted text, eg: "Subtotal: $12.34"
+     */
+    public String format(String label, Money amount) {
+
+        return format(label, amount.getCents());
+    }
+}
@@ -0,0 +1,130 @@
+package project.src;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a latency histogram for one kind of store operation, such as
+ * logins or searches. Recording is lock-free, so it can be done from every
+ * request thread. Exposed to JMX as an OperationStatsMBean.
+ *
+ * @author Josh Howson
+ */
+public class OperationStats implements OperationStatsMBean {
+
+    /**
+     * How long each run took, in nanoseconds
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * The number of runs that failed
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * The total of every run's item count
+     */
+    private final LongAdder items = new LongAdder();
+
+    /**
+     * What the item count means for this operation
+     */
+    private final String itemsDescription;
+
+    /**
+     * Constructor for an operation's stats
+     *
+     * @param itemsDescription what the item count means, eg: "results"
+     */
+    public OperationStats(String itemsDescription) {
+
+        this.itemsDescription = itemsDescription;
+    }
+
+    /**
+     * Records one run of the operation
+     *
+     * @param startNanos when it started, from System.nanoTime()
+     * @param succeeded false if it failed
+     * @param itemCount the number of items it handled
+     */
+    public void record(long startNanos, boolean succeeded, long itemCount) {
+
+        latency.record(System.nanoTime() - startNanos);
+        if (!succeeded) {
+            failures.increment();
+        }
+        if (itemCount != 0) {
+            items.add(itemCount);
+        }
+    }
+
+    /**
+     *
+     * @return the operation's latency histogram
+     */
+    public LatencyHistogram getLatency() {
+
+        return latency;
+    }
+
+    @Override
+    public long getCount() {
+
+        return latency.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+
+        return failures.sum();
+    }
+
+    @Override
+    public long getItems() {
+
+        return items.sum();
+    }
+
+    @Override
+    public String getItemsDescription() {
+
+        return itemsDescription;
+    }
+
+    @Override
+    public double getMeanMillis() {
+
+        return latency.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+
+        return latency.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP90Millis() {
+
+        return latency.getValueAtPercentile(90) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+
+        return latency.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+
+        return latency.getValueAtPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+
+        return latency.getMax() / 1e6;
+    }
+}
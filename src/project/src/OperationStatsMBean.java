@@ -0,0 +1,71 @@
+package project.src;
+
+/**
+ * JMX view of one store operation's counters and latency. See OperationStats.
+ *
+ * @author Josh Howson
+ */
+public interface OperationStatsMBean {
+
+    /**
+     *
+     * @return the number of times the operation has run
+     */
+    long getCount();
+
+    /**
+     *
+     * @return the number of times it failed, eg: a wrong password or a
+     * declined purchase
+     */
+    long getFailures();
+
+    /**
+     *
+     * @return the total of the operation's item counts, eg: search results or
+     * bytes written. What is counted depends on the operation.
+     */
+    long getItems();
+
+    /**
+     *
+     * @return what getItems() counts
+     */
+    String getItemsDescription();
+
+    /**
+     *
+     * @return the mean time taken, in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     *
+     * @return the median time taken, in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     *
+     * @return the 90th percentile time taken, in milliseconds
+     */
+    double getP90Millis();
+
+    /**
+     *
+     * @return the 99th percentile time taken, in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     *
+     * @return the 99.9th percentile time taken, in milliseconds
+     */
+    double getP999Millis();
+
+    /**
+     *
+     * @return the longest time taken, in milliseconds
+     */
+    double getMaxMillis();
+}
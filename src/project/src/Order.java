@@ -1,27 +1,49 @@
 package project.src;
 
-import java.util.ArrayList;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Immutable class containing items purchased, total, the date when the order
  * was made.
  *
+ * The items are stored compactly as one line per product: parallel arrays of
+ * product ids and the quantity bought of each. They are read through indexed
+ * getters, so looking at an order never copies it.
+ *
  * @author Josh Howson
  */
 public final class Order {
 
-    private final ArrayList<Product> items;
+    /**
+     * Formats dates like "11/Jul/2019", in GMT
+     */
+    private static final DateTimeFormatter DATE_FORMAT
+            = DateTimeFormatter.ofPattern("d/MMM/yyyy", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    /**
+     * The id of the product on each line of the order
+     */
+    private final int[] productIds;
+
+    /**
+     * The quantity bought of the product on each line of the order
+     */
+    private final int[] quantities;
 
     /**
      * The total cost of the order
      */
-    private final double total;
+    private final Money total;
 
     /**
-     * The date the order was placed on
+     * The time the order was placed on, in milliseconds since the epoch
      */
-    private final Date date;
+    private final long timestamp;
 
     /**
      * The count of the items purchased
@@ -29,51 +51,122 @@ public final class Order {
     private final int quantity;
 
     /**
-     * Constructor for order.
+     * The formatted date. Created the first time getDate() is called.
+     */
+    private String date;
+
+    /**
+     * Constructor for an order of everything in a cart. Copies the cart's line
+     * items, so the cart can be changed or thrown away afterwards.
      *
      * Sets the date value to the time at which it was instantiated.
      *
-     * @param items the items purchased in the order.
+     * @param cart the cart being purchased
      * @param total the total cost of the order
-     * @param quantity the number of items purchased
      */
-    public Order(ArrayList items, double total, int quantity) {
+    public Order(Cart cart, Money total) {
 
-        this.items = items;
+        Map<Integer, Integer> lines = cart.getLineItems();
+        this.productIds = new int[lines.size()];
+        this.quantities = new int[lines.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+            productIds[i] = line.getKey();
+            quantities[i] = line.getValue();
+            i++;
+        }
         this.total = total;
-        //no-arg constructor represents the time at which it was instantiated
-        this.date = new Date();
-        this.quantity = quantity;
+        this.timestamp = System.currentTimeMillis();
+        this.quantity = cart.getItemCount();
+    }
+
+    /**
+     * Constructor for an order of a single product ("Buy It Now").
+     *
+     * Sets the date value to the time at which it was instantiated.
+     *
+     * @param p the product purchased
+     * @param total the total cost of the order
+     */
+    public Order(Product p, Money total) {
+
+        this(new int[]{p.getId()}, new int[]{1}, total, System.currentTimeMillis());
     }
 
     /**
-     * Returns a clone of the the list of items to keep the class immutable
+     * Constructor for an order with known lines and time, eg: one read back
+     * from a file. The arrays are copied.
      *
-     * @return a clone of the order's items
+     * @param productIds the id of the product on each line
+     * @param quantities the quantity of each line
+     * @param total the total cost of the order
+     * @param timestamp the time the order was placed, in epoch milliseconds
+     * @throws IllegalArgumentException if the arrays are different lengths
      */
-    public ArrayList<Product> getItems() {
-        
-        //clone getItems
-        return (ArrayList<Product>) items.clone();
+    public Order(int[] productIds, int[] quantities, Money total, long timestamp) {
+
+        if (productIds.length != quantities.length) {
+            throw new IllegalArgumentException("Every product needs a quantity");
+        }
+        this.productIds = Arrays.copyOf(productIds, productIds.length);
+        this.quantities = Arrays.copyOf(quantities, quantities.length);
+        this.total = total;
+        this.timestamp = timestamp;
+
+        int count = 0;
+        for (int q : quantities) {
+            count += q;
+        }
+        this.quantity = count;
+    }
+
+    /**
+     *
+     * @return the number of different products in the order
+     */
+    public int getLineCount() {
+
+        return productIds.length;
+    }
+
+    /**
+     *
+     * @param line the index of the line, from 0 to getLineCount() - 1
+     * @return the id of the product on that line
+     */
+    public int getProductId(int line) {
+
+        return productIds[line];
+    }
+
+    /**
+     *
+     * @param line the index of the line, from 0 to getLineCount() - 1
+     * @return the quantity bought of the product on that line
+     */
+    public int getLineQuantity(int line) {
+
+        return quantities[line];
     }
 
     /**
      *
      * @return the total price of the order
      */
-    public double getTotal() {
-        
+    public Money getTotal() {
+
         return total;
     }
 
     /**
-     * Formatted string representation of the total price
+     * Formatted string representation of the total price. Cached by the
+     * total, so it is only formatted once.
      *
      * @return the formatted price
      */
     public String getTotalAsString() {
-        
-        return String.format("$%.2f", total);
+
+        return total.toString();
     }
 
     /**
@@ -81,19 +174,52 @@ public final class Order {
      * @return the number of items in the order
      */
     public int getQuantity() {
-        
+
         return quantity;
     }
 
     /**
-     * Formatted date string
+     *
+     * @return the time the order was placed, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+
+        return timestamp;
+    }
+
+    /**
+     * Formats a string to be written to a CSV file. The lines are written as
+     * "ID:QUANTITY" pairs separated by semicolons.
+     *
+     * @return the formatted line, eg: "1563000000000,799.99,4:1;12:2"
+     */
+    public String toCSV() {
+
+        StringBuilder sb = new StringBuilder(32 + productIds.length * 8);
+        sb.append(timestamp).append(',').append(total.toPlainString()).append(',');
+        for (int i = 0; i < productIds.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            sb.append(productIds[i]).append(':').append(quantities[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formatted date string, eg: "11/Jul/2019". Formatted once and then
+     * reused.
      *
      * @return the formatted date string
      */
     public String getDate() {
-        
-        String line = date.toGMTString();
-        String data[] = line.split(" ");
-        return data[0] + "/" + data[1] + "/" + data[2];
+
+        //a race here can only format the same string twice, which is harmless
+        String result = date;
+        if (result == null) {
+            result = DATE_FORMAT.format(Instant.ofEpochMilli(timestamp));
+            date = result;
+        }
+        return result;
     }
-}
\ No newline at end of file
+}
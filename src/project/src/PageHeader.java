@@ -0,0 +1,340 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.adapter.ReadOnlyJavaBeanObjectProperty;
+import javafx.beans.property.adapter.ReadOnlyJavaBeanObjectPropertyBuilder;
+import javafx.beans.property.adapter.ReadOnlyJavaBeanStringProperty;
+import javafx.beans.property.adapter.ReadOnlyJavaBeanStringPropertyBuilder;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.geometry.Side;
+import javafx.scene.Cursor;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+
+/**
+ * The header shown at the top of every page once a user is signed in. It holds
+ * the logo, the user's details, the account buttons and the search bar.
+ *
+ * Only one header is ever built. SceneLoader hands the same header to every
+ * page it creates (a node can only have one parent, so adding it to a new page
+ * moves it there). The username and balance are bound to the signed in
+ * account, so they stay up to date without rebuilding the page. Products are
+ * suggested under the search field as the user types.
+ *
+ * @author Josh Howson
+ */
+public class PageHeader extends VBox {
+
+    /**
+     * Shows "Welcome, username"
+     */
+    private final Text username;
+
+    /**
+     * Shows the account's current balance
+     */
+    private final Text balance;
+
+    /**
+     * The account the header is currently showing. null when signed out.
+     */
+    private Account account;
+
+    /**
+     * Drops down under the search field with suggested products
+     */
+    private final ContextMenu suggestions;
+
+    /**
+     * The number of products suggested under the search field
+     */
+    private static final int SUGGESTION_COUNT = 8;
+
+    /**
+     * Observable view of the account's username
+     */
+    private ReadOnlyJavaBeanStringProperty usernameProperty;
+
+    /**
+     * Observable view of the account's balance
+     */
+    private ReadOnlyJavaBeanObjectProperty<Money> balanceProperty;
+
+    /**
+     * The balance as last seen on the Application Thread. The account's
+     * balance changes on whichever thread paid or added credit, often an
+     * AsyncCommands worker, so the balance text is bound to this instead and
+     * changes are copied across on the Application Thread.
+     */
+    private final ObjectProperty<Money> shownBalance = new SimpleObjectProperty<>();
+
+    /**
+     * Builds the header's nodes and handlers. Call setAccount() to show a user
+     * in it.
+     */
+    public PageHeader() {
+
+        //logo
+        ImageView logo = new ImageView(ScreenMetrics.loadImage("images/logo small.png"));
+        logo.setFitWidth(200);
+        logo.preserveRatioProperty().set(true);
+
+        StackPane logoWrapper = new StackPane(logo);
+        logoWrapper.setAlignment(Pos.TOP_LEFT);
+        logoWrapper.setCursor(Cursor.HAND);
+        logoWrapper.setOnMouseClicked(e -> {
+            SceneLoader.currentStage.setScene(SceneLoader.getHomeScreen());
+        });
+
+        //user details pane, filled in by setAccount()
+        username = new Text();
+        balance = new Text();
+
+        //add credit and signout buttons as well as their handlers
+        Button addCredit = new Button("Add Credit");
+        addCredit.setOnAction(e -> {
+            addCredit();
+        });
+
+        Button signOut = new Button("Sign out");
+        signOut.setOnAction(e -> {
+            //end the session and save accounts on a worker thread, then go
+            //to login screen
+            AsyncCommands.submit(() -> {
+                Store.signOut();
+                return null;
+            }, none -> {
+                setAccount(null);
+                SceneLoader.currentStage.setScene(SceneLoader.getLoginPage());
+            }, SceneLoader::commandFailed);
+        });
+        addCredit.disableProperty().bind(AsyncCommands.busyProperty());
+        signOut.disableProperty().bind(AsyncCommands.busyProperty());
+
+        Button orders = new Button("My orders");
+        orders.setOnAction(e -> {
+            SceneLoader.currentStage.setScene(SceneLoader.getOrderView(Store.getCurrentAccount().getOrders()));
+        });
+
+        //button container for horizontal layout
+        HBox accountButtons = new HBox(10, AsyncCommands.createProgressIndicator(), addCredit, orders, signOut);
+        accountButtons.setAlignment(Pos.CENTER_RIGHT);
+        accountButtons.setPadding(new Insets(5, 0, 0, 0));
+
+        VBox userDetails = new VBox(5, username, balance, accountButtons);
+        userDetails.setAlignment(Pos.CENTER_RIGHT);
+
+        //search
+        TextField searchField = new TextField();
+        searchField.setPromptText("Search for something");
+        searchField.setPrefWidth(580);
+        suggestions = new ContextMenu();
+        searchField.setOnKeyPressed((KeyEvent e) -> {
+            if (e.getCode() == KeyCode.ENTER) {
+                suggestions.hide();
+                search(searchField.getText());
+            }
+        });
+
+        //suggest products as the user types. Looking them up takes
+        //microseconds, so it is done on every change
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
+            showSuggestions(searchField, newValue);
+        });
+        searchField.focusedProperty().addListener((observable, oldValue, focused) -> {
+            if (!focused) {
+                suggestions.hide();
+            }
+        });
+
+        Button searchButton = new Button("Search");
+        searchButton.setOnAction(e -> {
+            search(searchField.getText());
+        });
+
+        Button viewCartButton = new Button("View Cart");
+        viewCartButton.setOnAction(e -> {
+            SceneLoader.currentStage.setScene(SceneLoader.getCartView(Store.getCurrentCart()));
+        });
+
+        HBox searchBox = new HBox(10, searchField, searchButton, viewCartButton);
+        searchBox.setAlignment(Pos.CENTER_LEFT);
+        searchBox.setPadding(new Insets(10, 0, 10, 0));
+
+        //box to hold header items
+        HBox.setHgrow(logoWrapper, Priority.ALWAYS);
+        HBox logoBox = new HBox(logoWrapper, userDetails);
+        getChildren().addAll(logoBox, searchBox);
+        setPadding(new Insets(0, 5, 5, 5));
+    }
+
+    /**
+     * Binds the username and balance text to the given account. Does nothing
+     * if the header is already showing that account.
+     *
+     * @param a the signed in account, or null to clear the header
+     */
+    public void setAccount(Account a) {
+
+        if (a == account) {
+            return;
+        }
+
+        //stop listening to the old account
+        username.textProperty().unbind();
+        balance.textProperty().unbind();
+        if (usernameProperty != null) {
+            usernameProperty.dispose();
+            balanceProperty.dispose();
+            usernameProperty = null;
+            balanceProperty = null;
+        }
+
+        account = a;
+        if (a == null) {
+            username.setText("");
+            balance.setText("");
+            return;
+        }
+
+        try {
+            usernameProperty = ReadOnlyJavaBeanStringPropertyBuilder.create()
+                    .bean(a).name("username").build();
+            balanceProperty = ReadOnlyJavaBeanObjectPropertyBuilder.<Money>create()
+                    .bean(a).name("balance").build();
+        } catch (NoSuchMethodException ex) {
+            //Account always has these getters, so this can only be a programming error
+            throw new IllegalStateException(ex);
+        }
+        username.textProperty().bind(Bindings.concat("Welcome, ", usernameProperty));
+        //copy balance changes to the Application Thread. Read the balance
+        //when the copy runs so a late update never shows an old value
+        shownBalance.set(a.getBalance());
+        balanceProperty.addListener((observable, oldValue, newValue) -> {
+            AsyncCommands.runOnFxThread(() -> {
+                if (account == a) {
+                    shownBalance.set(a.getBalance());
+                }
+            });
+        });
+        //Money caches its own display string, so this does not reformat it
+        balance.textProperty().bind(Bindings.concat("Balance: ", shownBalance));
+    }
+
+    /**
+     * Shows the products suggested for what has been typed into the search
+     * field. Choosing one goes straight to its listing.
+     *
+     * @param searchField the search field
+     * @param text the text typed so far
+     */
+    private void showSuggestions(TextField searchField, String text) {
+
+        List<Product> products = Store.engine.suggest(text, SUGGESTION_COUNT);
+        if (products.isEmpty() || !searchField.isFocused()) {
+            suggestions.hide();
+            return;
+        }
+
+        ArrayList<MenuItem> items = new ArrayList<>(products.size());
+        for (Product p : products) {
+            MenuItem item = new MenuItem(p.getName());
+            item.setOnAction(e -> {
+                SceneLoader.currentStage.setScene(SceneLoader.getListing(p));
+            });
+            items.add(item);
+        }
+        suggestions.getItems().setAll(items);
+        if (!suggestions.isShowing()) {
+            suggestions.show(searchField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /**
+     * Runs a search and shows the results page
+     *
+     * @param query the text entered in the search field
+     */
+    private void search(String query) {
+
+        SceneLoader.currentStage.setScene(SceneLoader.getSearchQuery(query));
+    }
+
+    /**
+     * Asks the user how much credit to add and adds it to the current account.
+     * The balance text updates itself through its binding.
+     */
+    private void addCredit() {
+
+        //only adds credit if input was detected
+        TextInputDialog addCreditDialog = new TextInputDialog();
+        addCreditDialog.setTitle("Add (totally real) credit");
+        addCreditDialog.setHeaderText("How much credit? (enter decimal value)");
+
+        Optional<String> result = addCreditDialog.showAndWait();
+
+        //checks whether or not input was given
+        result.ifPresent(input -> {
+            try {
+                Money amount = Money.parse(input);
+                //checked here as the account would only find it on the
+                //worker thread, where the alert below cannot catch it
+                if (amount.isNegative()) {
+                    throw new IllegalArgumentException("Amount must be a positive value");
+                }
+                if (amount.compareTo(CheckoutEngine.MAX_CREDIT) > 0) {
+                    //throw a generic exception to not interfere with the negativeValue alert
+                    throw new Exception("Amount too great");
+                }
+                //add and save on a worker thread. Errors in the amount are
+                //found above, so anything thrown here is unexpected
+                AsyncCommands.submit(() -> {
+                    Store.addCredit(amount);
+                    return null;
+                }, none -> {
+                }, SceneLoader::commandFailed);
+            } catch (NumberFormatException ex) {
+                //not a double error
+                Alert notADouble = new Alert(Alert.AlertType.ERROR);
+                notADouble.setTitle("Error");
+                notADouble.setHeaderText("Credit not added");
+                notADouble.setContentText("Amount must be a positive double value (eg: 10.00)");
+                notADouble.show();
+            } catch (IllegalArgumentException ex) {
+                //negative value error
+                Alert negativeValue = new Alert(Alert.AlertType.ERROR);
+                negativeValue.setTitle("Error");
+                negativeValue.setHeaderText("Credit not added");
+                negativeValue.setContentText("Amount must be a positive value!");
+                negativeValue.show();
+            } catch (Exception ex) {
+                //amount too great error
+                Alert tooMuch = new Alert(Alert.AlertType.ERROR);
+                tooMuch.setTitle("Error");
+                tooMuch.setHeaderText("Credit not added: Amount too great!");
+                tooMuch.setContentText("For security reasons, you may "
+                        + "not add more than $9999.99 to your balance at once. "
+                        + "Contact support for further assistance.");
+                tooMuch.show();
+            }
+        });
+    }
+}
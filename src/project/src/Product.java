@@ -1,45 +1,98 @@
 package project.src;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Class to hold info on an individual product.
  *
+ * Descriptions are the bulk of a catalog's memory, so they are kept
+ * compressed (see TextDictionary) and only turned back into a String when
+ * asked for. Image URLs are shared between products with the same image.
+ *
  * @author Josh Howson
  */
 public class Product {
 
+    /**
+     * The most different image URLs shared between products. Images past
+     * this get a URL of their own.
+     */
+    private static final int MAX_SHARED_IMAGE_URLS = 4096;
+
+    /**
+     * The shared URL of each image, by filename
+     */
+    private static final ConcurrentHashMap<String, String> IMAGE_URLS = new ConcurrentHashMap<>();
+
+    /**
+     * The product's id. Equal to its index in the catalog
+     */
+    private final int id;
     /**
      * The name of the product
      */
     private String name;
     /**
-     * The price of the product
+     * The price of the product. Money caches its own display string, so the
+     * price is only formatted once.
      */
-    private double price;
+    private Money price;
     /**
      * The URL where the product's image can be found
      */
     private final String imageURL;
     /**
-     * The description of the item
+     * The description of the item, encoded by TextDictionary.DESCRIPTIONS
      */
-    private String description;
+    private byte[] description;
 
     /**
      * Basic constructor for the product
      *
+     * @param id the product's id, its index in the catalog
      * @param name the name of the product
      * @param price the price of the product
      * @param imageURL the filename of the product's photo stored in must be in
      * format: "filename.filetype", eg: image1.png.
      * @param description the item's description
      */
-    public Product(String name, double price, String imageURL, String description) {
+    public Product(int id, String name, Money price, String imageURL, String description) {
         
+        this.id = id;
         this.name = name;
         this.price = price;
-        //append directory URL to the filename
-        this.imageURL = "images/" + imageURL;
-        this.description = description;
+        this.imageURL = imageURL(imageURL);
+        this.description = TextDictionary.DESCRIPTIONS.encode(description);
+    }
+
+    /**
+     * Gets the URL of an image, the same String for every product with that
+     * image while there are not too many images
+     *
+     * @param filename the image's filename
+     * @return the image's URL
+     */
+    private static String imageURL(String filename) {
+
+        String url = IMAGE_URLS.get(filename);
+        if (url == null) {
+            //append directory URL to the filename
+            url = "images/" + filename;
+            if (IMAGE_URLS.size() < MAX_SHARED_IMAGE_URLS) {
+                String shared = IMAGE_URLS.putIfAbsent(filename, url);
+                url = shared == null ? url : shared;
+            }
+        }
+        return url;
+    }
+
+    /**
+     *
+     * @return the product's id
+     */
+    public int getId() {
+        
+        return id;
     }
 
     /**
@@ -64,19 +117,20 @@ public class Product {
      *
      * @return the price of the product
      */
-    public double getPrice() {
+    public Money getPrice() {
         
         return price;
     }
 
     /**
-     * Returns the formatted price as a string
+     * Returns the formatted price as a string. The string is cached by the
+     * price, so this does not format anything after the first call.
      *
      * @return the formatted price string
      */
     public String getPriceAsString() {
         
-        return String.format("$%.2f", price);
+        return price.toString();
     }
 
     /**
@@ -92,17 +146,29 @@ public class Product {
      *
      * @param price value to set the product's price
      */
-    public void setPrice(double price) {
+    public void setPrice(Money price) {
         
         this.price = price;
     }
 
     /**
+     * Decodes the description. Creates a new String each time, so callers
+     * that need it more than once should keep it.
      *
      * @return the product's description
      */
     public String getDescription() {
         
+        return TextDictionary.DESCRIPTIONS.decode(description);
+    }
+
+    /**
+     *
+     * @return the product's description as encoded by
+     * TextDictionary.DESCRIPTIONS, for searching without decoding it
+     */
+    byte[] getEncodedDescription() {
+
         return description;
     }
 
@@ -112,7 +178,7 @@ public class Product {
      */
     public void setDescription(String description) {
         
-        this.description = description;
+        this.description = TextDictionary.DESCRIPTIONS.encode(description);
     }
 
     /**
@@ -122,7 +188,7 @@ public class Product {
      */
     public String toCSV() {
 
-        String format = "%s,%.2f,%s,%s";
-        return String.format(format, name, price, imageURL, description);
+        String format = "%s,%s,%s,%s";
+        return String.format(format, name, price.toPlainString(), imageURL, getDescription());
     }
 }
@@ -1,5 +1,7 @@
 package project.src;
 
+import java.io.File;
+import java.io.IOException;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
@@ -16,9 +18,15 @@ import javafx.stage.Stage;
 public class Project extends Application {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments. "--server" runs the store as
+     * an HTTP API (see HttpApi) instead of opening the desktop app.
+     * @throws IOException if the server cannot be started
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            HttpApi.main(args);
+            return;
+        }
         //start app
         launch(args);
     }
@@ -37,15 +45,49 @@ public class Project extends Application {
         //read data from file
         Store.readAccounts();
         Store.readProducts();
+        Store.readOrders();
+        //read images from the asset pack if the build made one, instead of
+        //looking each one up on the classpath
+        File pack = new File(System.getProperty("minusone.assets", "images.pack"));
+        if (pack.isFile()) {
+            try {
+                ScreenMetrics.setAssets(AssetPack.open(pack));
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println("Asset pack not used: " + ex.toString());
+            }
+        }
+        if (Boolean.getBoolean("minusone.watchProducts")) {
+            //pick up price changes and new products without a restart
+            try {
+                new CatalogWatcher(Store.engine).start();
+            } catch (IOException ex) {
+                System.out.println("Products file not watched: " + ex.toString());
+            }
+        }
         
         //Load the main stage of the store
         Scene scene = SceneLoader.getLoginPage();
         SceneLoader.currentStage.setScene(scene);
         SceneLoader.currentStage.setTitle("minus-one: Online Store");
-        Image icon = new Image("images/icon.png");
+        Image icon = ScreenMetrics.loadImage("images/icon.png");
         SceneLoader.currentStage.getIcons().add(icon);
         
         //show the stage
         SceneLoader.currentStage.show();
+
+        //start recording frame timings and logging screen build times
+        ScreenMetrics.start();
+        //publish store metrics for JConsole/VisualVM
+        Store.engine.getMetrics().register("desktop");
+    }
+
+    /**
+     * Called when the app closes. Lets any command still saving the accounts
+     * finish first.
+     */
+    @Override
+    public void stop() {
+
+        AsyncCommands.shutdown();
     }
-}
\ No newline at end of file
+}
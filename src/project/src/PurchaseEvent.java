@@ -0,0 +1,37 @@
+package project.src;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a checkout or "Buy It Now" purchase. Committed by
+ * StoreEngine when the event is enabled in the recording.
+ *
+ * @author Josh Howson
+ */
+@Name("project.src.Purchase")
+@Label("Purchase")
+@Category({"minus-one", "Store"})
+@Description("A checkout or Buy It Now purchase")
+class PurchaseEvent extends jdk.jfr.Event {
+
+    @Label("Buy It Now")
+    @Description("True for a single product bought straight away, false for a cart checkout")
+    boolean buyNow;
+
+    @Label("Items")
+    int itemCount;
+
+    @Label("Amount")
+    @Description("Total charged in cents, 0 if the purchase failed")
+    long amountCents;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Failure")
+    @Description("Why the purchase failed, null if it succeeded")
+    String failure;
+}
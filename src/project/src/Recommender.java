@@ -0,0 +1,342 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Item-to-item recommendation engine built from order history. It keeps a
+ * sparse count of how many orders each pair of products appeared in together
+ * and is updated every time an order is placed.
+ *
+ * All of the lists it serves are kept ranked as the counts change, so asking
+ * for "customers also bought" or for an account's home deals only copies out
+ * the first k entries of a list that is already sorted.
+ *
+ * @author Josh Howson
+ */
+public class Recommender {
+
+    /**
+     * The store whose products are being recommended
+     */
+    private final StoreEngine engine;
+
+    /**
+     * The number of products kept in each ranked list
+     */
+    public static final int TOP_K = 8;
+
+    /**
+     * Sparse co-purchase matrix, indexed by product id: for each product, the
+     * number of orders it shared with each other product. null for products
+     * never ordered.
+     */
+    private IntCounts[] coPurchases = new IntCounts[0];
+
+    /**
+     * For each product (indexed by id), the products most often bought with
+     * it. null for products never ordered.
+     */
+    private TopList[] alsoBought = new TopList[0];
+
+    /**
+     * The number of products with an alsoBought list
+     */
+    private int rankedProducts;
+
+    /**
+     * For each account (by username), the products most often bought with the
+     * things that account has bought
+     */
+    private final HashMap<String, IntCounts> accountScores = new HashMap<>();
+
+    /**
+     * For each account (by username), its top ranked deals
+     */
+    private final HashMap<String, TopList> accountDeals = new HashMap<>();
+
+    /**
+     * The number of orders each product has been in, indexed by id
+     */
+    private int[] purchaseCounts = new int[0];
+
+    /**
+     * The number of times each product's listing has been viewed, indexed by
+     * id
+     */
+    private int[] viewCounts = new int[0];
+
+    /**
+     * Goes up every time a view or an order is recorded, so that the
+     * popularity of products can be checked for changes cheaply
+     */
+    private long popularityVersion;
+
+    /**
+     * How much more a purchase counts towards a product's popularity than a
+     * view
+     */
+    public static final int PURCHASE_WEIGHT = 10;
+
+    /**
+     * How many "also bought" requests found a ranked list, and how many did
+     * not. Guarded by this object's lock, like the lists.
+     */
+    private long alsoBoughtHits, alsoBoughtMisses;
+
+    /**
+     * How many home deal requests found the account's own ranked list, and
+     * how many fell back to only best sellers
+     */
+    private long homeDealsHits, homeDealsMisses;
+
+    /**
+     * Constructor for the recommender
+     *
+     * @param engine the store whose products are being recommended
+     */
+    public Recommender(StoreEngine engine) {
+
+        this.engine = engine;
+    }
+
+    /**
+     * Adds an order to the purchase history. Every pair of different products
+     * in the order has its count increased by one, and the ranked lists of
+     * the products and the account are updated.
+     *
+     * @param account the account that placed the order
+     * @param o the order that was placed
+     */
+    public synchronized void recordOrder(Account account, Order o) {
+
+        //each line is a different product, so each product only counts once
+        int[] ids = new int[o.getLineCount()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = o.getProductId(i);
+        }
+
+        IntCounts scores = accountScores.get(account.getUsername());
+        if (scores == null) {
+            scores = new IntCounts();
+            accountScores.put(account.getUsername(), scores);
+        }
+        TopList deals = accountDeals.get(account.getUsername());
+        if (deals == null) {
+            deals = new TopList(TOP_K);
+            accountDeals.put(account.getUsername(), deals);
+        }
+
+        for (int a : ids) {
+            ensureCapacity(a);
+            purchaseCounts[a]++;
+
+            IntCounts row = coPurchases[a];
+            if (row == null) {
+                row = new IntCounts();
+                coPurchases[a] = row;
+            }
+            TopList top = alsoBought[a];
+            if (top == null) {
+                top = new TopList(TOP_K);
+                alsoBought[a] = top;
+                rankedProducts++;
+            }
+            for (int b : ids) {
+                if (a != b) {
+                    top.update(b, row.increment(b));
+                }
+            }
+
+            //the account is now more likely to want what goes with product a
+            for (int i = 0; i < top.size(); i++) {
+                int suggestion = top.getId(i);
+                if (!contains(ids, suggestion)) {
+                    deals.update(suggestion, scores.increment(suggestion));
+                }
+            }
+        }
+
+        //don't suggest things the account has just bought
+        for (int a : ids) {
+            deals.remove(a);
+        }
+        popularityVersion++;
+    }
+
+    /**
+     * Counts a view of a product's listing towards its popularity
+     *
+     * @param p the product viewed
+     */
+    public synchronized void recordView(Product p) {
+
+        ensureCapacity(p.getId());
+        viewCounts[p.getId()]++;
+        popularityVersion++;
+    }
+
+    /**
+     * The popularity of every product: its views plus PURCHASE_WEIGHT for
+     * every order it has been in
+     *
+     * @param productCount the number of products in the catalog
+     * @return the popularity of each product, by id
+     */
+    public synchronized long[] getPopularity(int productCount) {
+
+        long[] weights = new long[productCount];
+        for (int id = 0; id < Math.min(productCount, viewCounts.length); id++) {
+            weights[id] = viewCounts[id] + (long) PURCHASE_WEIGHT * purchaseCounts[id];
+        }
+        return weights;
+    }
+
+    /**
+     *
+     * @return a number that changes whenever a view or order is recorded
+     */
+    public synchronized long getPopularityVersion() {
+
+        return popularityVersion;
+    }
+
+    /**
+     * Gets the products most often bought together with the given product
+     *
+     * @param p the product being viewed
+     * @param count the maximum number of products to return
+     * @return up to count products, most often bought together first
+     */
+    public synchronized ArrayList<Product> getAlsoBought(Product p, int count) {
+
+        TopList list = p.getId() < alsoBought.length ? alsoBought[p.getId()] : null;
+        if (list == null) {
+            alsoBoughtMisses++;
+            return new ArrayList<>();
+        }
+        alsoBoughtHits++;
+        return list.products(engine, count, null);
+    }
+
+    /**
+     * Gets the deals to show on an account's home screen. These are the
+     * products that go best with what the account has bought before, followed
+     * by the store's best sellers if there are not enough of those (see
+     * SalesAggregator.getBestSellers()).
+     *
+     * @param account the signed in account
+     * @param count the maximum number of products to return
+     * @return up to count different products
+     */
+    public synchronized ArrayList<Product> getHomeDeals(Account account, int count) {
+
+        ArrayList<Product> deals = new ArrayList<>();
+        TopList personal = accountDeals.get(account.getUsername());
+        if (personal != null) {
+            homeDealsHits++;
+            deals = personal.products(engine, count, null);
+        } else {
+            homeDealsMisses++;
+        }
+        if (deals.size() < count) {
+            BitSet exclude = new BitSet();
+            for (Product p : deals) {
+                exclude.set(p.getId());
+            }
+            deals.addAll(engine.getSales().getBestSellers(count - deals.size(), exclude));
+        }
+        return deals;
+    }
+
+    /**
+     *
+     * @return the number of products with a ranked "also bought" list
+     */
+    public synchronized int getRankedProductCount() {
+
+        return rankedProducts;
+    }
+
+    /**
+     *
+     * @return the number of accounts with a ranked list of deals
+     */
+    public synchronized int getRankedAccountCount() {
+
+        return accountDeals.size();
+    }
+
+    /**
+     *
+     * @return the number of "also bought" requests that found a ranked list
+     */
+    public synchronized long getAlsoBoughtHits() {
+
+        return alsoBoughtHits;
+    }
+
+    /**
+     *
+     * @return the number of "also bought" requests for products with no list
+     */
+    public synchronized long getAlsoBoughtMisses() {
+
+        return alsoBoughtMisses;
+    }
+
+    /**
+     *
+     * @return the number of home deal requests that found the account's list
+     */
+    public synchronized long getHomeDealsHits() {
+
+        return homeDealsHits;
+    }
+
+    /**
+     *
+     * @return the number of home deal requests for accounts with no list
+     */
+    public synchronized long getHomeDealsMisses() {
+
+        return homeDealsMisses;
+    }
+
+    /**
+     * Checks whether an array of ids contains an id
+     *
+     * @param ids the ids to look through
+     * @param id the id to look for
+     * @return true if the id is in the array
+     */
+    private static boolean contains(int[] ids, int id) {
+
+        for (int i : ids) {
+            if (i == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grows the arrays indexed by product id so that they have room for an id
+     *
+     * @param id the product id
+     */
+    private void ensureCapacity(int id) {
+
+        if (id < purchaseCounts.length) {
+            return;
+        }
+        //at least double so that loading orders does not copy every time
+        int length = Math.max(id + 1, purchaseCounts.length * 2);
+        purchaseCounts = Arrays.copyOf(purchaseCounts, length);
+        viewCounts = Arrays.copyOf(viewCounts, length);
+        coPurchases = Arrays.copyOf(coPurchases, length);
+        alsoBought = Arrays.copyOf(alsoBought, length);
+    }
+}
@@ -0,0 +1,544 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Running sales totals, updated as each order is placed, so that reports on
+ * what has sold do not have to walk every account's order history.
+ *
+ * For each product (indexed by id) it keeps the units sold and revenue since
+ * the store started, and the units sold on each of the last RECENT_DAYS days.
+ * For the whole store it keeps the orders, units and revenue of each of the
+ * last DAYS days. All of these are primitive arrays. Days are kept round
+ * robin, like the buckets of SearchAnalytics: when a new day starts the
+ * oldest day's slot is taken away from the totals and reused.
+ *
+ * The best sellers of the last RECENT_DAYS days and of all time are kept
+ * ranked as orders come in, so asking for them only copies out the front of
+ * a list that is already sorted. Units in the window only go down when a day
+ * drops out of it, and the recent list is ranked again from the per-product
+ * totals then, once a day.
+ *
+ * Days are in GMT, like the dates of orders. A product's revenue is its
+ * units times its price in the catalog when the order is recorded, without
+ * shipping; the store's daily revenue is what orders were charged, with
+ * shipping. All methods are thread-safe.
+ *
+ * @author Josh Howson
+ */
+public class SalesAggregator {
+
+    /**
+     * The length of a day, in milliseconds
+     */
+    public static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    /**
+     * The number of days of store-wide totals kept
+     */
+    public static final int DAYS = 30;
+
+    /**
+     * The number of days of per-product units kept, and so the window that
+     * recent best sellers are ranked over
+     */
+    public static final int RECENT_DAYS = 7;
+
+    /**
+     * The number of products kept in each ranked list
+     */
+    public static final int TOP_K = 20;
+
+    /**
+     * The store whose sales are counted
+     */
+    private final StoreEngine engine;
+
+    /**
+     * Units of each product sold since the store started, by id
+     */
+    private int[] units = new int[0];
+
+    /**
+     * Revenue of each product since the store started, in cents, by id
+     */
+    private long[] revenue = new long[0];
+
+    /**
+     * Units of each product sold on each recent day: recentUnits[slot][id].
+     * Day d is in slot d modulo RECENT_DAYS.
+     */
+    private int[][] recentUnits = new int[RECENT_DAYS][0];
+
+    /**
+     * The total units sold in each slot of recentUnits, so empty days are
+     * not cleared
+     */
+    private final long[] slotUnits = new long[RECENT_DAYS];
+
+    /**
+     * Units of each product sold in the last RECENT_DAYS days, by id. The sum
+     * of recentUnits over every slot.
+     */
+    private int[] windowUnits = new int[0];
+
+    /**
+     * The day held by each slot of the store-wide totals, or -1 if unused.
+     * Day d is in slot d modulo DAYS.
+     */
+    private final long[] days = new long[DAYS];
+
+    /**
+     * The orders placed on each day
+     */
+    private final int[] dayOrders = new int[DAYS];
+
+    /**
+     * The units sold on each day
+     */
+    private final long[] dayUnits = new long[DAYS];
+
+    /**
+     * The amount charged on each day, in cents
+     */
+    private final long[] dayRevenue = new long[DAYS];
+
+    /**
+     * The latest day the totals have been moved on to, as days since the
+     * epoch
+     */
+    private long today = Long.MIN_VALUE;
+
+    /**
+     * The products with the most units sold in the last RECENT_DAYS days
+     */
+    private final TopList recentBestSellers = new TopList(TOP_K);
+
+    /**
+     * The products with the most units sold since the store started
+     */
+    private final TopList allTimeBestSellers = new TopList(TOP_K);
+
+    /**
+     * The number of orders recorded, and the amount they were charged in
+     * cents
+     */
+    private long orders, totalRevenue;
+
+    /**
+     * Constructor for the aggregator
+     *
+     * @param engine the store whose sales are counted
+     */
+    public SalesAggregator(StoreEngine engine) {
+
+        this.engine = engine;
+        Arrays.fill(days, -1);
+    }
+
+    /**
+     * Adds an order to the totals. Orders older than the days kept only count
+     * towards the all-time totals.
+     *
+     * @param o the order that was placed
+     */
+    public void recordOrder(Order o) {
+
+        recordOrder(o, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds an order to the totals at the given time
+     *
+     * @param o the order that was placed
+     * @param now the current time, in epoch milliseconds
+     */
+    synchronized void recordOrder(Order o, long now) {
+
+        long day = day(o.getTimestamp());
+        advance(Math.max(day(now), day));
+        boolean recent = day > today - RECENT_DAYS;
+        int slot = (int) Math.floorMod(day, (long) RECENT_DAYS);
+
+        for (int line = 0; line < o.getLineCount(); line++) {
+            int id = o.getProductId(line);
+            int quantity = o.getLineQuantity(line);
+            ensureCapacity(id);
+            units[id] += quantity;
+            revenue[id] += engine.getProduct(id).getPrice().getCents() * quantity;
+            allTimeBestSellers.update(id, units[id]);
+            if (recent) {
+                recentUnits[slot][id] += quantity;
+                slotUnits[slot] += quantity;
+                windowUnits[id] += quantity;
+                recentBestSellers.update(id, windowUnits[id]);
+            }
+        }
+
+        orders++;
+        totalRevenue += o.getTotal().getCents();
+        if (day > today - DAYS) {
+            int d = (int) Math.floorMod(day, (long) DAYS);
+            dayOrders[d]++;
+            dayUnits[d] += o.getQuantity();
+            dayRevenue[d] += o.getTotal().getCents();
+        }
+    }
+
+    /**
+     * Gets the store's best sellers: those with the most units sold in the
+     * last RECENT_DAYS days, followed by the best sellers of all time if
+     * there are not enough of those. These fill out the home deals.
+     *
+     * @param count the maximum number of products to return
+     * @param exclude ids of products to skip over, may be null
+     * @return up to count different products
+     */
+    public synchronized ArrayList<Product> getBestSellers(int count, BitSet exclude) {
+
+        advance(day(System.currentTimeMillis()));
+        ArrayList<Product> result = recentBestSellers.products(engine, count, exclude);
+        if (result.size() < count) {
+            BitSet skip = exclude == null ? new BitSet() : (BitSet) exclude.clone();
+            for (Product p : result) {
+                skip.set(p.getId());
+            }
+            result.addAll(allTimeBestSellers.products(engine, count - result.size(), skip));
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param count the maximum number of products to return
+     * @return the products with the most units sold in the last RECENT_DAYS
+     * days, most first
+     */
+    public List<ProductSales> getTopSellers(int count) {
+
+        return top(count, true, System.currentTimeMillis());
+    }
+
+    /**
+     *
+     * @param count the maximum number of products to return
+     * @return the products with the most units sold since the store started,
+     * most first
+     */
+    public List<ProductSales> getAllTimeTopSellers(int count) {
+
+        return top(count, false, System.currentTimeMillis());
+    }
+
+    /**
+     * Copies out the front of a ranked list
+     *
+     * @param count the maximum number of products to return
+     * @param recent true for the last RECENT_DAYS days, false for all time
+     * @param now the current time, in epoch milliseconds
+     * @return up to count products' sales, most units first
+     */
+    synchronized List<ProductSales> top(int count, boolean recent, long now) {
+
+        advance(day(now));
+        TopList list = recent ? recentBestSellers : allTimeBestSellers;
+        ArrayList<ProductSales> result = new ArrayList<>(Math.min(count, list.size()));
+        for (int i = 0; i < list.size() && i < count; i++) {
+            int id = list.getId(i);
+            result.add(new ProductSales(engine.getProduct(id), windowUnits[id], units[id], revenue[id]));
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param id a product's id
+     * @return the product's sales, all zero if it has never been ordered
+     */
+    public synchronized ProductSales getSales(int id) {
+
+        advance(day(System.currentTimeMillis()));
+        Product p = engine.getProduct(id);
+        if (id >= units.length) {
+            return new ProductSales(p, 0, 0, 0);
+        }
+        return new ProductSales(p, windowUnits[id], units[id], revenue[id]);
+    }
+
+    /**
+     *
+     * @return the store's totals for each of the last DAYS days, oldest first
+     */
+    public List<DaySales> getDailySales() {
+
+        return daily(System.currentTimeMillis());
+    }
+
+    /**
+     * Copies out the store-wide totals of every day kept
+     *
+     * @param now the current time, in epoch milliseconds
+     * @return one entry per day, oldest first, ending today
+     */
+    synchronized List<DaySales> daily(long now) {
+
+        advance(day(now));
+        ArrayList<DaySales> result = new ArrayList<>(DAYS);
+        for (long day = today - DAYS + 1; day <= today; day++) {
+            int d = (int) Math.floorMod(day, (long) DAYS);
+            if (days[d] == day) {
+                result.add(new DaySales(day, dayOrders[d], dayUnits[d], dayRevenue[d]));
+            } else {
+                result.add(new DaySales(day, 0, 0, 0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return the number of orders recorded since the store started
+     */
+    public synchronized long getOrderCount() {
+
+        return orders;
+    }
+
+    /**
+     *
+     * @return the amount charged for every order since the store started, in
+     * cents
+     */
+    public synchronized long getTotalRevenue() {
+
+        return totalRevenue;
+    }
+
+    /**
+     * Moves the totals on to a day, dropping any days that fall out of the
+     * window. Only does any work when a new day has started.
+     *
+     * @param day the day, as days since the epoch. Earlier days are ignored.
+     */
+    private void advance(long day) {
+
+        if (day <= today) {
+            return;
+        }
+        boolean dropped = false;
+        for (long d = Math.max(today + 1, day - RECENT_DAYS + 1); d <= day; d++) {
+            int slot = (int) Math.floorMod(d, (long) RECENT_DAYS);
+            if (slotUnits[slot] > 0) {
+                int[] expired = recentUnits[slot];
+                for (int id = 0; id < expired.length; id++) {
+                    windowUnits[id] -= expired[id];
+                }
+                Arrays.fill(expired, 0);
+                slotUnits[slot] = 0;
+                dropped = true;
+            }
+        }
+        for (long d = Math.max(today + 1, day - DAYS + 1); d <= day; d++) {
+            int slot = (int) Math.floorMod(d, (long) DAYS);
+            days[slot] = d;
+            dayOrders[slot] = 0;
+            dayUnits[slot] = 0;
+            dayRevenue[slot] = 0;
+        }
+        today = day;
+
+        //units went down, so rank the window again from scratch
+        if (dropped) {
+            recentBestSellers.clear();
+            for (int id = 0; id < windowUnits.length; id++) {
+                if (windowUnits[id] > 0) {
+                    recentBestSellers.update(id, windowUnits[id]);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @return the day a time is in, as days since the epoch
+     */
+    private static long day(long time) {
+
+        return Math.floorDiv(time, DAY_MILLIS);
+    }
+
+    /**
+     * Grows the arrays indexed by product id so that they have room for an id
+     *
+     * @param id the product id
+     */
+    private void ensureCapacity(int id) {
+
+        if (id < units.length) {
+            return;
+        }
+        //at least double so that loading orders does not copy every time
+        int length = Math.max(id + 1, units.length * 2);
+        units = Arrays.copyOf(units, length);
+        revenue = Arrays.copyOf(revenue, length);
+        windowUnits = Arrays.copyOf(windowUnits, length);
+        for (int slot = 0; slot < RECENT_DAYS; slot++) {
+            recentUnits[slot] = Arrays.copyOf(recentUnits[slot], length);
+        }
+    }
+
+    /**
+     * A product and how much of it has sold
+     */
+    public static final class ProductSales {
+
+        /**
+         * The product
+         */
+        private final Product product;
+
+        /**
+         * Units sold in the last RECENT_DAYS days
+         */
+        private final int recentUnits;
+
+        /**
+         * Units sold since the store started
+         */
+        private final int units;
+
+        /**
+         * Revenue since the store started, in cents
+         */
+        private final long revenueCents;
+
+        ProductSales(Product product, int recentUnits, int units, long revenueCents) {
+
+            this.product = product;
+            this.recentUnits = recentUnits;
+            this.units = units;
+            this.revenueCents = revenueCents;
+        }
+
+        /**
+         *
+         * @return the product
+         */
+        public Product getProduct() {
+
+            return product;
+        }
+
+        /**
+         *
+         * @return the units sold in the last RECENT_DAYS days
+         */
+        public int getRecentUnits() {
+
+            return recentUnits;
+        }
+
+        /**
+         *
+         * @return the units sold since the store started
+         */
+        public int getUnits() {
+
+            return units;
+        }
+
+        /**
+         *
+         * @return the revenue since the store started, in cents
+         */
+        public long getRevenueCents() {
+
+            return revenueCents;
+        }
+
+        /**
+         * Formats the sales like: "Laptop=12 (340 total, $41200.00)"
+         *
+         * @return the formatted sales
+         */
+        @Override
+        public String toString() {
+
+            return product.getName() + "=" + recentUnits + " (" + units + " total, "
+                    + Money.ofCents(revenueCents) + ")";
+        }
+    }
+
+    /**
+     * The store's sales on one day
+     */
+    public static final class DaySales {
+
+        /**
+         * The day, as days since the epoch
+         */
+        private final long day;
+
+        /**
+         * The orders placed
+         */
+        private final int orders;
+
+        /**
+         * The units sold
+         */
+        private final long units;
+
+        /**
+         * The amount charged, in cents
+         */
+        private final long revenueCents;
+
+        DaySales(long day, int orders, long units, long revenueCents) {
+
+            this.day = day;
+            this.orders = orders;
+            this.units = units;
+            this.revenueCents = revenueCents;
+        }
+
+        /**
+         *
+         * @return the day, as days since the epoch (GMT)
+         */
+        public long getDay() {
+
+            return day;
+        }
+
+        /**
+         *
+         * @return the number of orders placed that day
+         */
+        public int getOrders() {
+
+            return orders;
+        }
+
+        /**
+         *
+         * @return the units sold that day
+         */
+        public long getUnits() {
+
+            return units;
+        }
+
+        /**
+         *
+         * @return the amount charged that day, in cents
+         */
+        public long getRevenueCents() {
+
+            return revenueCents;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package project.src;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for writing the accounts file. Committed by
+ * StoreEngine.saveAccounts() when the event is enabled in the recording.
+ *
+ * @author Josh Howson
+ */
+@Name("project.src.SaveAccounts")
+@Label("Save Accounts")
+@Category({"minus-one", "Store"})
+@Description("The accounts file being written")
+class SaveAccountsEvent extends jdk.jfr.Event {
+
+    @Label("Accounts Written")
+    int accounts;
+
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+}
@@ -1,6 +1,7 @@
 package project.src;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import javafx.geometry.HPos;
@@ -10,12 +11,13 @@ import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TextField;
-import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -46,6 +48,26 @@ public class SceneLoader {
      */
     public static Stage currentStage = new Stage();
 
+    /**
+     * The header shared by every page. Built on first use by createHeader()
+     */
+    private static PageHeader header;
+
+    /**
+     * The number of results loaded at a time on the search results page
+     */
+    private static final int SEARCH_PAGE_SIZE = 24;
+
+    /**
+     * The number of deals shown on the home screen
+     */
+    private static final int DEAL_COUNT = 3;
+
+    /**
+     * The number of "customers also bought" products shown on a listing
+     */
+    private static final int ALSO_BOUGHT_COUNT = 4;
+
     /**
      * Creates the home screen that consists of sections for header, promotional
      * banner and deals
@@ -54,11 +76,21 @@ public class SceneLoader {
      */
     public static Scene getHomeScreen() {
 
-        //header of the page. This is reusable (I think).
+        return ScreenMetrics.time("home", () -> buildHomeScreen());
+    }
+
+    /**
+     * Builds the home screen scene for getHomeScreen(). Timed by ScreenMetrics.
+     *
+     * @return the completed home screen scene
+     */
+    private static Scene buildHomeScreen() {
+
+        //header of the page. This is shared by every page
         VBox headerBox = createHeader();
 
         //banner image to show a deal
-        ImageView banner = new ImageView("images/banner.png");
+        ImageView banner = new ImageView(ScreenMetrics.loadImage("images/banner.png"));
         banner.setFitWidth(750);
         banner.preserveRatioProperty().set(true);
 
@@ -66,34 +98,28 @@ public class SceneLoader {
         bannerBox.cursorProperty().set(Cursor.HAND);
         bannerBox.setOnMouseClicked(e -> {
             //search for laptop and display results
-            currentStage.setScene(getSearchQuery("Laptop", Store.searchQuery("laptop")));
+            currentStage.setScene(getSearchQuery("Laptop"));
         });
 
-        //solve duplicate products problem:
+        //deals picked for this account from its order history
+        ArrayList<Product> deals = Store.engine.getRecommender().getHomeDeals(Store.getCurrentAccount(), DEAL_COUNT);
+
+        //not enough order history yet, so fill the rest with random products
         Random rand = new Random();
-        int limit = Store.productDirectory.size();
-        int r1 = rand.nextInt(limit);
-        int r2;
-        do {
-            r2 = rand.nextInt(limit);
-        } while (r2 == r1);
-        int r3;
-        do {
-            r3 = rand.nextInt(limit);
-        } while (r3 == r2 || r3 == r1);
-
-        //deal 1        
-        Product deal1 = Store.productDirectory.get(r1);
-        VBox deal1Box = createDealBox(deal1);
-        //deal 2
-        Product deal2 = Store.productDirectory.get(r2);
-        VBox deal2Box = createDealBox(deal2);
-        //deal 3
-        Product deal3 = Store.productDirectory.get(r3);
-        VBox deal3Box = createDealBox(deal3);
-
-        //holds 3 stackpanes that each display a deal. reuses the same pane
-        HBox dealsBox = new HBox(6, deal1Box, deal2Box, deal3Box);
+        List<Product> products = Store.getProducts();
+        int limit = products.size();
+        while (deals.size() < Math.min(DEAL_COUNT, limit)) {
+            Product p = products.get(rand.nextInt(limit));
+            if (!deals.contains(p)) {
+                deals.add(p);
+            }
+        }
+
+        //holds a box for each deal, side by side
+        HBox dealsBox = new HBox(6);
+        deals.forEach((p) -> {
+            dealsBox.getChildren().add(createDealBox(p));
+        });
 
         //contains 3 panes: header, banner and deals
         VBox container = new VBox(8, headerBox, bannerBox, dealsBox);
@@ -119,7 +145,7 @@ public class SceneLoader {
      */
     private static VBox createDealBox(Product p) {
 
-        ImageView dealImage = new ImageView(p.getImageURL());
+        ImageView dealImage = new ImageView(ScreenMetrics.loadImage(p.getImageURL()));
         dealImage.setFitWidth(237);
         dealImage.preserveRatioProperty().set(true);
 
@@ -160,6 +186,18 @@ public class SceneLoader {
      */
     public static Scene getListing(Product p) {
 
+        //views rank the search field's suggestions
+        Store.engine.recordView(p);
+        return ScreenMetrics.time("listing", () -> buildListing(p));
+    }
+
+    /**
+     * Builds the product listing scene for getListing(). Timed by ScreenMetrics.
+     *
+     * @return the completed product listing scene
+     */
+    private static Scene buildListing(Product p) {
+
         /*This is a wrapper container for the content VBox. Allows for
         scrolling both horizontally and vertically when the content does not 
         fit on the screen*/
@@ -189,6 +227,18 @@ public class SceneLoader {
         /*child of container, this pane holds 3 sections: header, listing and
         description*/
         VBox content = new VBox(10, header, listing, descriptionPane);
+
+        //products that other customers bought along with this one
+        ArrayList<Product> alsoBought = Store.engine.getRecommender().getAlsoBought(p, ALSO_BOUGHT_COUNT);
+        if (!alsoBought.isEmpty()) {
+            Text alsoBoughtLabel = new Text("Customers also bought");
+            alsoBoughtLabel.setStyle("-fx-font-size: 20;");
+            FlowPane alsoBoughtPane = new FlowPane(10, 10);
+            alsoBought.forEach((other) -> {
+                alsoBoughtPane.getChildren().add(createThumbnail(other));
+            });
+            content.getChildren().addAll(alsoBoughtLabel, alsoBoughtPane);
+        }
         container.setContent(content);
         container.setStyle("-fx-font-size: 15px;");
         content.setPadding(new Insets(20));
@@ -205,7 +255,7 @@ public class SceneLoader {
     private static StackPane createListingImage(String url) {
 
         StackPane imagePane = new StackPane();
-        ImageView photo = new ImageView(url);
+        ImageView photo = new ImageView(ScreenMetrics.loadImage(url));
         imagePane.getChildren().add(photo);
 
         //image sizing settings
@@ -234,21 +284,25 @@ public class SceneLoader {
 
         //shipping costs of the item
         Label shipLabel = new Label("Shipping: ");
-        Label shipPrice = new Label("$7.80");
+        Label shipPrice = new Label(CheckoutEngine.SHIPPING.toString());
         HBox shipBox = new HBox(10, shipLabel, shipPrice);
 
         //purchase buttons
         Button buyItNow = new Button("Buy It Now");
         buyItNow.setOnAction(e -> {
-            Store.currentAccount.purchase(p);
+            purchase(p);
         });
+        buyItNow.disableProperty().bind(AsyncCommands.busyProperty());
 
         //add item to cart
         Button addToCart = new Button("Add to cart");
         addToCart.setOnAction(e -> {
-            Store.currentAccount.addToCart(p);
+            if (!Store.addToCart(p)) {
+                outOfStock(p.getName() + " is out of stock");
+            }
         });
-        HBox buyButtonBox = new HBox(10, buyItNow, addToCart);
+        HBox buyButtonBox = new HBox(10, buyItNow, addToCart, AsyncCommands.createProgressIndicator());
+        buyButtonBox.setAlignment(Pos.CENTER_LEFT);
         //a little more vertical space for the buttons
         buyButtonBox.setPadding(new Insets(10, 0, 0, 0));
 
@@ -264,6 +318,97 @@ public class SceneLoader {
         return details;
     }
 
+    /**
+     * Buys either everything in the current cart or a single product. The
+     * user must re-enter their password first. On success the user is taken
+     * to their orders.
+     *
+     * @param p the product to buy straight away, or null to buy the cart
+     */
+    private static void purchase(Product p) {
+
+        Account account = Store.getCurrentAccount();
+        //the cart pays shipping ($7.80), buying a single product does not
+        Money amount = (p == null)
+                ? Store.getCurrentCart().getTotal().plus(CheckoutEngine.SHIPPING)
+                : p.getPrice();
+
+        if (account.getBalance().compareTo(amount) < 0) {
+            notEnoughCredits();
+            return;
+        }
+
+        //enter password alert
+        Alert confirmPassword = new Alert(Alert.AlertType.INFORMATION);
+        confirmPassword.setHeaderText("Enter password to continue");
+        PasswordField passwordField = new PasswordField();
+        confirmPassword.getDialogPane().setContent(passwordField);
+        confirmPassword.getDialogPane().setPadding(new Insets(10));
+
+        //confirm correct password before purchasing
+        Optional<ButtonType> result = confirmPassword.showAndWait();
+        if (!result.isPresent() || result.get() != ButtonType.OK) {
+            return;
+        }
+        if (!passwordField.getText().equals(account.getPassword())) {
+            Alert wrongPass = new Alert(Alert.AlertType.ERROR);
+            wrongPass.setTitle("Error");
+            wrongPass.setHeaderText("Incorrect Password");
+            wrongPass.setContentText("Please try again");
+            wrongPass.show();
+            return;
+        }
+
+        //attempt to purchase on a worker thread, as it saves the accounts.
+        //The balance is checked again as it is paid
+        AsyncCommands.submit(() -> (p == null) ? Store.checkout() : Store.buyNow(p), o -> {
+            if (o == null) {
+                notEnoughCredits();
+                return;
+            }
+
+            Alert purchaseSuccess = new Alert(Alert.AlertType.INFORMATION);
+            purchaseSuccess.setTitle("Success");
+            purchaseSuccess.setHeaderText("Your purchase was successful");
+            purchaseSuccess.setContentText("Your order is on the way!");
+            purchaseSuccess.show();
+
+            currentStage.setScene(getOrderView(account.getOrders()));
+        }, ex -> {
+            if (ex instanceof IllegalStateException) {
+                outOfStock(ex.getMessage());
+            } else {
+                commandFailed(ex);
+            }
+        });
+    }
+
+    /**
+     * Shows the "out of stock" alert
+     *
+     * @param message which product ran out
+     */
+    private static void outOfStock(String message) {
+
+        Alert soldOut = new Alert(Alert.AlertType.ERROR);
+        soldOut.setTitle("Error");
+        soldOut.setHeaderText("Out of stock");
+        soldOut.setContentText(message);
+        soldOut.show();
+    }
+
+    /**
+     * Shows the "not enough credits" alert
+     */
+    private static void notEnoughCredits() {
+
+        Alert notEnough = new Alert(Alert.AlertType.ERROR);
+        notEnough.setTitle("Error");
+        notEnough.setHeaderText("Not enough credits");
+        notEnough.setContentText("Use the 'Add credit' button to increase your balance");
+        notEnough.show();
+    }
+
     /**
      * Creates the login page using a parent VBox to separate header and
      * content, an HBox to separate the login and signup panes and various
@@ -273,10 +418,20 @@ public class SceneLoader {
      */
     public static Scene getLoginPage() {
 
+        return ScreenMetrics.time("login", () -> buildLoginPage());
+    }
+
+    /**
+     * Builds the login page scene for getLoginPage(). Timed by ScreenMetrics.
+     *
+     * @return the completed login page scene
+     */
+    private static Scene buildLoginPage() {
+
         //page header without the search bar
         //header of the page
         //logo
-        ImageView logo = new ImageView("images/logo small.png");
+        ImageView logo = new ImageView(ScreenMetrics.loadImage("images/logo small.png"));
         logo.setFitWidth(150);
         logo.preserveRatioProperty().set(true);
 
@@ -312,137 +467,19 @@ public class SceneLoader {
     }
 
     /**
-     * Creates an HBox containing a header for the page that has nodes for the
-     * logo, settings etc
+     * Returns the page header, creating it the first time it is needed. The
+     * same header is reused by every page so that it is not rebuilt on every
+     * navigation. Its username and balance follow the current account.
      *
-     * @return a completed HBox containing the header of the page
+     * @return the shared header, showing the current account
      */
     private static VBox createHeader() {
 
-        //logo
-        ImageView logo = new ImageView("images/logo small.png");
-        logo.setFitWidth(200);
-        logo.preserveRatioProperty().set(true);
-
-        StackPane logoWrapper = new StackPane(logo);
-        logoWrapper.setAlignment(Pos.TOP_LEFT);
-        logoWrapper.setCursor(Cursor.HAND);
-        logoWrapper.setOnMouseClicked(e -> {
-            currentStage.setScene(getHomeScreen());
-        });
-
-        //user details pane:
-        Account user = Store.currentAccount;
-        Text username = new Text("Welcome, " + user.getUsername());
-        Text balance = new Text("Balance: " + user.getBalanceAsString());
-
-        //add credit and signout buttons as well as their handlers
-        Button addCredit = new Button("Add Credit");
-        addCredit.setOnAction(e -> {
-
-            //only adds credit if input was detected
-            TextInputDialog addCreditDialog = new TextInputDialog();
-            addCreditDialog.setTitle("Add (totally real) credit");
-            addCreditDialog.setHeaderText("How much credit? (enter decimal value)");
-
-            Optional<String> result = addCreditDialog.showAndWait();
-
-            //checks whether or not input was given
-            result.ifPresent(input -> {
-                try {
-                    double amount = Double.parseDouble(input);
-                    if (amount > 10000) {
-                        //throw a generic exception to not interfere with the negativeValue alert
-                        throw new Exception("Amount too great");
-                    }
-                    Store.currentAccount.addCredit(amount);
-                    currentStage.setScene(getHomeScreen());
-                    Store.saveAccounts();
-                } catch (NumberFormatException ex) {
-                    //not a double error
-                    Alert notADouble = new Alert(Alert.AlertType.ERROR);
-                    notADouble.setTitle("Error");
-                    notADouble.setHeaderText("Credit not added");
-                    notADouble.setContentText("Amount must be a positive double value (eg: 10.00)");
-                    notADouble.show();
-                } catch (IllegalArgumentException ex) {
-                    //negative value error
-                    Alert negativeValue = new Alert(Alert.AlertType.ERROR);
-                    negativeValue.setTitle("Error");
-                    negativeValue.setHeaderText("Credit not added");
-                    negativeValue.setContentText("Amount must be a positive value!");
-                    negativeValue.show();
-                } catch (Exception ex) {
-                    //amount too great error
-                    Alert tooMuch = new Alert(Alert.AlertType.ERROR);
-                    tooMuch.setTitle("Error");
-                    tooMuch.setHeaderText("Credit not added: Amount too great!");
-                    tooMuch.setContentText("For security reasons, you may "
-                            + "not add more than $9999.99 to your balance at once. "
-                            + "Contact support for further assistance.");
-                    tooMuch.show();
-                }
-            });
-        });
-
-        Button signOut = new Button("Sign out");
-        signOut.setOnAction(e -> {
-            //clear current working account, save accounts and go to login screen
-            Store.currentAccount = null;
-            Store.saveAccounts();
-            currentStage.setScene(getLoginPage());
-        });
-
-        Button orders = new Button("My orders");
-        orders.setOnAction(e -> {
-            currentStage.setScene(getOrderView(Store.currentAccount.getOrders()));
-        });
-
-        //button container for horizontal layout
-        HBox accountButtons = new HBox(10, addCredit, orders, signOut);
-        accountButtons.setPadding(new Insets(5, 0, 0, 0));
-
-        VBox userDetails = new VBox(5, username, balance, accountButtons);
-        userDetails.setAlignment(Pos.CENTER_RIGHT);
-
-        //search
-        TextField searchField = new TextField();
-        searchField.setPromptText("Search for something");
-        searchField.setPrefWidth(580);
-        searchField.setOnKeyPressed((KeyEvent e) -> {
-            if (e.getCode() == KeyCode.ENTER) {
-                //search query
-                String query = searchField.getText();
-                ArrayList<Product> results = Store.searchQuery(query);
-
-                currentStage.setScene(getSearchQuery(query, results));
-            }
-        });
-
-        Button searchButton = new Button("Search");
-        searchButton.setOnAction(e -> {
-            //search query
-            String query = searchField.getText();
-            ArrayList<Product> results = Store.searchQuery(query);
-
-            currentStage.setScene(getSearchQuery(query, results));
-        });
-
-        Button viewCartButton = new Button("View Cart");
-        viewCartButton.setOnAction(e -> {
-            currentStage.setScene(getCartView(Store.currentAccount.getCart()));
-        });
-
-        HBox searchBox = new HBox(10, searchField, searchButton, viewCartButton);
-        searchBox.setAlignment(Pos.CENTER_LEFT);
-        searchBox.setPadding(new Insets(10, 0, 10, 0));
-
-        //box to hold header items
-        HBox.setHgrow(logoWrapper, Priority.ALWAYS);
-        HBox logoBox = new HBox(logoWrapper, userDetails);
-        VBox headerBox = new VBox(logoBox, searchBox);
-        headerBox.setPadding(new Insets(0, 5, 5, 5));
-        return headerBox;
+        if (header == null) {
+            header = new PageHeader();
+        }
+        header.setAccount(Store.getCurrentAccount());
+        return header;
     }
 
     /**
@@ -473,59 +510,49 @@ public class SceneLoader {
 
         usernameField.setOnKeyPressed((KeyEvent e) -> {
             if (e.getCode() == KeyCode.ENTER) {
-                String username = usernameField.getText();
-                String password = passwordField.getText();
-
-                //this is the command to log in
-                if (Store.login(username, password)) {
-
-                    //Successful login, go to home screen
-                    currentStage.setScene(getHomeScreen());
-                    currentStage.show();
-
-                } else {
-                    //Failed login
-                    Alert wrongLogin = new Alert(Alert.AlertType.ERROR);
-                    wrongLogin.setTitle("Sign in error");
-                    wrongLogin.setHeaderText("Incorrect Username/Password");
-                    wrongLogin.setContentText("Please try again");
-                    wrongLogin.show();
-                }
+                signIn(usernameField.getText(), passwordField.getText());
             }
         });
         
         passwordField.setOnKeyPressed((KeyEvent e) -> {
             if (e.getCode() == KeyCode.ENTER) {
-                String username = usernameField.getText();
-                String password = passwordField.getText();
-
-                //this is the command to log in
-                if (Store.login(username, password)) {
-
-                    //Successful login, go to home screen
-                    currentStage.setScene(getHomeScreen());
-                    currentStage.show();
-
-                } else {
-                    //Failed login
-                    Alert wrongLogin = new Alert(Alert.AlertType.ERROR);
-                    wrongLogin.setTitle("Sign in error");
-                    wrongLogin.setHeaderText("Incorrect Username/Password");
-                    wrongLogin.setContentText("Please try again");
-                    wrongLogin.show();
-                }
+                signIn(usernameField.getText(), passwordField.getText());
             }
         });
         
         //login button
         Button signInButton = new Button("Sign in");
         signInButton.setOnAction(e -> {
+            signIn(usernameField.getText(), passwordField.getText());
+        });
+        signInButton.disableProperty().bind(AsyncCommands.busyProperty());
+
+        //shown while signing in
+        HBox signInButtonBox = new HBox(10, signInButton, AsyncCommands.createProgressIndicator());
+        signInButtonBox.setAlignment(Pos.CENTER_LEFT);
+
+        //contains the fields needed to sign into account
+        VBox loginBox = new VBox(10, hasAccount, usernameBox, passwordBox, signInButtonBox);
 
-            String username = usernameField.getText();
-            String password = passwordField.getText();
+        return loginBox;
+    }
+
+    /**
+     * Signs in on a worker thread, then goes to the home screen or tells the
+     * user the details were wrong. Does nothing while another command is
+     * running.
+     *
+     * @param username the entered username
+     * @param password the entered password
+     */
+    private static void signIn(String username, String password) {
 
-            //this is the command to log in
-            if (Store.login(username, password)) {
+        if (AsyncCommands.isBusy()) {
+            return;
+        }
+        //this is the command to log in
+        AsyncCommands.submit(() -> Store.login(username, password), loggedIn -> {
+            if (loggedIn) {
 
                 //Successful login, go to home screen
                 currentStage.setScene(getHomeScreen());
@@ -539,12 +566,22 @@ public class SceneLoader {
                 wrongLogin.setContentText("Please try again");
                 wrongLogin.show();
             }
-        });
+        }, SceneLoader::commandFailed);
+    }
 
-        //contains the fields needed to sign into account
-        VBox loginBox = new VBox(10, hasAccount, usernameBox, passwordBox, signInButton);
+    /**
+     * Shows an alert for a command that failed unexpectedly. Used by every
+     * page's AsyncCommands.
+     *
+     * @param ex what the command threw
+     */
+    static void commandFailed(Throwable ex) {
 
-        return loginBox;
+        Alert failed = new Alert(Alert.AlertType.ERROR);
+        failed.setTitle("Error");
+        failed.setHeaderText("Something went wrong");
+        failed.setContentText(ex.getMessage() == null ? ex.toString() : ex.getMessage());
+        failed.show();
     }
 
     /**
@@ -594,24 +631,30 @@ public class SceneLoader {
             if (agreeToTerms.isSelected()) {
                 if (verifyPasswordField.getText().equals(password)) {
 
-                    //attempt to create the account
-                    try {
+                    //attempt to create the account and save it, off the
+                    //Application Thread
+                    AsyncCommands.submit(() -> {
                         Store.createAccount(username, password);
-
+                        return null;
+                    }, none -> {
                         //alert user that account was successfully created
                         Alert createSuccess = new Alert(Alert.AlertType.INFORMATION);
                         createSuccess.setTitle("Success");
                         createSuccess.setHeaderText("Account created");
                         createSuccess.setContentText("You may now sign in to this account");
                         createSuccess.show();
-                    } catch (IllegalArgumentException ex) {
+                    }, ex -> {
+                        if (!(ex instanceof IllegalArgumentException)) {
+                            commandFailed(ex);
+                            return;
+                        }
                         //alerts the user that the username is taken
                         Alert inUseAlert = new Alert(Alert.AlertType.ERROR);
                         inUseAlert.setTitle("Signup error");
                         inUseAlert.setHeaderText("Username taken");
                         inUseAlert.setContentText("Please choose another and try again.");
                         inUseAlert.show();
-                    }
+                    });
 
                 } else {
 
@@ -635,19 +678,37 @@ public class SceneLoader {
             }
         });
 
+        createAccountButton.disableProperty().bind(AsyncCommands.busyProperty());
+
+        //shown while the account is being created
+        HBox createAccountButtonBox = new HBox(10, createAccountButton, AsyncCommands.createProgressIndicator());
+        createAccountButtonBox.setAlignment(Pos.CENTER_LEFT);
+
         /*contains all of the fields needed to sign up for a new account, layed 
         out vertically*/
-        VBox signupBox = new VBox(10, createLabel, newUsernameBox, newPasswordBox, verifyPasswordBox, agreeToTerms, createAccountButton);
+        VBox signupBox = new VBox(10, createLabel, newUsernameBox, newPasswordBox, verifyPasswordBox, agreeToTerms, createAccountButtonBox);
         return signupBox;
     }
 
     /**
-     * Displays the search results from a passed array list of products.
+     * Displays the results of a search. Only the first page of results is
+     * searched for and shown; more are added to the page when the user clicks
+     * "Load more" or scrolls to the bottom.
+     *
+     * @param query the text that was searched for
+     * @return the completed search results scene
+     */
+    public static Scene getSearchQuery(String query) {
+
+        return ScreenMetrics.time("search", () -> buildSearchQuery(query));
+    }
+
+    /**
+     * Builds the search results scene for getSearchQuery(). Timed by ScreenMetrics.
      *
-     * @param results the results to be displayed on the search query page
-     * @return
+     * @return the completed search results scene
      */
-    public static Scene getSearchQuery(String query, ArrayList<Product> results) {
+    private static Scene buildSearchQuery(String query) {
 
         VBox header = createHeader();
         
@@ -656,21 +717,53 @@ public class SceneLoader {
         StackPane searchQuery = new StackPane(queryValue);
         searchQuery.setAlignment(Pos.CENTER_LEFT);
         searchQuery.setPadding(new Insets(2));
-        
-        //Arraylist filled with completed thumbnails, which are VBoxes
-        ArrayList<VBox> thumbs = new ArrayList<>();
-        results.forEach((p) -> {
-            thumbs.add(createThumbnail(p));
-        });
 
         //displays the thumbnails in a wrapping horizontal flowpane
         FlowPane resultsPane = new FlowPane(10, 10);
-        resultsPane.getChildren().addAll(thumbs);
 
-        VBox content = new VBox(header, searchQuery, resultsPane);
+        //shows how many results there are and loads the next page
+        Text resultCount = new Text();
+        Button loadMore = new Button("Load more");
+        HBox moreBox = new HBox(10, resultCount, loadMore);
+        moreBox.setAlignment(Pos.CENTER_LEFT);
+        moreBox.setPadding(new Insets(10, 0, 0, 0));
+
+        VBox content = new VBox(header, searchQuery, resultsPane, moreBox);
         content.setPadding(new Insets(20));
         ScrollPane container = new ScrollPane(content);
         container.setStyle("-fx-font-size: 15;");
+
+        //cursor of the next page to load, null once every result is shown
+        String[] nextCursor = new String[1];
+        Runnable loadPage = () -> {
+            SearchPage page = Store.searchQuery(query, nextCursor[0], SEARCH_PAGE_SIZE);
+            page.getResults().forEach((p) -> {
+                resultsPane.getChildren().add(createThumbnail(p));
+            });
+            nextCursor[0] = page.getNextCursor();
+
+            int shown = resultsPane.getChildren().size();
+            if (page.hasMore()) {
+                resultCount.setText("Showing " + shown + " of about " + page.getEstimatedTotal() + " results");
+            } else {
+                resultCount.setText("Showing all " + shown + " results");
+            }
+            loadMore.setVisible(page.hasMore());
+        };
+
+        loadMore.setOnAction(e -> {
+            loadPage.run();
+        });
+        //infinite scroll: load the next page when scrolled to the bottom
+        container.vvalueProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue.doubleValue() >= container.getVmax() && nextCursor[0] != null) {
+                loadPage.run();
+            }
+        });
+
+        //first page of results
+        loadPage.run();
+
         Scene searchQueryScene = new Scene(container, 817, 600);
         return searchQueryScene;
     }
@@ -684,7 +777,7 @@ public class SceneLoader {
     private static VBox createThumbnail(Product p) {
 
         //product thumbnail image
-        ImageView img = new ImageView(p.getImageURL());
+        ImageView img = new ImageView(ScreenMetrics.loadThumbnail(p.getImageURL(), 176));
         img.setFitWidth(176);
         img.preserveRatioProperty().set(true);
         StackPane image = new StackPane(img);
@@ -730,47 +823,58 @@ public class SceneLoader {
      */
     public static Scene getCartView(Cart c) {
 
+        return ScreenMetrics.time("cart", () -> buildCartView(c));
+    }
+
+    /**
+     * Builds the View Cart scene for getCartView(). Timed by ScreenMetrics.
+     *
+     * @return the completed View Cart scene
+     */
+    private static Scene buildCartView(Cart c) {
+
         VBox header = createHeader();
-        //sends all cart items to be turned into boxes to be displayed
-        ArrayList<HBox> cartItems = new ArrayList<>();
-        c.getItems().forEach((p) -> {
-            cartItems.add(createCartItem(p));
-        });
 
+        /*info about the current state of the cart, updated by refreshInfo
+        whenever a quantity changes:*/
+        Text quantity = new Text();
+        Text subTotal = new Text();
+        //shipping is just flat rate
+        Text shipping = new Text("Shipping: " + CheckoutEngine.SHIPPING);
+        Text totalPrice = new Text();
+        totalPrice.setStyle("-fx-font-size: 20;");
+        MoneyFormatter formatter = new MoneyFormatter();
+        Runnable refreshInfo = () -> {
+            quantity.setText("Total items: " + c.getItemCount());
+            subTotal.setText(formatter.format("Subtotal: ", c.getTotalCents()));
+            totalPrice.setText(formatter.format("Grand total: ", c.getTotalCents() + CheckoutEngine.SHIPPING.getCents()));
+        };
+        refreshInfo.run();
+
+        //sends all line items to be turned into boxes to be displayed
         VBox cartItemsBox = new VBox(10);
-        cartItemsBox.getChildren().addAll(cartItems);
+        c.getLineItems().forEach((id, count) -> {
+            cartItemsBox.getChildren().add(createCartItem(c, Store.getProduct(id), cartItemsBox, refreshInfo));
+        });
 
         //allow for scrolling through cart items while leaving the sidebar in the same place
         ScrollPane cartItemsContainer = new ScrollPane(cartItemsBox);
         cartItemsContainer.setPadding(new Insets(10));
 
-        /*info about the current state of the cart:*/
-        //tally up the cost
-        double total = 0;
-        total = c.getItems().stream().map((p) -> p.getPrice()).reduce(total, (accumulator, _item) -> accumulator + _item);
-        String subtotalFormat = String.format("Subtotal: $%.2f", total);
-        Text subTotal = new Text(subtotalFormat);
-
-        //shipping is just flat rate
-        Text shipping = new Text("Shipping: $7.80");
-
-        double grandTotal = total + 7.8;
-
-        String formatTotal = String.format("Grand total: $%.2f", grandTotal);
-        Text totalPrice = new Text(formatTotal);
-        totalPrice.setStyle("-fx-font-size: 20;");
-
         //buy it now button
         Button buyItNow = new Button("Buy it Now");
         buyItNow.setStyle("-fx-font-size: 20;");
         buyItNow.setOnAction(e -> {
             //purchase everything in the current cart
-            Store.currentAccount.purchase();
+            purchase(null);
         });
+        buyItNow.disableProperty().bind(AsyncCommands.busyProperty());
 
-        Text quantity = new Text("Total items: " + c.getItems().size());
+        //shown while the purchase is made
+        HBox buyBox = new HBox(10, AsyncCommands.createProgressIndicator(), buyItNow);
+        buyBox.setAlignment(Pos.CENTER_RIGHT);
 
-        VBox cartInfo = new VBox(10, quantity, subTotal, shipping, totalPrice, buyItNow);
+        VBox cartInfo = new VBox(10, quantity, subTotal, shipping, totalPrice, buyBox);
         cartInfo.setAlignment(Pos.BOTTOM_RIGHT);
         cartInfo.setPrefWidth(200);
         cartInfo.autosize();
@@ -789,14 +893,20 @@ public class SceneLoader {
     }
 
     /**
+     * Creates a line item for the cart view with a quantity stepper and a
+     * remove button. Changes are made to the cart straight away and the page
+     * is updated in place instead of being rebuilt.
      *
+     * @param c the cart being displayed
      * @param p the item to be turned into a list item for the cart
+     * @param cartItemsBox the box holding every line item
+     * @param refreshInfo updates the cart's count and totals on the page
      * @return the cart item HBox
      */
-    private static HBox createCartItem(Product p) {
+    private static HBox createCartItem(Cart c, Product p, VBox cartItemsBox, Runnable refreshInfo) {
 
         //the item's image
-        ImageView image = new ImageView(p.getImageURL());
+        ImageView image = new ImageView(ScreenMetrics.loadThumbnail(p.getImageURL(), 100));
         image.setFitWidth(100);
         image.setPreserveRatio(true);
 
@@ -810,19 +920,34 @@ public class SceneLoader {
         //holds the price
         BorderPane priceBox = new BorderPane(price);
         HBox.setHgrow(priceBox, Priority.ALWAYS);
+
+        //quantity stepper
+        Spinner<Integer> quantity = new Spinner<>(1, Cart.MAX_QUANTITY, c.getQuantity(p));
+        quantity.setPrefWidth(70);
+        quantity.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (!Store.setQuantity(p, newValue)) {
+                //not enough stock, put the spinner back
+                quantity.getValueFactory().setValue(oldValue);
+                outOfStock("There are not " + newValue + " of " + p.getName() + " in stock");
+                return;
+            }
+            refreshInfo.run();
+        });
+
         //remove cart item button
         Button remove = new Button("Remove");
         remove.setAlignment(Pos.CENTER_RIGHT);
         HBox.setHgrow(remove, Priority.ALWAYS);
 
+        HBox cartItemBox = new HBox(10, image, name, priceBox, quantity, remove);
+
         remove.setOnAction(e -> {
-            //remove from cart and refresh the scene
-            Store.currentAccount.removeFromCart(p);
-            currentStage.setScene(getCartView(Store.currentAccount.getCart()));
+            //remove the whole line from the cart and from the page
+            Store.setQuantity(p, 0);
+            cartItemsBox.getChildren().remove(cartItemBox);
+            refreshInfo.run();
         });
 
-        HBox cartItemBox = new HBox(10, image, name, priceBox, remove);
-
         cartItemBox.setAlignment(Pos.CENTER_LEFT);
 
         return cartItemBox;
@@ -834,7 +959,17 @@ public class SceneLoader {
      * @param order The list of orders to be displayed in the view orders screen
      * @return The completed view orders scene
      */
-    public static Scene getOrderView(ArrayList<Order> order) {
+    public static Scene getOrderView(List<Order> order) {
+
+        return ScreenMetrics.time("orders", () -> buildOrderView(order));
+    }
+
+    /**
+     * Builds the view orders scene for getOrderView(). Timed by ScreenMetrics.
+     *
+     * @return the completed view orders scene
+     */
+    private static Scene buildOrderView(List<Order> order) {
 
         //create header for the top of the page
         VBox header = createHeader();
@@ -873,16 +1008,18 @@ public class SceneLoader {
         /*use a flowpane to display the product thumbnails so that they wrap 
         around when there are too many to fit on one line*/
         FlowPane thumbnailBox = new FlowPane(5, 5);
-        o.getItems().stream().map((p) -> new ImageView(p.getImageURL())).map((thumb) -> {
-            //add thumbail to flowpane
+        for (int i = 0; i < o.getLineCount(); i++) {
+            //one thumbnail per product, with the quantity under it if more than one was bought
+            ImageView thumb = new ImageView(ScreenMetrics.loadThumbnail(Store.getProduct(o.getProductId(i)).getImageURL(), 60));
             thumb.setFitWidth(60);
-            return thumb;
-        }).map((thumb) -> {
             thumb.setPreserveRatio(true);
-            return thumb;
-        }).forEachOrdered((thumb) -> {
-            thumbnailBox.getChildren().add(thumb);
-        });
+            VBox thumbBox = new VBox(thumb);
+            thumbBox.setAlignment(Pos.CENTER);
+            if (o.getLineQuantity(i) > 1) {
+                thumbBox.getChildren().add(new Text("x" + o.getLineQuantity(i)));
+            }
+            thumbnailBox.getChildren().add(thumbBox);
+        }
         thumbnailBox.setMaxWidth(350);
 
         //order info
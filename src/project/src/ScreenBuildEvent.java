@@ -0,0 +1,30 @@
+package project.src;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for building one SceneLoader screen. Committed by
+ * ScreenMetrics.time() when the event is enabled in the recording.
+ *
+ * @author Josh Howson
+ */
+@Name("project.src.ScreenBuild")
+@Label("Screen Build")
+@Category({"minus-one", "UI"})
+@Description("A screen being built on the JavaFX Application Thread")
+class ScreenBuildEvent extends jdk.jfr.Event {
+
+    @Label("Screen")
+    String screen;
+
+    @Label("Nodes")
+    long nodeCount;
+
+    @Label("Image Load Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long imageNanos;
+}
@@ -0,0 +1,342 @@
+package project.src;
+
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.Image;
+
+/**
+ * Built-in instrumentation for SceneLoader. Records how long each screen takes
+ * to build, how many nodes it has, how long its images take to load and how
+ * many frames are dropped while it is being built. Also records the time
+ * between JavaFX pulses (frames) for the whole application.
+ *
+ * A summary of every histogram can be printed to the log periodically, by
+ * setting the period in seconds with the system property
+ * "minusone.metrics.interval". It is off by default (0), so a normal run of
+ * the app prints nothing; Flight Recorder still gets every screen build.
+ *
+ * Each build is also committed as a ScreenBuildEvent to any Flight Recorder
+ * recording that enables it, when the JVM has Flight Recorder (see
+ * FlightEvents).
+ *
+ * Images are loaded from the asset pack when one has been set (see
+ * AssetPack), and from the classpath otherwise.
+ *
+ * Screens are built on the JavaFX Application Thread, so the per-build state
+ * here is only touched from that thread. The histograms themselves may be read
+ * from any thread.
+ *
+ * Because this class will not be instantiated, all of its fields and methods
+ * are static.
+ *
+ * @author Josh Howson
+ */
+public class ScreenMetrics {
+
+    /**
+     * The expected time between frames at 60 frames per second, in nanoseconds
+     */
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    /**
+     * Stats for each screen, by screen name
+     */
+    private static final Map<String, ScreenStats> screens = new ConcurrentHashMap<>();
+
+    /**
+     * Time between JavaFX pulses
+     */
+    private static final LatencyHistogram frames = new LatencyHistogram();
+
+    /**
+     * Total number of frames dropped since startup
+     */
+    private static final AtomicLong droppedFrames = new AtomicLong();
+
+    /**
+     * Time taken by image loads that were not part of a screen build, for
+     * example thumbnails added by "Load more"
+     */
+    private static final LatencyHistogram otherImages = new LatencyHistogram();
+
+    /**
+     * Nanoseconds spent loading images during the build in progress, -1 when
+     * no build is running
+     */
+    private static long buildImageNanos = -1;
+
+    /**
+     * The pack images are loaded from, null to load them all from the
+     * classpath
+     */
+    private static volatile AssetPack assets;
+
+    /**
+     * The screen built most recently. The next frame interval includes its
+     * build time, so any frames dropped in that interval are charged to it.
+     */
+    private static ScreenStats pendingScreen;
+
+    /**
+     * Starts watching frame timings and, unless turned off, the periodic log
+     * summary. Must be called on the JavaFX Application Thread.
+     */
+    public static void start() {
+
+        new AnimationTimer() {
+
+            /**
+             * Timestamp of the previous pulse, 0 before the first one
+             */
+            private long lastPulse;
+
+            @Override
+            public void handle(long now) {
+
+                if (lastPulse != 0) {
+                    long interval = now - lastPulse;
+                    frames.record(interval);
+
+                    //anything longer than one and a half frames missed at least one
+                    long dropped = 0;
+                    if (interval > FRAME_NANOS * 3 / 2) {
+                        dropped = Math.round((double) interval / FRAME_NANOS) - 1;
+                        droppedFrames.addAndGet(dropped);
+                    }
+                    if (pendingScreen != null) {
+                        pendingScreen.droppedFrames.addAndGet(dropped);
+                        pendingScreen = null;
+                    }
+                }
+                lastPulse = now;
+            }
+        }.start();
+
+        long interval = Long.getLong("minusone.metrics.interval", 0);
+        if (interval > 0) {
+            Timer logTimer = new Timer("screen-metrics-log", true);
+            logTimer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    System.out.println(summary());
+                }
+            }, interval * 1000, interval * 1000);
+        }
+    }
+
+    /**
+     * Builds a screen and records its build time, node count and the time
+     * spent loading its images.
+     *
+     * @param name the name of the screen, eg: "home"
+     * @param builder builds the screen's scene
+     * @return the scene that was built
+     */
+    public static Scene time(String name, Supplier<Scene> builder) {
+
+        ScreenStats stats = screens.computeIfAbsent(name, (key) -> new ScreenStats());
+        ScreenBuildEvent event = FlightEvents.AVAILABLE ? new ScreenBuildEvent() : null;
+
+        //remember any build already running (a screen can build another one)
+        long outerImageNanos = buildImageNanos;
+        long imageNanos;
+        buildImageNanos = 0;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        Scene scene;
+        try {
+            scene = builder.get();
+        } finally {
+            if (event != null) {
+                event.end();
+            }
+            stats.build.record(System.nanoTime() - start);
+            imageNanos = buildImageNanos;
+            stats.images.record(imageNanos);
+            buildImageNanos = outerImageNanos;
+        }
+
+        long nodes = countNodes(scene.getRoot());
+        stats.lastNodeCount.set(nodes);
+        stats.nodes.record(nodes);
+        pendingScreen = stats;
+
+        if (event != null && event.shouldCommit()) {
+            event.screen = name;
+            event.nodeCount = nodes;
+            event.imageNanos = imageNanos;
+            event.commit();
+        }
+        return scene;
+    }
+
+    /**
+     * Loads an image and adds the time it took to the build in progress.
+     *
+     * @param url the image's URL, eg: "images/1.png"
+     * @return the loaded image
+     */
+    public static Image loadImage(String url) {
+
+        long start = System.nanoTime();
+        AssetPack pack = assets;
+        Image image = pack == null ? null : pack.loadImage(url);
+        if (image == null) {
+            image = new Image(url);
+        }
+        recordImage(start);
+        return image;
+    }
+
+    /**
+     * Loads an image to be shown small, from the asset pack's already
+     * decoded thumbnails when it has one big enough, and adds the time it
+     * took to the build in progress.
+     *
+     * @param url the image's URL, eg: "images/1.png"
+     * @param width the width the image will be shown at
+     * @return the thumbnail, or the full image if there is no thumbnail
+     */
+    public static Image loadThumbnail(String url, int width) {
+
+        long start = System.nanoTime();
+        AssetPack pack = assets;
+        Image image = pack == null ? null : pack.loadThumbnail(url, width);
+        if (image == null) {
+            return loadImage(url);
+        }
+        recordImage(start);
+        return image;
+    }
+
+    /**
+     * Sets the pack images are loaded from. Images not in the pack are still
+     * loaded from the classpath.
+     *
+     * @param pack the pack, or null to load every image from the classpath
+     */
+    public static void setAssets(AssetPack pack) {
+
+        assets = pack;
+    }
+
+    /**
+     * Adds the time since an image load started to the build in progress
+     *
+     * @param start System.nanoTime() when the load started
+     */
+    private static void recordImage(long start) {
+
+        long elapsed = System.nanoTime() - start;
+        if (buildImageNanos >= 0) {
+            buildImageNanos += elapsed;
+        } else {
+            otherImages.record(elapsed);
+        }
+    }
+
+    /**
+     * Formats every histogram for the log
+     *
+     * @return one line per screen plus one for frames and stray image loads
+     */
+    public static String summary() {
+
+        StringBuilder sb = new StringBuilder("[metrics] screen summary");
+        screens.forEach((name, stats) -> {
+            sb.append("\n[metrics] ").append(name)
+                    .append(": build ").append(stats.build.summary())
+                    .append(" | images ").append(stats.images.summary())
+                    .append(" | nodes last=").append(stats.lastNodeCount.get())
+                    .append(" max=").append(stats.nodes.getMax())
+                    .append(" | dropped frames=").append(stats.droppedFrames.get());
+        });
+        sb.append("\n[metrics] frames: ").append(frames.summary())
+                .append(" dropped=").append(droppedFrames.get());
+        sb.append("\n[metrics] images outside builds: ").append(otherImages.summary());
+        return sb.toString();
+    }
+
+    /**
+     * Gets the build time histogram of a screen
+     *
+     * @param name the name of the screen
+     * @return the histogram, or null if the screen has never been built
+     */
+    public static LatencyHistogram getBuildHistogram(String name) {
+
+        ScreenStats stats = screens.get(name);
+        return stats == null ? null : stats.build;
+    }
+
+    /**
+     *
+     * @return the histogram of time between JavaFX pulses
+     */
+    public static LatencyHistogram getFrameHistogram() {
+
+        return frames;
+    }
+
+    /**
+     * Counts a node and all of its descendants
+     *
+     * @param node the root of the tree to count
+     * @return the number of nodes in the tree
+     */
+    private static long countNodes(Node node) {
+
+        long count = 1;
+        //a scroll pane's content is not one of its children until it is shown
+        if (node instanceof ScrollPane && ((ScrollPane) node).getContent() != null) {
+            count += countNodes(((ScrollPane) node).getContent());
+        } else if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The stats kept for one screen
+     */
+    private static class ScreenStats {
+
+        /**
+         * Time to build the screen
+         */
+        private final LatencyHistogram build = new LatencyHistogram();
+
+        /**
+         * Time spent loading images while building the screen
+         */
+        private final LatencyHistogram images = new LatencyHistogram();
+
+        /**
+         * Number of nodes in the built screen
+         */
+        private final LatencyHistogram nodes = new LatencyHistogram();
+
+        /**
+         * Number of nodes in the most recent build
+         */
+        private final AtomicLong lastNodeCount = new AtomicLong();
+
+        /**
+         * Frames dropped by the pulse that included this screen's build
+         */
+        private final AtomicLong droppedFrames = new AtomicLong();
+    }
+}
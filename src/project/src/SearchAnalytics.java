@@ -0,0 +1,482 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What people search for, counted as they search instead of logged to disk.
+ * Keeps the most searched queries, and the most searched queries that found
+ * nothing, over a rolling window (by default the last hour).
+ *
+ * The window is split into buckets (by default 12 of 5 minutes). Each bucket
+ * has a count-min sketch of every query searched during it and a heap of its
+ * most searched queries (its heavy hitters), for all searches and again for
+ * those with no results. When a bucket's time comes round again it is cleared
+ * and reused, so memory stays the same however many searches or different
+ * queries there are. The top queries for the window are the heavy hitters of
+ * every bucket, ranked by the sum of their estimates from each bucket's
+ * sketch. Counts are estimates that can only be too high, and only by a
+ * small fraction of the window's total searches.
+ *
+ * Queries are counted after trimming, lowercasing and collapsing spaces, so
+ * "Laptop" and " laptop " count as the same query. All methods are
+ * thread-safe.
+ *
+ * @author Josh Howson
+ */
+public class SearchAnalytics {
+
+    /**
+     * The length of each bucket, by default
+     */
+    public static final long DEFAULT_BUCKET_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * The number of buckets in the window, by default
+     */
+    public static final int DEFAULT_BUCKETS = 12;
+
+    /**
+     * The number of counters in each row of a bucket's sketches
+     */
+    private static final int SKETCH_WIDTH = 1024;
+
+    /**
+     * The number of heavy hitters kept by each bucket
+     */
+    private static final int TRACKED = 32;
+
+    /**
+     * Longer queries are cut to this length, so a heavy hitter's memory is
+     * bounded too
+     */
+    private static final int MAX_QUERY_LENGTH = 64;
+
+    /**
+     * The length of each bucket
+     */
+    private final long bucketMillis;
+
+    /**
+     * The buckets, reused round robin. Bucket i covers every period whose
+     * number (time / bucketMillis) is i modulo the number of buckets.
+     */
+    private final Bucket[] buckets;
+
+    /**
+     * Constructor for analytics over the last hour, in 5 minute buckets
+     */
+    public SearchAnalytics() {
+
+        this(DEFAULT_BUCKETS, DEFAULT_BUCKET_MILLIS);
+    }
+
+    /**
+     * Constructor for analytics over a window of buckets * bucketMillis
+     *
+     * @param buckets the number of buckets in the window
+     * @param bucketMillis the length of each bucket
+     * @throws IllegalArgumentException if either value is less than 1
+     */
+    public SearchAnalytics(int buckets, long bucketMillis) {
+
+        if (buckets < 1 || bucketMillis < 1) {
+            throw new IllegalArgumentException("Buckets and bucket length must be positive");
+        }
+        this.bucketMillis = bucketMillis;
+        this.buckets = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Counts a search
+     *
+     * @param query the query as it was typed
+     * @param resultCount the number of results it found
+     */
+    public void record(String query, int resultCount) {
+
+        record(query, resultCount, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts a search at the given time
+     *
+     * @param query the query as it was typed
+     * @param resultCount the number of results it found
+     * @param now the time of the search, in epoch milliseconds
+     */
+    synchronized void record(String query, int resultCount, long now) {
+
+        String key = normalize(query);
+        if (key.isEmpty()) {
+            return;
+        }
+        Bucket b = bucketAt(now);
+        b.searches++;
+        b.topAll.offer(key, b.all.add(key));
+        if (resultCount == 0) {
+            b.zeroResults++;
+            b.topZero.offer(key, b.zero.add(key));
+        }
+    }
+
+    /**
+     *
+     * @param k the maximum number of queries to return
+     * @return the most searched queries in the window, most searched first
+     */
+    public List<QueryCount> getTopQueries(int k) {
+
+        return top(k, false, System.currentTimeMillis());
+    }
+
+    /**
+     *
+     * @param k the maximum number of queries to return
+     * @return the most searched queries in the window that found nothing,
+     * most searched first
+     */
+    public List<QueryCount> getTopZeroResultQueries(int k) {
+
+        return top(k, true, System.currentTimeMillis());
+    }
+
+    /**
+     *
+     * @return the number of searches in the window
+     */
+    public long getSearchCount() {
+
+        return total(false, System.currentTimeMillis());
+    }
+
+    /**
+     *
+     * @return the number of searches in the window that found nothing
+     */
+    public long getZeroResultCount() {
+
+        return total(true, System.currentTimeMillis());
+    }
+
+    /**
+     *
+     * @return the length of the window, in milliseconds
+     */
+    public long getWindowMillis() {
+
+        return bucketMillis * buckets.length;
+    }
+
+    /**
+     * Ranks the heavy hitters of every bucket in the window
+     *
+     * @param k the maximum number of queries to return
+     * @param zeroOnly true for searches that found nothing, false for all
+     * @param now the current time, in epoch milliseconds
+     * @return up to k queries, most searched first
+     */
+    synchronized List<QueryCount> top(int k, boolean zeroOnly, long now) {
+
+        long oldest = period(now) - buckets.length + 1;
+        HashSet<String> candidates = new HashSet<>();
+        for (Bucket b : buckets) {
+            if (b.period >= oldest) {
+                HeavyHitters h = zeroOnly ? b.topZero : b.topAll;
+                for (int i = 0; i < h.size; i++) {
+                    candidates.add(h.keys[i]);
+                }
+            }
+        }
+
+        ArrayList<QueryCount> ranked = new ArrayList<>(candidates.size());
+        for (String key : candidates) {
+            long count = 0;
+            for (Bucket b : buckets) {
+                if (b.period >= oldest) {
+                    count += (zeroOnly ? b.zero : b.all).estimate(key);
+                }
+            }
+            ranked.add(new QueryCount(key, count));
+        }
+        ranked.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.query.compareTo(b.query));
+        return new ArrayList<>(ranked.subList(0, Math.min(k, ranked.size())));
+    }
+
+    /**
+     * Adds up the searches of every bucket in the window
+     *
+     * @param zeroOnly true for searches that found nothing, false for all
+     * @param now the current time, in epoch milliseconds
+     * @return the number of searches
+     */
+    synchronized long total(boolean zeroOnly, long now) {
+
+        long oldest = period(now) - buckets.length + 1;
+        long total = 0;
+        for (Bucket b : buckets) {
+            if (b.period >= oldest) {
+                total += zeroOnly ? b.zeroResults : b.searches;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the bucket for a time, clearing it first if it last held an older
+     * period
+     *
+     * @param now the time, in epoch milliseconds
+     * @return the bucket
+     */
+    private Bucket bucketAt(long now) {
+
+        long period = period(now);
+        Bucket b = buckets[(int) Math.floorMod(period, (long) buckets.length)];
+        if (b.period != period) {
+            b.reset(period);
+        }
+        return b;
+    }
+
+    /**
+     *
+     * @return the number of the bucket-length period a time is in
+     */
+    private long period(long now) {
+
+        return Math.floorDiv(now, bucketMillis);
+    }
+
+    /**
+     * Puts a query into the form it is counted in
+     *
+     * @param query the query as typed
+     * @return the query trimmed, in lowercase, with runs of spaces made into
+     * one and cut to MAX_QUERY_LENGTH
+     */
+    static String normalize(String query) {
+
+        String key = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return key.length() > MAX_QUERY_LENGTH ? key.substring(0, MAX_QUERY_LENGTH) : key;
+    }
+
+    /**
+     * A query and how many times it was searched
+     */
+    public static final class QueryCount {
+
+        /**
+         * The normalized query
+         */
+        private final String query;
+
+        /**
+         * The estimated number of searches
+         */
+        private final long count;
+
+        QueryCount(String query, long count) {
+
+            this.query = query;
+            this.count = count;
+        }
+
+        /**
+         *
+         * @return the query, trimmed and in lowercase
+         */
+        public String getQuery() {
+
+            return query;
+        }
+
+        /**
+         *
+         * @return the estimated number of times it was searched, never less
+         * than the true number
+         */
+        public long getCount() {
+
+            return count;
+        }
+
+        /**
+         * Formats the count like: "laptop=42"
+         *
+         * @return the formatted count
+         */
+        @Override
+        public String toString() {
+
+            return query + "=" + count;
+        }
+    }
+
+    /**
+     * The searches of one bucket-length period
+     */
+    private static class Bucket {
+
+        /**
+         * The period this bucket holds, or -1 if it has never been used
+         */
+        private long period = -1;
+
+        /**
+         * Every query searched
+         */
+        private final CountMinSketch all = new CountMinSketch(SKETCH_WIDTH);
+
+        /**
+         * Every query searched that found nothing
+         */
+        private final CountMinSketch zero = new CountMinSketch(SKETCH_WIDTH);
+
+        /**
+         * The most searched queries
+         */
+        private final HeavyHitters topAll = new HeavyHitters(TRACKED);
+
+        /**
+         * The most searched queries that found nothing
+         */
+        private final HeavyHitters topZero = new HeavyHitters(TRACKED);
+
+        /**
+         * The number of searches, and of those that found nothing
+         */
+        private long searches, zeroResults;
+
+        /**
+         * Clears the bucket for a new period
+         */
+        private void reset(long period) {
+
+            this.period = period;
+            all.clear();
+            zero.clear();
+            topAll.clear();
+            topZero.clear();
+            searches = 0;
+            zeroResults = 0;
+        }
+    }
+
+    /**
+     * The queries with the highest counts seen so far, up to a fixed number.
+     * A min-heap, so the lowest of them is at the root and is the one pushed
+     * out when a query with a higher count arrives. Counts only go up, so an
+     * updated query only ever moves down the heap.
+     */
+    private static class HeavyHitters {
+
+        /**
+         * The queries, in heap order
+         */
+        private final String[] keys;
+
+        /**
+         * The count of each query in keys
+         */
+        private final int[] counts;
+
+        /**
+         * The position of each query in keys
+         */
+        private final HashMap<String, Integer> positions;
+
+        /**
+         * The number of queries in the heap
+         */
+        private int size;
+
+        HeavyHitters(int capacity) {
+
+            keys = new String[capacity];
+            counts = new int[capacity];
+            positions = new HashMap<>(capacity * 2);
+        }
+
+        /**
+         * Records a query's new count, adding it if there is room or if it
+         * beats the lowest count kept
+         *
+         * @param key the query
+         * @param count its new count
+         */
+        private void offer(String key, int count) {
+
+            Integer at = positions.get(key);
+            if (at != null) {
+                counts[at] = count;
+                siftDown(at);
+            } else if (size < keys.length) {
+                set(size, key, count);
+                siftUp(size++);
+            } else if (count > counts[0]) {
+                positions.remove(keys[0]);
+                set(0, key, count);
+                siftDown(0);
+            }
+        }
+
+        private void clear() {
+
+            Arrays.fill(keys, null);
+            positions.clear();
+            size = 0;
+        }
+
+        private void siftUp(int i) {
+
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (counts[parent] <= counts[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+
+            while (true) {
+                int smallest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (counts[child] < counts[smallest]) {
+                        smallest = child;
+                    }
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+
+            String key = keys[i];
+            int count = counts[i];
+            set(i, keys[j], counts[j]);
+            set(j, key, count);
+        }
+
+        private void set(int i, String key, int count) {
+
+            keys[i] = key;
+            counts[i] = count;
+            positions.put(key, i);
+        }
+    }
+}
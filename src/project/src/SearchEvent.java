@@ -0,0 +1,32 @@
+package project.src;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one page of search results. Committed by
+ * StoreEngine.search() when the event is enabled in the recording.
+ *
+ * @author Josh Howson
+ */
+@Name("project.src.Search")
+@Label("Search")
+@Category({"minus-one", "Store"})
+@Description("A page of search results")
+class SearchEvent extends jdk.jfr.Event {
+
+    @Label("Query Length")
+    int queryLength;
+
+    @Label("Results")
+    @Description("Results on this page")
+    int resultCount;
+
+    @Label("Estimated Total")
+    int estimatedTotal;
+
+    @Label("First Page")
+    boolean firstPage;
+}
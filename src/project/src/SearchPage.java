@@ -0,0 +1,80 @@
+package project.src;
+
+import java.util.ArrayList;
+
+/**
+ * Immutable class holding one page of search results, the cursor needed to
+ * fetch the page after it and an estimate of how many results there are in
+ * total.
+ *
+ * @author Josh Howson
+ */
+public final class SearchPage {
+
+    /**
+     * The products on this page, in the order they should be displayed
+     */
+    private final ArrayList<Product> results;
+
+    /**
+     * Opaque cursor to pass back to StoreEngine.search() to get the next page.
+     * null when there are no more results.
+     */
+    private final String nextCursor;
+
+    /**
+     * Estimated number of results for the whole query. Exact once the last
+     * page has been reached.
+     */
+    private final int estimatedTotal;
+
+    /**
+     * Constructor for a search page
+     *
+     * @param results the products on this page
+     * @param nextCursor the cursor for the next page, null if this is the last
+     * @param estimatedTotal the estimated total number of results
+     */
+    public SearchPage(ArrayList<Product> results, String nextCursor, int estimatedTotal) {
+
+        this.results = results;
+        this.nextCursor = nextCursor;
+        this.estimatedTotal = estimatedTotal;
+    }
+
+    /**
+     *
+     * @return the products on this page
+     */
+    public ArrayList<Product> getResults() {
+
+        return results;
+    }
+
+    /**
+     *
+     * @return the cursor for the next page, or null if this is the last page
+     */
+    public String getNextCursor() {
+
+        return nextCursor;
+    }
+
+    /**
+     *
+     * @return true if there is another page after this one
+     */
+    public boolean hasMore() {
+
+        return nextCursor != null;
+    }
+
+    /**
+     *
+     * @return the estimated total number of results for the query
+     */
+    public int getEstimatedTotal() {
+
+        return estimatedTotal;
+    }
+}
@@ -0,0 +1,118 @@
+package project.src;
+
+/**
+ * A signed in user's visit to the store. Each session has its own cart, so
+ * the same account can be signed in from several places at once without the
+ * carts getting mixed up.
+ *
+ * Sessions are created by StoreEngine.login() and looked up by their id. The
+ * cart is changed only through StoreEngine, which locks on the session while
+ * it does so. Looking a session up or changing its cart marks it as used;
+ * the store ends sessions left unused for StoreEngine.SESSION_TIMEOUT_MILLIS,
+ * apart from ones started not to expire (the desktop app's, which lasts
+ * until its user signs out).
+ *
+ * @author Josh Howson
+ */
+public class Session {
+
+    /**
+     * Random, hard to guess id given to the client
+     */
+    private final String id;
+
+    /**
+     * The signed in account
+     */
+    private final Account account;
+
+    /**
+     * This session's cart
+     */
+    private final Cart cart;
+
+    /**
+     * When the session was last used, in epoch milliseconds
+     */
+    private volatile long lastAccess;
+
+    /**
+     * False if the session lasts until it is logged out, however long it goes
+     * unused
+     */
+    private final boolean expires;
+
+    /**
+     * Constructor for a session. Package-private: sessions are only created by
+     * StoreEngine.
+     *
+     * @param id the session's id
+     * @param account the signed in account
+     * @param expires false if the session should never be ended for being
+     * unused
+     */
+    Session(String id, Account account, boolean expires) {
+
+        this.id = id;
+        this.account = account;
+        this.cart = new Cart();
+        this.expires = expires;
+        touch();
+    }
+
+    /**
+     *
+     * @return the session's id
+     */
+    public String getId() {
+
+        return id;
+    }
+
+    /**
+     *
+     * @return the signed in account
+     */
+    public Account getAccount() {
+
+        return account;
+    }
+
+    /**
+     * The session's cart. Read it while holding the session's lock if other
+     * threads may be changing it.
+     *
+     * @return the session's cart
+     */
+    public Cart getCart() {
+
+        return cart;
+    }
+
+    /**
+     *
+     * @return when the session was last used, in epoch milliseconds
+     */
+    public long getLastAccess() {
+
+        return lastAccess;
+    }
+
+    /**
+     *
+     * @return true if the store ends the session when it goes unused for too
+     * long
+     */
+    public boolean expires() {
+
+        return expires;
+    }
+
+    /**
+     * Marks the session as used just now
+     */
+    void touch() {
+
+        lastAccess = System.currentTimeMillis();
+    }
+}
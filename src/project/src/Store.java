@@ -2,98 +2,83 @@ package project.src;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.List;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
 /**
- * Class containing methods relating to running the store. Only one user may be
- * logged into the store at any time (currentAccount). Because this class will
- * not be instantiated, all of its fields and methods are static.
+ * The desktop app's connection to the store. The store itself is a
+ * StoreEngine, which knows nothing about JavaFX; this class signs the app's
+ * single user in to it (only one user may be logged into the desktop app at
+ * any time) and turns file errors into alerts. Its methods may be called from
+ * AsyncCommands' worker threads as well as the JavaFX Application Thread.
+ * Because this class will not be instantiated, all of its fields and methods
+ * are static.
  *
  * @author Josh Howson
  */
 public class Store {
 
     /**
-     * ArrayList containing all products in the store. The index of each product
-     * in the array is equal to the product's id.
+     * The store engine behind the desktop app, reading and saving the data
+     * files in the working directory
      */
-    public static ArrayList<Product> productDirectory = new ArrayList<>();
+    public static final StoreEngine engine = new StoreEngine(new File("products.txt"), new File("accounts.txt"));
 
     /**
-     * ArrayList containing all accounts in the store.
+     * The desktop user's session. null when logged out. login() assigns this
+     * value when there is a successful login.
      */
-    public static ArrayList<Account> accountDirectory = new ArrayList<>();
+    private static volatile Session session = null;
 
     /**
-     * Variable that contains the current user's account. null when logged out.
-     * setCurrentAccount() assigns this value when there is a successful login.
+     *
+     * @return the desktop user's session, or null when logged out
      */
-    public static Account currentAccount = null;
+    public static Session getSession() {
+
+        return session;
+    }
 
     /**
-     * Method to create new product. Adds product to the end of the
-     * accountDirectory ArrayList.
      *
-     * @param name the product name
-     * @param price price of the product
-     * @param imageURL the filename of the image stored in /project/images/ eg:
-     * "image1.png"
-     * @param description the description of the item
+     * @return the signed in account, or null when logged out
      */
-    public static void createProduct(String name, double price, String imageURL, String description) {
+    public static Account getCurrentAccount() {
 
-        productDirectory.size();
-        productDirectory.add(new Product(name, price, imageURL, description));
+        return session == null ? null : session.getAccount();
+    }
+
+    /**
+     *
+     * @return the signed in user's cart, or null when logged out
+     */
+    public static Cart getCurrentCart() {
 
+        return session == null ? null : session.getCart();
     }
 
     /**
-     * Method to create a new account. Adds account to the end of the
-     * accountDirectory ArrayList.
+     * Method to create a new account and save it to file.
      *
      * @param username The username to give the account
      * @param password The password to log in to the account with
+     * @throws IllegalArgumentException if the username is already in use
      */
     public static void createAccount(String username, String password) throws IllegalArgumentException {
 
-        //throws exception if there is another account in the array with the same username
-        for (Account i : accountDirectory) {
-            if (i.getUsername().equals(username)) {
-                throw new IllegalArgumentException(
-                        "That username is already in use!");
-            }
-        }
-        //auto-assigns id based on number of accounts in array
-        accountDirectory.add(new Account(username, password));
+        engine.createAccount(username, password);
 
         //save to file after account is created
         saveAccounts();
     }
 
     /**
-     * This method is similar to createAccount, except it is intended to load an
-     * existing account into memory. Skips checking whether or not the username
-     * is taken as it is only run at startup.
-     *
-     * readAccounts() sends lines from the accounts.txt file to this method to
-     * add accounts to the accountDirectory array list.
-     *
-     * @param username The account's username
-     * @param password The account's password
-     * @param balance
-     */
-    public static void loadExistingAccount(String username, String password, double balance) {
-
-        accountDirectory.add(new Account(username, password, balance));
-    }
-
-    /**
-     * Uses a for-each loop to search through the array for the given username,
-     * if found, verifies that it is the correct password. If valid, it changes
-     * the current account.
+     * Signs in to the store. If the username and password are correct, a new
+     * session is started and becomes the current one. The app holds on to
+     * its session, so it is started not to expire and lasts until signOut().
      *
      * @param username
      * @param password
@@ -101,59 +86,33 @@ public class Store {
      */
     public static boolean login(String username, String password) {
 
-        //find account
-        for (Account account : accountDirectory) {
-            //check if username is the one being searched for
-            if (username.equals(account.getUsername())) {
-                //verify password
-                if (password.equals(account.getPassword())) {
-                    //if login credentials match, set working account to this account
-                    setCurrentAccount(account);
-                    //login successful, breakout of loop
-                    return true;
-                }
-            }
+        Session s = engine.login(username, password, false);
+        if (s == null) {
+            return false;
         }
-        return false;
+        session = s;
+        return true;
     }
 
     /**
-     * Sets the current working account
-     *
-     * @param account
+     * Ends the current session and saves the accounts
      */
-    private static void setCurrentAccount(Account account) {
+    public static void signOut() {
 
-        currentAccount = account;
+        if (session != null) {
+            engine.logout(session.getId());
+            session = null;
+        }
+        saveAccounts();
     }
 
     /**
-     * This method will read the Accounts from the file and store the info into
-     * the accountDirectory array by creating multiple account objects.
-     *
-     * ACCOUNT FILE LINES CONTAIN: (USERNAME,PASSWORD,BALANCE)
+     * Reads the accounts from the file, alerting the user if it is missing.
      */
     public static void readAccounts() {
 
-        //csv file containing all records
-        File accountsFile = new File("accounts.txt");
-        String line;
-        String[] data;
-        try (Scanner input = new Scanner(accountsFile)) {
-            while (input.hasNextLine()) {
-                //split up the csv into array 'data'
-                line = input.nextLine();
-                data = line.split(",");
-
-                //assigning these to variables for readability
-                String username = data[0];
-                String password = data[1];
-                double balance = Double.parseDouble(data[2]);
-
-                //adds account to directory
-                loadExistingAccount(username, password, balance);
-
-            }
+        try {
+            engine.loadAccounts();
         } catch (FileNotFoundException ex) {
             System.out.println(ex.toString());
             fileNotFoundAlert("Account info was not read.");
@@ -161,31 +120,16 @@ public class Store {
     }
 
     /**
-     * Reads all lines from the products.txt file and creates the products,
-     * adding them to the productDirectory array list.
-     *
-     * PRODUCT FILE LINES CONTAIN: (NAME,PRICE,IMAGEURL,DESCRIPTION)
+     * Reads the products from the file, alerting the user if it is missing.
+     * Stock levels are read from "stock.txt" too, if there is one.
      */
     public static void readProducts() {
 
-        //csv file containing all records
-        File productsFile = new File("products.txt");
-        String line;
-        String[] data;
-        try (Scanner input = new Scanner(productsFile)) {
-            while (input.hasNextLine()) {
-                //split up the csv into array 'data'
-                line = input.nextLine();
-                data = line.split(",");
-
-                //assigning these to variables for readability
-                String name = data[0];
-                double price = Double.parseDouble(data[1]);
-                String url = data[2];
-                String description = data[3];
-
-                //adds product to the directory
-                createProduct(name, price, url, description);
+        try {
+            engine.loadProducts();
+            File stock = new File("stock.txt");
+            if (stock.exists()) {
+                engine.loadStock(stock);
             }
         } catch (FileNotFoundException ex) {
             System.out.println(ex.toString());
@@ -194,78 +138,163 @@ public class Store {
     }
 
     /**
-     * Writes the entire contents of the accountDirectory array list to the
-     * file. Invokes the account object's toCSV() method to get the formatted
-     * line.
+     * Reads past orders from "orders.txt", if there is one. Call after
+     * readAccounts() and readProducts().
      */
-    public static void saveAccounts() {
+    public static void readOrders() {
 
-        File accountsFile = new File("accounts.txt");
-        try (PrintWriter writer = new PrintWriter(accountsFile)) {
-            for (Account i : accountDirectory) {
-                //Gets the account details arranged in a formatted CSV string
-                //System.out.println(i.toCSV());
-                writer.println(i.toCSV());
-            }
+        File orders = new File("orders.txt");
+        if (!orders.exists()) {
+            return;
+        }
+        try {
+            engine.loadOrders(orders);
         } catch (FileNotFoundException ex) {
+            System.out.println(ex.toString());
+            fileNotFoundAlert("Order history was not read.");
+        }
+    }
+
+    /**
+     * Writes every account to the file, alerting the user if it fails.
+     */
+    public static void saveAccounts() {
+
+        try {
+            engine.saveAccounts();
+        } catch (IOException ex) {
             System.out.println(ex.toString());
             fileNotFoundAlert("Account data was not written.");
         }
     }
 
     /**
-     * This alert occurs multiple times so I introduced a common method to save
-     * space
      *
-     * @param message is the unique error message displayed to the user
+     * @param id the product's id
+     * @return the product with that id
      */
-    private static void fileNotFoundAlert(String message) {
+    public static Product getProduct(int id) {
 
-        Alert fileNotFound = new Alert(Alert.AlertType.ERROR);
-        fileNotFound.setTitle("Error");
-        fileNotFound.setHeaderText("File not found");
-        fileNotFound.setContentText(message);
-        fileNotFound.show();
+        return engine.getProduct(id);
+    }
+
+    /**
+     *
+     * @return every product in the store
+     */
+    public static List<Product> getProducts() {
+
+        return engine.getProducts();
+    }
+
+    /**
+     * Adds one of a product to the current user's cart
+     *
+     * @param p the product to add
+     * @return true if it was added, false if it is out of stock
+     */
+    public static boolean addToCart(Product p) {
+
+        return engine.addToCart(session, p);
+    }
+
+    /**
+     * Sets how many of a product are in the current user's cart
+     *
+     * @param p the product to change
+     * @param quantity the new quantity, zero removes it
+     * @return true if the quantity was set, false if there is not enough stock
+     */
+    public static boolean setQuantity(Product p, int quantity) {
+
+        return engine.setQuantity(session, p, quantity);
+    }
+
+    /**
+     * Buys everything in the current user's cart and saves the new balance
+     *
+     * @return the order placed, or null if there were not enough credits
+     * @throws IllegalStateException if something in the cart has sold out
+     */
+    public static Order checkout() {
+
+        Order o = engine.checkout(session);
+        if (o != null) {
+            saveAccounts();
+        }
+        return o;
     }
 
     /**
-     * This is a "smart" search result function. It searches through the
-     * productDirectory for a product with a title that matches or includes the
-     * query. It is case insensitive.
+     * Buys one product for the current user and saves the new balance
      *
-     * Firstly, it looks to find products that begin with the query. Next, it
-     * looks to find a match in the entire title and finally
+     * @param p the product to buy
+     * @return the order placed, or null if there were not enough credits
+     * @throws IllegalStateException if the product is out of stock
+     */
+    public static Order buyNow(Product p) {
+
+        Order o = engine.buyNow(session, p);
+        if (o != null) {
+            saveAccounts();
+        }
+        return o;
+    }
+
+    /**
+     * Adds credit to the current user's account and saves it
+     *
+     * @param amount the amount to add
+     * @throws IllegalArgumentException if the given amount is a negative value
+     */
+    public static void addCredit(Money amount) throws IllegalArgumentException {
+
+        engine.addCredit(session, amount);
+        saveAccounts();
+    }
+
+    /**
+     * Searches the store for every product matching the query. See
+     * StoreEngine.search() for how results are ordered.
      *
      * @param query the string to search for in the products
      * @return an array list containing all matching products
      */
     public static ArrayList<Product> searchQuery(String query) {
 
-        //all comparisons done in lowercase to make the query case-insensitive
-        query = query.toLowerCase();
-        ArrayList<Product> results = new ArrayList();
+        return engine.search(query);
+    }
 
-        //first check if any items begin with the query
-        for (Product p : productDirectory) {
-            if (p.getName().toLowerCase().startsWith(query)) {
-                results.add(p);
-            }
-        }
+    /**
+     * Gets one page of search results. See StoreEngine.search().
+     *
+     * @param query the string to search for in the products
+     * @param cursor the cursor from the previous page, or null for the first
+     * @param limit the maximum number of results to return
+     * @return the page of results
+     */
+    public static SearchPage searchQuery(String query, String cursor, int limit) {
 
-        //then look in the entire name
-        for (Product p : productDirectory) {
-            if (p.getName().toLowerCase().contains(query) && !results.contains(p)) {
-                results.add(p);
-            }
-        }
-        /*Next, add items that include the query in the description. Only add
-        a matched product if it IS NOT already in the array!
-         */
-        for (Product p : productDirectory) {
-            if (p.getDescription().toLowerCase().contains(query) && !results.contains(p)) {
-                results.add(p);
-            }
+        return engine.search(query, cursor, limit);
+    }
+
+    /**
+     * This alert occurs multiple times so I introduced a common method to save
+     * space
+     *
+     * @param message is the unique error message displayed to the user
+     */
+    private static void fileNotFoundAlert(String message) {
+
+        //alerts can only be shown on the Application Thread
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> fileNotFoundAlert(message));
+            return;
         }
-        return results;
+        Alert fileNotFound = new Alert(Alert.AlertType.ERROR);
+        fileNotFound.setTitle("Error");
+        fileNotFound.setHeaderText("File not found");
+        fileNotFound.setContentText(message);
+        fileNotFound.show();
     }
 }
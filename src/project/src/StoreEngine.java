@@ -0,0 +1,1224 @@
+package project.src;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The store itself, without any user interface. Holds the catalog, the
+ * account directory and every signed in session, and runs searches, cart
+ * changes and checkouts for any number of sessions at once. All of its methods
+ * are thread-safe.
+ *
+ * Nothing here uses JavaFX, so the engine can run on a server or under a load
+ * test. The desktop app is just one client of it (see Store). Errors are
+ * reported with exceptions and return values, and it is up to the client to
+ * show them to the user.
+ *
+ * @author Josh Howson
+ */
+public class StoreEngine {
+
+    /**
+     * The number of passes search() makes over the catalog
+     */
+    private static final int SEARCH_PASSES = 3;
+
+    /**
+     * File the catalog is read from. LINES CONTAIN: (NAME,PRICE,IMAGEURL,DESCRIPTION)
+     */
+    private final File productsFile;
+
+    /**
+     * File accounts are read from and saved to. LINES CONTAIN:
+     * (USERNAME,PASSWORD,BALANCE)
+     */
+    private final File accountsFile;
+
+    /**
+     * Every product in the store, indexed by id. A catalog is never changed
+     * once published; a new one replaces it instead, so readers never need a
+     * lock.
+     */
+    private volatile Catalog catalog = Catalog.EMPTY;
+
+    /**
+     * Every account in the store, by username
+     */
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Every signed in session, by session id
+     */
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps track of which products are bought together. Fed every order that
+     * is placed.
+     */
+    private final Recommender recommender = new Recommender(this);
+
+    /**
+     * Running totals of units sold and revenue, per product and per day. Fed
+     * every order that is placed.
+     */
+    private final SalesAggregator sales = new SalesAggregator(this);
+
+    /**
+     * Stock levels, and the units reserved for each session's cart
+     */
+    private final Inventory inventory = new Inventory();
+
+    /**
+     * The most searched queries, and those that found nothing, over the last
+     * hour
+     */
+    private final SearchAnalytics searchAnalytics = new SearchAnalytics();
+
+    /**
+     * Counters and latencies of this store's operations, for JMX
+     */
+    private final StoreMetrics metrics = new StoreMetrics(this);
+
+    /**
+     * Autocomplete for the current catalog. Rebuilt in the background when
+     * the catalog changes, and every SUGGESTION_REFRESH_MILLIS if the
+     * products' popularity has changed.
+     */
+    private volatile SuggestionIndex suggestions = SuggestionIndex.EMPTY;
+
+    /**
+     * The recommender's popularity version the suggestions were built from.
+     * Guarded by suggestionsLock.
+     */
+    private long suggestionsVersion = -1;
+
+    /**
+     * Held while rebuilding the suggestions. Not the engine's own lock, so a
+     * rebuild never holds up a save.
+     */
+    private final Object suggestionsLock = new Object();
+
+    /**
+     * How often the suggestions are re-ranked by popularity
+     */
+    private static final long SUGGESTION_REFRESH_MILLIS = 60_000;
+
+    /**
+     * How long after the catalog changes the suggestions are rebuilt, so that
+     * a burst of changes (eg: the batches of an import) rebuilds them once
+     */
+    private static final long SUGGESTION_DELAY_MILLIS = 1000;
+
+    /**
+     * Set while a rebuild for a catalog change is waiting to run
+     */
+    private final AtomicBoolean suggestionsScheduled = new AtomicBoolean();
+
+    /**
+     * How long a session can go unused before it is ended, so clients that
+     * never sign out do not keep their sessions and carts forever
+     */
+    public static final long SESSION_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+    /**
+     * Background upkeep: ends idle sessions, releases cart reservations that
+     * have timed out and rebuilds the suggestions
+     */
+    private final Timer maintenance = new Timer("store-maintenance", true);
+
+    /**
+     * Constructor for the engine. Nothing is read until loadProducts() and
+     * loadAccounts() are called.
+     *
+     * @param productsFile the file to read the catalog from
+     * @param accountsFile the file to read and save accounts to
+     */
+    public StoreEngine(File productsFile, File accountsFile) {
+
+        this.productsFile = productsFile;
+        this.accountsFile = accountsFile;
+        maintenance.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                expireSessions(System.currentTimeMillis());
+                inventory.expireReservations();
+            }
+        }, 60_000, 60_000);
+        maintenance.schedule(suggestionsTask(), SUGGESTION_REFRESH_MILLIS, SUGGESTION_REFRESH_MILLIS);
+    }
+
+    /**
+     * Reads all lines from the products file and replaces the catalog with
+     * them.
+     *
+     * @throws FileNotFoundException if the products file does not exist
+     */
+    public synchronized void loadProducts() throws FileNotFoundException {
+
+        long start = System.nanoTime();
+        catalog = new Catalog(readProductsFile());
+        metrics.recordProductsLoad(start, productsFile.length());
+        scheduleSuggestions();
+    }
+
+    /**
+     * Reads the products file again and publishes a new catalog with the
+     * changes, without a restart. A product's id is its line number, so each
+     * line is compared with the product that has the same id: products whose
+     * price, image or description changed are replaced, lines past the end of
+     * the catalog are added and everything else is kept as it is, along with
+     * its search index.
+     *
+     * Searches and pages that are already running keep using the old catalog.
+     * Carts are moved to any new prices.
+     *
+     * Only those two kinds of change are taken. Carts, orders, sales and stock
+     * refer to products by id, so a line inserted, removed or moved would
+     * leave every product after it with another product's id. The file is
+     * refused if a line has a different name than the product with its id,
+     * or if it has fewer lines than the catalog; those changes need a
+     * restart.
+     *
+     * @return the number of products changed or added, zero if the file has
+     * no changes (the catalog is then left as it is)
+     * @throws FileNotFoundException if the products file does not exist
+     * @throws IllegalArgumentException if a line of the file is invalid, or
+     * the file changes anything but prices, images and descriptions or adds
+     * anything but new lines on the end (the catalog is left as it is)
+     */
+    public synchronized int reloadProducts() throws FileNotFoundException {
+
+        long start = System.nanoTime();
+        Catalog old = catalog;
+        Product[] read = readProductsFile();
+        if (read.length < old.size()) {
+            throw new IllegalArgumentException(productsFile + " has " + read.length + " products but the store has "
+                    + old.size() + ": products cannot be removed without a restart");
+        }
+        for (int id = 0; id < old.size(); id++) {
+            if (!read[id].getName().equals(old.get(id).getName())) {
+                throw new IllegalArgumentException("Line " + (id + 1) + " of " + productsFile + " is \""
+                        + read[id].getName() + "\", was \"" + old.get(id).getName()
+                        + "\": products cannot be inserted, removed, moved or renamed without a restart");
+            }
+        }
+
+        Product[] updated = new Product[read.length];
+        BitSet changed = new BitSet();
+        boolean priceChanged = false;
+        for (int id = 0; id < updated.length; id++) {
+            Product before = id < old.size() ? old.get(id) : null;
+            Product after = read[id];
+            if (before != null && sameProduct(before, after)) {
+                updated[id] = before;
+            } else {
+                updated[id] = after;
+                if (before != null) {
+                    changed.set(id);
+                    priceChanged |= !before.getPrice().equals(after.getPrice());
+                }
+            }
+        }
+        int added = updated.length - old.size();
+        if (changed.isEmpty() && added == 0) {
+            return 0;
+        }
+
+        Catalog next = new Catalog(old, updated, changed);
+        catalog = next;
+        if (priceChanged) {
+            for (Session s : sessions.values()) {
+                synchronized (s) {
+                    s.getCart().reprice(next);
+                }
+            }
+        }
+        metrics.recordProductsLoad(start, productsFile.length());
+        scheduleSuggestions();
+        System.out.println("Reloaded products: " + changed.cardinality() + " changed, " + added + " added");
+        return changed.cardinality() + added;
+    }
+
+    /**
+     * Reads every line of the products file
+     *
+     * @return the products, each with its line number as its id
+     * @throws FileNotFoundException if the products file does not exist
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    private Product[] readProductsFile() throws FileNotFoundException {
+
+        ArrayList<Product> loaded = new ArrayList<>();
+        //products with the same name share one String, for this load
+        HashMap<String, String> names = new HashMap<>();
+        try (Scanner input = new Scanner(productsFile, "UTF-8")) {
+            while (input.hasNextLine()) {
+                //the new product's id is the index it is added at
+                loaded.add(parseProduct(loaded.size(), input.nextLine(), productsFile, names));
+            }
+        }
+        return loaded.toArray(new Product[0]);
+    }
+
+    /**
+     * Reads a line of the products file. LINES CONTAIN:
+     * (NAME,PRICE,IMAGEURL,DESCRIPTION). The description is everything after
+     * the third comma, so it may contain commas itself.
+     *
+     * @param id the product's id, its line number counting from 0
+     * @param line the line
+     * @param source where the line came from, for the error message
+     * @param names names already read, each mapped to itself, so that
+     * products with the same name share one String. May be null.
+     * @return the product
+     * @throws IllegalArgumentException if the line is invalid
+     */
+    private static Product parseProduct(int id, String line, Object source, Map<String, String> names) {
+
+        //split up the csv into array 'data'
+        String[] data = line.split(",", 4);
+        if (data.length < 4) {
+            throw new IllegalArgumentException("Line " + (id + 1) + " of " + source + " does not have 4 fields");
+        }
+
+        //assigning these to variables for readability
+        String name = data[0];
+        if (names != null) {
+            String shared = names.putIfAbsent(name, name);
+            name = shared == null ? name : shared;
+        }
+        Money price = Money.parse(data[1]);
+        String url = data[2];
+        String description = data[3];
+
+        return new Product(id, name, price, url, description);
+    }
+
+    /**
+     *
+     * @return true if two products have the same name, price, image and
+     * description
+     */
+    private static boolean sameProduct(Product a, Product b) {
+
+        return a.getName().equals(b.getName()) && a.getPrice().equals(b.getPrice())
+                && a.getImageURL().equals(b.getImageURL())
+                //the same text always encodes to the same bytes
+                && Arrays.equals(a.getEncodedDescription(), b.getEncodedDescription());
+    }
+
+    /**
+     * Reads stock levels from a file and sets them in the inventory. Products
+     * that are not in the file never run out. Lines that are not a valid
+     * stock level are skipped and counted. LINES CONTAIN: (PRODUCT ID,UNITS)
+     *
+     * @param stockFile the file to read
+     * @throws FileNotFoundException if the file does not exist
+     */
+    public void loadStock(File stockFile) throws FileNotFoundException {
+
+        int skipped = 0;
+        String line;
+        String[] data;
+        try (Scanner input = new Scanner(stockFile, "UTF-8")) {
+            while (input.hasNextLine()) {
+                //split up the csv into array 'data'
+                line = input.nextLine();
+                data = line.split(",");
+                if (data.length != 2) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    inventory.setStock(Integer.parseInt(data[0].trim()), Long.parseLong(data[1].trim()));
+                } catch (IllegalArgumentException ex) {
+                    //not a number (NumberFormatException) or negative stock
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " invalid lines in " + stockFile);
+        }
+    }
+
+    /**
+     * Reads the accounts from the accounts file and adds them to the account
+     * directory. Lines that are not a valid account are skipped and counted,
+     * so one damaged line does not stop the store from starting.
+     * LINES CONTAIN: (USERNAME,PASSWORD,BALANCE)
+     *
+     * @throws FileNotFoundException if the accounts file does not exist
+     */
+    public void loadAccounts() throws FileNotFoundException {
+
+        long start = System.nanoTime();
+        int skipped = 0;
+        String line;
+        String[] data;
+        try (Scanner input = new Scanner(accountsFile, "UTF-8")) {
+            while (input.hasNextLine()) {
+                //split up the csv into array 'data'
+                line = input.nextLine();
+                data = line.split(",");
+                if (data.length != 3 || data[0].isEmpty() || data[1].isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+
+                //assigning these to variables for readability
+                String username = data[0];
+                String password = data[1];
+                try {
+                    //adds account to directory
+                    accounts.put(username, new Account(username, password, Money.parse(data[2])));
+                } catch (IllegalArgumentException ex) {
+                    //a bad balance (NumberFormatException) or a control character
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " invalid lines in " + accountsFile);
+        }
+        metrics.readAccounts.record(start, true, accountsFile.length());
+    }
+
+    /**
+     * Reads past orders from a file, adds each to its account's order history
+     * and feeds them to the recommender and the sales totals. Load the
+     * accounts first; orders for unknown accounts or products are skipped.
+     * LINES CONTAIN: (USERNAME,TIMESTAMP,TOTAL,PRODUCT ID:QUANTITY;PRODUCT ID:QUANTITY...)
+     *
+     * @param ordersFile the file to read
+     * @return the number of orders loaded
+     * @throws FileNotFoundException if the file does not exist
+     */
+    public int loadOrders(File ordersFile) throws FileNotFoundException {
+
+        int loaded = 0;
+        int skipped = 0;
+        int productCount = catalog.size();
+        String line;
+        String[] data;
+        try (Scanner input = new Scanner(ordersFile, "UTF-8")) {
+            while (input.hasNextLine()) {
+                //split up the csv into array 'data'
+                line = input.nextLine();
+                data = line.split(",");
+
+                Account account = accounts.get(data[0]);
+                String[] lines = data[3].split(";");
+                int[] ids = new int[lines.length];
+                int[] quantities = new int[lines.length];
+                boolean valid = account != null;
+                for (int i = 0; i < lines.length && valid; i++) {
+                    int colon = lines[i].indexOf(':');
+                    ids[i] = Integer.parseInt(lines[i].substring(0, colon));
+                    quantities[i] = Integer.parseInt(lines[i].substring(colon + 1));
+                    valid = ids[i] >= 0 && ids[i] < productCount;
+                }
+                if (!valid) {
+                    skipped++;
+                    continue;
+                }
+
+                Order o = new Order(ids, quantities, Money.parse(data[2]), Long.parseLong(data[1]));
+                account.addOrder(o);
+                recommender.recordOrder(account, o);
+                sales.recordOrder(o);
+                loaded++;
+            }
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " orders for unknown accounts or products");
+        }
+        return loaded;
+    }
+
+    /**
+     * Writes every account to the accounts file. Invokes the account object's
+     * toCSV() method to get the formatted line. Synchronized so that saves
+     * made at the same time do not write over each other.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void saveAccounts() throws IOException {
+
+        long start = System.nanoTime();
+        SaveAccountsEvent event = FlightEvents.AVAILABLE ? new SaveAccountsEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int written = 0;
+        try (PrintWriter writer = new PrintWriter(accountsFile, "UTF-8")) {
+            for (Account a : accounts.values()) {
+                writer.println(a.toCSV());
+                written++;
+            }
+        } catch (UnsupportedEncodingException ex) {
+            //UTF-8 is always supported
+            throw new IllegalStateException(ex);
+        }
+        long bytes = accountsFile.length();
+        metrics.recordSave(start, bytes);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.accounts = written;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds a product to the end of the catalog. Copies the catalog, so this is
+     * meant for occasional additions, not for loading.
+     *
+     * @param name the product name
+     * @param price price of the product
+     * @param imageURL the filename of the image, eg: "image1.png"
+     * @param description the description of the item
+     * @return the new product
+     */
+    public synchronized Product createProduct(String name, Money price, String imageURL, String description) {
+
+        Product p = new Product(catalog.size(), name, price, imageURL, description);
+        catalog = catalog.plus(p);
+        scheduleSuggestions();
+        return p;
+    }
+
+    /**
+     * Adds products to the end of the catalog and of the products file, all
+     * in one go. This is how CatalogImporter applies each batch of a feed.
+     * The file is written first, so if that fails the catalog is left as it
+     * is.
+     *
+     * The products' ids carry on from the end of the catalog, so the catalog
+     * must match the file (products added with createProduct() are not in
+     * the file).
+     *
+     * @param lines the products, as lines of the products file
+     * (NAME,PRICE,IMAGEURL,DESCRIPTION)
+     * @return the new products
+     * @throws IOException if the products file could not be written
+     * @throws IllegalArgumentException if a line is invalid (nothing is added)
+     */
+    public synchronized List<Product> appendProducts(List<String> lines) throws IOException {
+
+        Catalog old = catalog;
+        Product[] added = new Product[lines.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = parseProduct(old.size() + i, lines.get(i), "the new products", null);
+        }
+        if (added.length == 0) {
+            return Collections.emptyList();
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(productsFile, "rw")) {
+            StringBuilder sb = new StringBuilder(lines.size() * 512);
+            //finish the last line if the file does not end with one
+            if (file.length() > 0) {
+                file.seek(file.length() - 1);
+                if (file.read() != '\n') {
+                    sb.append(System.lineSeparator());
+                }
+            }
+            for (String line : lines) {
+                sb.append(line).append(System.lineSeparator());
+            }
+            file.seek(file.length());
+            file.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        catalog = old.plus(added);
+        scheduleSuggestions();
+        return Collections.unmodifiableList(Arrays.asList(added));
+    }
+
+    /**
+     * Creates a new account. Call saveAccounts() to write it to the file.
+     *
+     * @param username The username to give the account
+     * @param password The password to log in to the account with
+     * @return the new account
+     * @throws IllegalArgumentException if the username is already in use
+     */
+    public Account createAccount(String username, String password) throws IllegalArgumentException {
+
+        Account account = new Account(username, password);
+        //putIfAbsent makes sure two signups can't both take the same name
+        if (accounts.putIfAbsent(username, account) != null) {
+            throw new IllegalArgumentException("That username is already in use!");
+        }
+        return account;
+    }
+
+    /**
+     * Checks a username and password and, if they are correct, starts a new
+     * session for the account. The session is ended if it goes unused for
+     * SESSION_TIMEOUT_MILLIS.
+     *
+     * @param username the username entered
+     * @param password the password entered
+     * @return the new session, or null if the login failed
+     */
+    public Session login(String username, String password) {
+
+        return login(username, password, true);
+    }
+
+    /**
+     * Checks a username and password and, if they are correct, starts a new
+     * session for the account.
+     *
+     * @param username the username entered
+     * @param password the password entered
+     * @param expires false for a session that lasts until logout() however
+     * long it goes unused, eg: the desktop app's, which is held by the app
+     * rather than looked up by id
+     * @return the new session, or null if the login failed
+     */
+    public Session login(String username, String password, boolean expires) {
+
+        long start = System.nanoTime();
+        Account account = accounts.get(username);
+        if (account == null || !password.equals(account.getPassword())) {
+            metrics.login.record(start, false, 0);
+            return null;
+        }
+
+        Session session = new Session(UUID.randomUUID().toString(), account, expires);
+        sessions.put(session.getId(), session);
+        metrics.login.record(start, true, 1);
+        return session;
+    }
+
+    /**
+     * Ends a session. Its cart is thrown away and the units reserved for it
+     * go back into stock.
+     *
+     * @param sessionId the id of the session to end
+     */
+    public void logout(String sessionId) {
+
+        sessions.remove(sessionId);
+        inventory.releaseAll(sessionId);
+    }
+
+    /**
+     * Ends every session that has not been used for SESSION_TIMEOUT_MILLIS,
+     * as logout() would, apart from sessions started not to expire. Called periodically by the maintenance timer.
+     *
+     * @param now the current time, in epoch milliseconds
+     * @return the number of sessions ended
+     */
+    int expireSessions(long now) {
+
+        int expired = 0;
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (session.expires() && now - session.getLastAccess() > SESSION_TIMEOUT_MILLIS) {
+                it.remove();
+                inventory.releaseAll(session.getId());
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Looks up a session and marks it as used
+     *
+     * @param sessionId the session's id
+     * @return the session, or null if there is no such session
+     */
+    public Session getSession(String sessionId) {
+
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    /**
+     *
+     * @return the number of signed in sessions
+     */
+    public int getSessionCount() {
+
+        return sessions.size();
+    }
+
+    /**
+     *
+     * @return read-only view of every product, in id order
+     */
+    public List<Product> getProducts() {
+
+        return catalog.asList();
+    }
+
+    /**
+     * Looks up a product by its id
+     *
+     * @param id the product's id
+     * @return the product
+     * @throws IndexOutOfBoundsException if there is no product with that id
+     */
+    public Product getProduct(int id) {
+
+        return catalog.get(id);
+    }
+
+    /**
+     *
+     * @return read-only view of every account
+     */
+    public Collection<Account> getAccounts() {
+
+        return Collections.unmodifiableCollection(accounts.values());
+    }
+
+    /**
+     *
+     * @return the recommendation engine fed by this store's orders
+     */
+    public Recommender getRecommender() {
+
+        return recommender;
+    }
+
+    /**
+     *
+     * @return the sales totals fed by this store's orders
+     */
+    public SalesAggregator getSales() {
+
+        return sales;
+    }
+
+    /**
+     *
+     * @return the store's stock levels and reservations
+     */
+    public Inventory getInventory() {
+
+        return inventory;
+    }
+
+    /**
+     *
+     * @return the store's operation counters and latencies
+     */
+    public StoreMetrics getMetrics() {
+
+        return metrics;
+    }
+
+    /**
+     * Products handed in by clients may come from an older catalog, so cart
+     * changes and purchases use the current version of the product instead
+     *
+     * @param p a product from any catalog
+     * @return the product with the same id in the current catalog
+     */
+    private Product current(Product p) {
+
+        return catalog.get(p.getId());
+    }
+
+    /**
+     *
+     * @return what has been searched for recently
+     */
+    public SearchAnalytics getSearchAnalytics() {
+
+        return searchAnalytics;
+    }
+
+    /**
+     *
+     * @return the file the catalog is read from
+     */
+    public File getProductsFile() {
+
+        return productsFile;
+    }
+
+    /**
+     * Adds one of a product to a session's cart, reserving the unit so it
+     * cannot be sold to anyone else
+     *
+     * @param session the session whose cart is changed
+     * @param p the product to add
+     * @return true if it was added, false if the product is out of stock
+     */
+    public boolean addToCart(Session session, Product p) {
+
+        long start = System.nanoTime();
+        p = current(p);
+        boolean added = false;
+        synchronized (session) {
+            session.touch();
+            Cart c = session.getCart();
+            if (inventory.reserve(session.getId(), p.getId(), c.getQuantity(p) + 1)) {
+                c.addToCart(p);
+                added = true;
+            }
+        }
+        metrics.cart.record(start, added, 1);
+        return added;
+    }
+
+    /**
+     * Removes one of a product from a session's cart
+     *
+     * @param session the session whose cart is changed
+     * @param p the product to remove
+     */
+    public void removeFromCart(Session session, Product p) {
+
+        long start = System.nanoTime();
+        p = current(p);
+        synchronized (session) {
+            session.touch();
+            Cart c = session.getCart();
+            c.removeFromCart(p);
+            inventory.reserve(session.getId(), p.getId(), c.getQuantity(p));
+        }
+        metrics.cart.record(start, true, 1);
+    }
+
+    /**
+     * Sets how many of a product are in a session's cart, reserving or
+     * releasing units to match. Zero removes it.
+     *
+     * @param session the session whose cart is changed
+     * @param p the product to change
+     * @param quantity the new quantity
+     * @return true if the quantity was set, false if there is not enough stock
+     * (the cart is left as it was)
+     * @throws IllegalArgumentException if the quantity is negative
+     */
+    public boolean setQuantity(Session session, Product p, int quantity) throws IllegalArgumentException {
+
+        long start = System.nanoTime();
+        p = current(p);
+        boolean set = false;
+        synchronized (session) {
+            session.touch();
+            if (inventory.reserve(session.getId(), p.getId(), quantity)) {
+                session.getCart().setQuantity(p, quantity);
+                set = true;
+            }
+        }
+        metrics.cart.record(start, set, 1);
+        return set;
+    }
+
+    /**
+     * Buys everything in a session's cart, plus shipping, and empties the
+     * cart. Call saveAccounts() afterwards to write the new balance to file.
+     *
+     * The cart's reservations are committed once it is paid for. Any that
+     * have timed out are reserved again first.
+     *
+     * @param session the session checking out
+     * @return the order that was placed, or null if the account did not have
+     * enough credits
+     * @throws IllegalStateException if a product in the cart has sold out
+     * since its reservation timed out
+     */
+    public Order checkout(Session session) {
+
+        long start = System.nanoTime();
+        PurchaseEvent event = FlightEvents.AVAILABLE ? new PurchaseEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Order order;
+        int items;
+        synchronized (session) {
+            Cart c = session.getCart();
+            items = c.getItemCount();
+            for (Map.Entry<Integer, Integer> line : c.getLineItems().entrySet()) {
+                if (!inventory.reserve(session.getId(), line.getKey(), line.getValue())) {
+                    recordPurchase(start, event, false, items, null, "out of stock");
+                    throw new IllegalStateException(getProduct(line.getKey()).getName() + " is out of stock");
+                }
+            }
+            //charge the current prices, even if the catalog was reloaded
+            //after something was added
+            c.reprice(catalog);
+            order = CheckoutEngine.checkout(session.getAccount(), c);
+            if (order != null) {
+                inventory.commit(session.getId());
+            }
+        }
+        if (order != null) {
+            recommender.recordOrder(session.getAccount(), order);
+            sales.recordOrder(order);
+        }
+        recordPurchase(start, event, false, items, order, order == null ? "not enough credits" : null);
+        return order;
+    }
+
+    /**
+     * Buys a single product straight away. Call saveAccounts() afterwards to
+     * write the new balance to file.
+     *
+     * @param session the session buying the product
+     * @param p the product being bought
+     * @return the order that was placed, or null if the account did not have
+     * enough credits
+     * @throws IllegalStateException if the product is out of stock
+     */
+    public Order buyNow(Session session, Product p) {
+
+        long start = System.nanoTime();
+        PurchaseEvent event = FlightEvents.AVAILABLE ? new PurchaseEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        p = current(p);
+        if (!inventory.take(p.getId(), 1)) {
+            recordPurchase(start, event, true, 1, null, "out of stock");
+            throw new IllegalStateException(p.getName() + " is out of stock");
+        }
+        Order order = CheckoutEngine.buyNow(session.getAccount(), p);
+        if (order == null) {
+            inventory.putBack(p.getId(), 1);
+        } else {
+            recommender.recordOrder(session.getAccount(), order);
+            sales.recordOrder(order);
+        }
+        recordPurchase(start, event, true, 1, order, order == null ? "not enough credits" : null);
+        return order;
+    }
+
+    /**
+     * Records a purchase in the metrics and, if it is enabled, commits its
+     * Flight Recorder event
+     *
+     * @param start when the purchase started, from System.nanoTime()
+     * @param event the purchase's event, already begun, or null without
+     * Flight Recorder
+     * @param buyNow true for "Buy It Now", false for a checkout
+     * @param items the number of items being bought
+     * @param order the order placed, or null if it failed
+     * @param failure why it failed, or null
+     */
+    private void recordPurchase(long start, PurchaseEvent event, boolean buyNow, int items, Order order,
+            String failure) {
+
+        metrics.purchase.record(start, order != null, order == null ? 0 : items);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.buyNow = buyNow;
+            event.itemCount = items;
+            event.amountCents = order == null ? 0 : order.getTotal().getCents();
+            event.succeeded = order != null;
+            event.failure = failure;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds credit to the session's account. Call saveAccounts() afterwards to
+     * write the new balance to file.
+     *
+     * @param session the session adding credit
+     * @param amount the amount to add
+     * @throws IllegalArgumentException if the given amount is a negative value
+     */
+    public void addCredit(Session session, Money amount) throws IllegalArgumentException {
+
+        long start = System.nanoTime();
+        CheckoutEngine.addCredit(session.getAccount(), amount);
+        metrics.credit.record(start, true, amount.getCents());
+    }
+
+    /**
+     * Suggests products for what has been typed into a search field so far,
+     * most popular first (see SuggestionIndex). Takes microseconds, so it can
+     * run on every keystroke. Products added or changed in the last moment
+     * may not be suggested until the index is rebuilt in the background.
+     *
+     * @param text the text typed so far
+     * @param limit the maximum number of products to return
+     * @return up to limit products whose name has a word starting with the
+     * last word typed and contains the words before it
+     */
+    public List<Product> suggest(String text, int limit) {
+
+        long start = System.nanoTime();
+        List<Product> results = suggestions.suggest(text, limit);
+        metrics.suggest.record(start, true, results.size());
+        return results;
+    }
+
+    /**
+     * Counts a view of a product's listing towards its popularity, which
+     * ranks suggestions
+     *
+     * @param p the product viewed
+     */
+    public void recordView(Product p) {
+
+        recommender.recordView(p);
+    }
+
+    /**
+     * Rebuilds the suggestions now if the catalog or the popularity of its
+     * products has changed since they were last built. Called in the
+     * background, but may be called directly to have suggestions straight
+     * after loading.
+     */
+    public void refreshSuggestions() {
+
+        synchronized (suggestionsLock) {
+            Catalog current = catalog;
+            long version = recommender.getPopularityVersion();
+            if (suggestions.getCatalog() == current && suggestionsVersion == version) {
+                return;
+            }
+            suggestions = new SuggestionIndex(current, recommender.getPopularity(current.size()));
+            suggestionsVersion = version;
+        }
+    }
+
+    /**
+     * Rebuilds the suggestions in the background, shortly after the catalog
+     * has changed. Does nothing if a rebuild is already waiting, since it
+     * will pick up this change too.
+     */
+    private void scheduleSuggestions() {
+
+        if (suggestionsScheduled.compareAndSet(false, true)) {
+            maintenance.schedule(suggestionsTask(), SUGGESTION_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     *
+     * @return a task that runs refreshSuggestions() on the maintenance timer
+     */
+    private TimerTask suggestionsTask() {
+
+        return new TimerTask() {
+            @Override
+            public void run() {
+                suggestionsScheduled.set(false);
+                try {
+                    refreshSuggestions();
+                } catch (RuntimeException ex) {
+                    //keep the old suggestions, and the timer running
+                    System.out.println("Suggestions not rebuilt: " + ex.toString());
+                }
+            }
+        };
+    }
+
+    /**
+     * This is a "smart" search result function. It searches through the
+     * catalog for a product with a title that matches or includes the query.
+     * It is case insensitive.
+     *
+     * Firstly, it looks to find products that begin with the query. Next, it
+     * looks to find a match in the entire title and finally in the description.
+     *
+     * Returns every match at once. Pages that only show a screenful of results
+     * should use the paginated search(query, cursor, limit) instead.
+     *
+     * @param query the string to search for in the products
+     * @return an array list containing all matching products
+     */
+    public ArrayList<Product> search(String query) {
+
+        return search(query, null, Integer.MAX_VALUE).getResults();
+    }
+
+    /**
+     * Paginated version of the search. Returns at most limit results, in the
+     * same order as search(query), starting from where the page that gave out
+     * the cursor stopped. Only scans as much of the catalog as it needs to
+     * fill the page.
+     *
+     * The search is done in three passes over the catalog (name starts with
+     * the query, name contains the query, description contains the query).
+     * Each pass skips products that an earlier pass already matched, so no
+     * list of previous results is needed to avoid duplicates and the cursor
+     * only has to remember how far the scan got: the pass and the product id.
+     * Products added to the catalog between pages are found by the passes
+     * that have not finished yet. Names and descriptions are compared in the
+     * catalog's lowercase copies.
+     *
+     * @param query the string to search for in the products
+     * @param cursor the cursor from the previous page, or null for the first
+     * page
+     * @param limit the maximum number of results to return
+     * @return the page of results, next cursor and estimated total
+     * @throws IllegalArgumentException if the cursor is not one given out by
+     * this method, or limit is less than 1
+     */
+    public SearchPage search(String query, String cursor, int limit) {
+
+        if (limit < 1) {
+            //a page of nothing would hand back the same cursor forever
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        long start = System.nanoTime();
+        SearchEvent event = FlightEvents.AVAILABLE ? new SearchEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        SearchPage page = scan(query, cursor, limit);
+        metrics.search.record(start, true, page.getResults().size());
+        if (cursor == null) {
+            //count each search once, not once for every page loaded. An
+            //empty first page means the query found nothing
+            searchAnalytics.record(query, page.getResults().size());
+        }
+        if (event == null) {
+            return page;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.queryLength = query.length();
+            event.resultCount = page.getResults().size();
+            event.estimatedTotal = page.getEstimatedTotal();
+            event.firstPage = cursor == null;
+            event.commit();
+        }
+        return page;
+    }
+
+    /**
+     * Runs the scan for search(query, cursor, limit)
+     *
+     * @param query the string to search for in the products
+     * @param cursor the cursor from the previous page, or null for the first
+     * @param limit the maximum number of results to return
+     * @return the page of results
+     */
+    private SearchPage scan(String query, String cursor, int limit) {
+
+        //the whole search reads the same catalog, even if a new one is loaded
+        Catalog catalog = this.catalog;
+
+        //all comparisons done in lowercase to make the query case-insensitive
+        query = query.toLowerCase();
+        //made after reading the catalog, so it knows every word in it
+        TextDictionary.Matcher inDescription = TextDictionary.DESCRIPTIONS.matcher(query);
+        int size = catalog.size();
+
+        //where the previous page stopped (the pass, and the id in that pass)
+        //and how many matches it had found. The pass and id are kept apart
+        //so a cursor still points at the same place after products are
+        //added to the end of the catalog
+        int pass = 0;
+        int id = 0;
+        int matched = 0;
+        if (cursor != null) {
+            try {
+                String[] data = cursor.split("\\.");
+                if (data.length != 3) {
+                    throw new NumberFormatException();
+                }
+                pass = Integer.parseInt(data[0], 36);
+                id = Integer.parseInt(data[1], 36);
+                matched = Integer.parseInt(data[2], 36);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+            }
+            if (pass < 0 || pass >= SEARCH_PASSES || id < 0 || id > size || matched < 0) {
+                throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+            }
+        }
+
+        //ids whose name contains the query, found by the name passes. Once
+        //this page has scanned the whole second pass, the description pass
+        //can skip them by id instead of searching their names again
+        BitSet inName = new BitSet(size);
+        boolean inNameComplete = pass == 0 || (pass == 1 && id == 0);
+
+        ArrayList<Product> results = new ArrayList<>(Math.min(limit, size));
+        while (pass < SEARCH_PASSES && results.size() < limit) {
+            if (id == size) {
+                pass++;
+                id = 0;
+                continue;
+            }
+            boolean match;
+            if (pass < 2) {
+                String name = catalog.getLowerName(id);
+                boolean startsWith = name.startsWith(query);
+                //only the second pass looks at every name, so only it fills
+                //inName
+                if (pass == 1 && (startsWith || name.contains(query))) {
+                    inName.set(id);
+                }
+                match = pass == 0 ? startsWith : !startsWith && inName.get(id);
+            } else if (inNameComplete) {
+                match = !inName.get(id) && inDescription.contains(catalog.get(id).getEncodedDescription());
+            } else {
+                match = !catalog.getLowerName(id).contains(query)
+                        && inDescription.contains(catalog.get(id).getEncodedDescription());
+            }
+            if (match) {
+                results.add(catalog.get(id));
+            }
+            id++;
+        }
+        matched += results.size();
+        //a page that filled up on the last product of the last pass is the end
+        if (pass == SEARCH_PASSES - 1 && id == size) {
+            pass = SEARCH_PASSES;
+        }
+
+        if (pass == SEARCH_PASSES) {
+            //whole catalog scanned, so the total is exact
+            return new SearchPage(results, null, matched);
+        }
+
+        //assume the rest of the scan matches at the same rate as so far
+        long scanned = (long) pass * size + id;
+        long end = (long) SEARCH_PASSES * size;
+        int estimate = matched;
+        if (scanned > 0) {
+            estimate += (int) Math.min(Integer.MAX_VALUE - matched, matched * (end - scanned) / scanned);
+        }
+        String nextCursor = Integer.toString(pass, 36) + "." + Integer.toString(id, 36)
+                + "." + Integer.toString(matched, 36);
+        return new SearchPage(results, nextCursor, estimate);
+    }
+}
@@ -0,0 +1,357 @@
+package project.src;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics for a StoreEngine: a set of OperationStats for the
+ * operations the engine runs, plus the sizes of its catalog, account
+ * directory and recommendation lists. The engine records into it as it
+ * works.
+ *
+ * register() publishes everything to the platform MBean server, so it can be
+ * watched with JConsole or VisualVM under "project.src". The store itself is
+ * "project.src:type=Store,name=NAME", and each operation is
+ * "project.src:type=StoreOperation,store=NAME,name=OPERATION".
+ *
+ * @author Josh Howson
+ */
+public class StoreMetrics implements StoreMetricsMBean {
+
+    /**
+     * The number of queries listed by getTopSearches() and
+     * getTopZeroResultSearches()
+     */
+    private static final int TOP_SEARCHES = 10;
+
+    /**
+     * The number of products listed by getTopSellers()
+     */
+    private static final int TOP_SELLERS = 10;
+
+    /**
+     * Login attempts. Failures are wrong usernames or passwords.
+     */
+    final OperationStats login = new OperationStats("sessions started");
+
+    /**
+     * Pages of search results. Items are results returned.
+     */
+    final OperationStats search = new OperationStats("results returned");
+
+    /**
+     * Autocomplete lookups. Items are suggestions returned.
+     */
+    final OperationStats suggest = new OperationStats("suggestions returned");
+
+    /**
+     * Cart adds, removes and quantity changes. Failures are out of stock.
+     */
+    final OperationStats cart = new OperationStats("cart changes");
+
+    /**
+     * Checkouts and "Buy It Now" purchases. Failures are declined purchases;
+     * items are units bought.
+     */
+    final OperationStats purchase = new OperationStats("units bought");
+
+    /**
+     * Credit additions. Items are cents added.
+     */
+    final OperationStats credit = new OperationStats("cents added");
+
+    /**
+     * Accounts file saves. Items are bytes written.
+     */
+    final OperationStats saveAccounts = new OperationStats("bytes written");
+
+    /**
+     * Products file loads. Items are bytes read.
+     */
+    final OperationStats readProducts = new OperationStats("bytes read");
+
+    /**
+     * Accounts file loads. Items are bytes read.
+     */
+    final OperationStats readAccounts = new OperationStats("bytes read");
+
+    /**
+     * The store being measured
+     */
+    private final StoreEngine engine;
+
+    /**
+     * Duration in nanoseconds and size in bytes of the last save and catalog
+     * load. Written by one thread at a time, read by JMX.
+     */
+    private volatile long lastSaveNanos, lastSaveBytes, lastProductsNanos, lastProductsBytes;
+
+    /**
+     * Constructor for a store's metrics
+     *
+     * @param engine the store being measured
+     */
+    public StoreMetrics(StoreEngine engine) {
+
+        this.engine = engine;
+    }
+
+    /**
+     * Registers the store's MBean and one MBean per operation with the
+     * platform MBean server. Failures are logged rather than thrown, as
+     * metrics are not worth stopping the store for.
+     *
+     * @param name the store's name in the MBean names, eg: "desktop"
+     */
+    public void register(String name) {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName("project.src:type=Store,name=" + ObjectName.quote(name)));
+            for (Map.Entry<String, OperationStats> e : getOperations().entrySet()) {
+                server.registerMBean(e.getValue(), new ObjectName("project.src:type=StoreOperation,store="
+                        + ObjectName.quote(name) + ",name=" + e.getKey()));
+            }
+        } catch (JMException ex) {
+            System.out.println("Metrics not registered: " + ex);
+        }
+    }
+
+    /**
+     *
+     * @return every operation's stats, by operation name
+     */
+    public Map<String, OperationStats> getOperations() {
+
+        Map<String, OperationStats> ops = new LinkedHashMap<>();
+        ops.put("login", login);
+        ops.put("search", search);
+        ops.put("suggest", suggest);
+        ops.put("cart", cart);
+        ops.put("purchase", purchase);
+        ops.put("credit", credit);
+        ops.put("saveAccounts", saveAccounts);
+        ops.put("readProducts", readProducts);
+        ops.put("readAccounts", readAccounts);
+        return ops;
+    }
+
+    /**
+     * Records an accounts save
+     *
+     * @param startNanos when it started, from System.nanoTime()
+     * @param bytes the size of the file written
+     */
+    void recordSave(long startNanos, long bytes) {
+
+        saveAccounts.record(startNanos, true, bytes);
+        lastSaveNanos = System.nanoTime() - startNanos;
+        lastSaveBytes = bytes;
+    }
+
+    /**
+     * Records a catalog load
+     *
+     * @param startNanos when it started, from System.nanoTime()
+     * @param bytes the size of the file read
+     */
+    void recordProductsLoad(long startNanos, long bytes) {
+
+        readProducts.record(startNanos, true, bytes);
+        lastProductsNanos = System.nanoTime() - startNanos;
+        lastProductsBytes = bytes;
+    }
+
+    @Override
+    public int getProductCount() {
+
+        return engine.getProducts().size();
+    }
+
+    @Override
+    public int getAccountCount() {
+
+        return engine.getAccounts().size();
+    }
+
+    @Override
+    public int getSessionCount() {
+
+        return engine.getSessionCount();
+    }
+
+    @Override
+    public long getLoginAttempts() {
+
+        return login.getCount();
+    }
+
+    @Override
+    public long getLoginFailures() {
+
+        return login.getFailures();
+    }
+
+    @Override
+    public long getSearches() {
+
+        return search.getCount();
+    }
+
+    @Override
+    public long getSearchResults() {
+
+        return search.getItems();
+    }
+
+    @Override
+    public long getCartMutations() {
+
+        return cart.getCount();
+    }
+
+    @Override
+    public long getPurchases() {
+
+        return purchase.getCount();
+    }
+
+    @Override
+    public long getPurchasesDeclined() {
+
+        return purchase.getFailures();
+    }
+
+    @Override
+    public long getCreditAdditions() {
+
+        return credit.getCount();
+    }
+
+    @Override
+    public int getRankedProductCount() {
+
+        return engine.getRecommender().getRankedProductCount();
+    }
+
+    @Override
+    public int getRankedAccountCount() {
+
+        return engine.getRecommender().getRankedAccountCount();
+    }
+
+    @Override
+    public double getAlsoBoughtHitRatio() {
+
+        Recommender r = engine.getRecommender();
+        return ratio(r.getAlsoBoughtHits(), r.getAlsoBoughtMisses());
+    }
+
+    @Override
+    public double getHomeDealsHitRatio() {
+
+        Recommender r = engine.getRecommender();
+        return ratio(r.getHomeDealsHits(), r.getHomeDealsMisses());
+    }
+
+    @Override
+    public double getLastSaveMillis() {
+
+        return lastSaveNanos / 1e6;
+    }
+
+    @Override
+    public long getLastSaveBytes() {
+
+        return lastSaveBytes;
+    }
+
+    @Override
+    public double getLastProductsLoadMillis() {
+
+        return lastProductsNanos / 1e6;
+    }
+
+    @Override
+    public long getLastProductsLoadBytes() {
+
+        return lastProductsBytes;
+    }
+
+    @Override
+    public long getRecentSearches() {
+
+        return engine.getSearchAnalytics().getSearchCount();
+    }
+
+    @Override
+    public long getRecentZeroResultSearches() {
+
+        return engine.getSearchAnalytics().getZeroResultCount();
+    }
+
+    @Override
+    public String[] getTopSearches() {
+
+        return format(engine.getSearchAnalytics().getTopQueries(TOP_SEARCHES));
+    }
+
+    @Override
+    public String[] getTopZeroResultSearches() {
+
+        return format(engine.getSearchAnalytics().getTopZeroResultQueries(TOP_SEARCHES));
+    }
+
+    @Override
+    public String[] getTopSellers() {
+
+        List<SalesAggregator.ProductSales> sellers = engine.getSales().getTopSellers(TOP_SELLERS);
+        String[] formatted = new String[sellers.size()];
+        for (int i = 0; i < formatted.length; i++) {
+            formatted[i] = sellers.get(i).toString();
+        }
+        return formatted;
+    }
+
+    @Override
+    public long getTodayOrders() {
+
+        List<SalesAggregator.DaySales> days = engine.getSales().getDailySales();
+        return days.get(days.size() - 1).getOrders();
+    }
+
+    @Override
+    public String getTodayRevenue() {
+
+        List<SalesAggregator.DaySales> days = engine.getSales().getDailySales();
+        return Money.ofCents(days.get(days.size() - 1).getRevenueCents()).toString();
+    }
+
+    /**
+     *
+     * @return each query count formatted like "laptop=42"
+     */
+    private static String[] format(List<SearchAnalytics.QueryCount> counts) {
+
+        String[] formatted = new String[counts.size()];
+        for (int i = 0; i < formatted.length; i++) {
+            formatted[i] = counts.get(i).toString();
+        }
+        return formatted;
+    }
+
+    /**
+     *
+     * @return hits / (hits + misses), or 0 if there have been neither
+     */
+    private static double ratio(long hits, long misses) {
+
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,170 @@
+package project.src;
+
+/**
+ * JMX view of a store's sizes, totals and cache statistics. Each operation's
+ * latency is registered as its own OperationStatsMBean. See StoreMetrics.
+ *
+ * @author Josh Howson
+ */
+public interface StoreMetricsMBean {
+
+    /**
+     *
+     * @return the number of products in the catalog
+     */
+    int getProductCount();
+
+    /**
+     *
+     * @return the number of accounts in the directory
+     */
+    int getAccountCount();
+
+    /**
+     *
+     * @return the number of signed in sessions
+     */
+    int getSessionCount();
+
+    /**
+     *
+     * @return the number of logins tried
+     */
+    long getLoginAttempts();
+
+    /**
+     *
+     * @return the number of logins with a wrong username or password
+     */
+    long getLoginFailures();
+
+    /**
+     *
+     * @return the number of searches (pages of results) run
+     */
+    long getSearches();
+
+    /**
+     *
+     * @return the total number of results returned by searches
+     */
+    long getSearchResults();
+
+    /**
+     *
+     * @return the number of adds, removes and quantity changes made to carts
+     */
+    long getCartMutations();
+
+    /**
+     *
+     * @return the number of checkouts and "Buy It Now" purchases tried
+     */
+    long getPurchases();
+
+    /**
+     *
+     * @return the number of purchases refused for lack of credit or stock
+     */
+    long getPurchasesDeclined();
+
+    /**
+     *
+     * @return the number of times credit was added to an account
+     */
+    long getCreditAdditions();
+
+    /**
+     *
+     * @return the number of products with a ranked "also bought" list
+     */
+    int getRankedProductCount();
+
+    /**
+     *
+     * @return the number of accounts with a ranked list of home deals
+     */
+    int getRankedAccountCount();
+
+    /**
+     *
+     * @return the fraction of "also bought" requests served from a ranked
+     * list, between 0 and 1
+     */
+    double getAlsoBoughtHitRatio();
+
+    /**
+     *
+     * @return the fraction of home deal requests served from the account's
+     * own ranked list rather than only best sellers, between 0 and 1
+     */
+    double getHomeDealsHitRatio();
+
+    /**
+     *
+     * @return how long the last accounts save took, in milliseconds
+     */
+    double getLastSaveMillis();
+
+    /**
+     *
+     * @return the size of the accounts file after the last save, in bytes
+     */
+    long getLastSaveBytes();
+
+    /**
+     *
+     * @return how long the last catalog load took, in milliseconds
+     */
+    double getLastProductsLoadMillis();
+
+    /**
+     *
+     * @return the size of the products file at the last load, in bytes
+     */
+    long getLastProductsLoadBytes();
+
+    /**
+     *
+     * @return the number of searches in the last hour
+     */
+    long getRecentSearches();
+
+    /**
+     *
+     * @return the number of searches in the last hour that found nothing
+     */
+    long getRecentZeroResultSearches();
+
+    /**
+     *
+     * @return the most searched queries of the last hour, like "laptop=42"
+     */
+    String[] getTopSearches();
+
+    /**
+     *
+     * @return the most searched queries of the last hour that found nothing,
+     * like "lapptop=7"
+     */
+    String[] getTopZeroResultSearches();
+
+    /**
+     *
+     * @return the products with the most units sold in the last week, like
+     * "Laptop=12 (340 total, $41200.00)"
+     */
+    String[] getTopSellers();
+
+    /**
+     *
+     * @return the number of orders placed today (GMT)
+     */
+    long getTodayOrders();
+
+    /**
+     *
+     * @return the amount charged for today's orders, like "$1234.56"
+     */
+    String getTodayRevenue();
+}
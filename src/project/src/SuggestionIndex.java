@@ -0,0 +1,264 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Autocomplete for the search field. A prefix trie over every word of every
+ * product name, in which each node keeps the ids of the most popular products
+ * with a word starting with that node's prefix. A suggestion only walks one
+ * node per typed character and copies out a list that is already ranked, so
+ * it takes the same few microseconds however big the catalog is.
+ *
+ * The trie is stored in flat arrays instead of node objects: each node is an
+ * index, with its character, first child and next sibling in parallel arrays,
+ * and its ranked ids in one shared array. It is immutable once built, and is
+ * rebuilt from scratch when the catalog or the popularity of its products
+ * changes (see StoreEngine.suggest()).
+ *
+ * @author Josh Howson
+ */
+final class SuggestionIndex {
+
+    /**
+     * The number of ranked products kept at each node. More than are shown,
+     * so that some are left after filtering on the earlier words typed.
+     */
+    static final int TOP_K = 16;
+
+    /**
+     * Splits names and queries into words
+     */
+    private static final Pattern WORDS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Marks a missing child or sibling
+     */
+    private static final int NONE = -1;
+
+    /**
+     * An index with no products
+     */
+    static final SuggestionIndex EMPTY = new SuggestionIndex(Catalog.EMPTY, new long[0]);
+
+    /**
+     * The catalog the index was built from
+     */
+    private final Catalog catalog;
+
+    /**
+     * The character leading to each node. Node 0 is the root.
+     */
+    private char[] labels;
+
+    /**
+     * Each node's first child, or NONE
+     */
+    private int[] firstChild;
+
+    /**
+     * Each node's next sibling, or NONE
+     */
+    private int[] nextSibling;
+
+    /**
+     * Node i's ranked product ids are topIds[topStart[i]] up to (not
+     * including) topIds[topStart[i + 1]]
+     */
+    private final int[] topStart;
+
+    /**
+     * Every node's ranked product ids, most popular first
+     */
+    private final int[] topIds;
+
+    /**
+     * The number of nodes
+     */
+    private int size;
+
+    /**
+     * Builds the index
+     *
+     * @param catalog the products to index
+     * @param weights the popularity of each product, by id. Products past the
+     * end count as zero. Ties are ranked by id.
+     */
+    SuggestionIndex(Catalog catalog, long[] weights) {
+
+        this.catalog = catalog;
+        labels = new char[1024];
+        firstChild = new int[1024];
+        nextSibling = new int[1024];
+        firstChild[0] = NONE;
+        nextSibling[0] = NONE;
+        size = 1;
+
+        //insert the most popular products first, so each node's list is
+        //just the first TOP_K different products to reach it
+        Integer[] order = new Integer[catalog.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byWeight = Long.compare(weight(weights, b), weight(weights, a));
+            return byWeight != 0 ? byWeight : Integer.compare(a, b);
+        });
+
+        //up to TOP_K ids per node while building, compacted afterwards
+        int[] building = new int[1024 * TOP_K];
+        int[] counts = new int[1024];
+        for (int id : order) {
+            for (String word : WORDS.split(catalog.getLowerName(id))) {
+                int node = 0;
+                for (int c = 0; c < word.length(); c++) {
+                    node = child(node, word.charAt(c), true);
+                    if (node * TOP_K >= building.length) {
+                        building = Arrays.copyOf(building, labels.length * TOP_K);
+                        counts = Arrays.copyOf(counts, labels.length);
+                    }
+                    int n = counts[node];
+                    //a product with two words sharing a prefix is only listed once
+                    if (n < TOP_K && (n == 0 || building[node * TOP_K + n - 1] != id)) {
+                        building[node * TOP_K + n] = id;
+                        counts[node]++;
+                    }
+                }
+            }
+        }
+
+        topStart = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            topStart[i + 1] = topStart[i] + counts[i];
+        }
+        topIds = new int[topStart[size]];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(building, i * TOP_K, topIds, topStart[i], counts[i]);
+        }
+        labels = Arrays.copyOf(labels, size);
+        firstChild = Arrays.copyOf(firstChild, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+    }
+
+    /**
+     *
+     * @return the weight of a product, zero if it has none
+     */
+    private static long weight(long[] weights, int id) {
+
+        return id < weights.length ? weights[id] : 0;
+    }
+
+    /**
+     * Finds a node's child for a character
+     *
+     * @param node the parent node
+     * @param c the character
+     * @param create true to add the child if it is missing
+     * @return the child, or NONE if it is missing and create is false
+     */
+    private int child(int node, char c, boolean create) {
+
+        int last = NONE;
+        for (int n = firstChild[node]; n != NONE; n = nextSibling[n]) {
+            if (labels[n] == c) {
+                return n;
+            }
+            last = n;
+        }
+        if (!create) {
+            return NONE;
+        }
+
+        if (size == labels.length) {
+            int length = size * 2;
+            labels = Arrays.copyOf(labels, length);
+            firstChild = Arrays.copyOf(firstChild, length);
+            nextSibling = Arrays.copyOf(nextSibling, length);
+        }
+        int n = size++;
+        labels[n] = c;
+        firstChild[n] = NONE;
+        nextSibling[n] = NONE;
+        if (last == NONE) {
+            firstChild[node] = n;
+        } else {
+            nextSibling[last] = n;
+        }
+        return n;
+    }
+
+    /**
+     *
+     * @return the catalog the index was built from
+     */
+    Catalog getCatalog() {
+
+        return catalog;
+    }
+
+    /**
+     * Suggests products for what has been typed so far. The last word is
+     * completed from the trie; any words before it must also appear in the
+     * product's name.
+     *
+     * @param text the text typed so far, in any case
+     * @param limit the maximum number of products to return
+     * @return up to limit products, most popular first
+     */
+    List<Product> suggest(String text, int limit) {
+
+        ArrayList<Product> results = new ArrayList<>(Math.min(limit, TOP_K));
+        String[] words = WORDS.split(text.toLowerCase().trim());
+        //text of only punctuation, eg: "-", has no words at all
+        if (words.length == 0) {
+            return results;
+        }
+        String prefix = words[words.length - 1];
+        if (prefix.isEmpty()) {
+            return results;
+        }
+
+        int node = 0;
+        for (int c = 0; c < prefix.length() && node != NONE; c++) {
+            node = child(node, prefix.charAt(c), false);
+        }
+        if (node == NONE) {
+            return results;
+        }
+        for (int i = topStart[node]; i < topStart[node + 1] && results.size() < limit; i++) {
+            int id = topIds[i];
+            if (containsWords(catalog.getLowerName(id), words)) {
+                results.add(catalog.get(id));
+            }
+        }
+        return results;
+    }
+
+    /**
+     *
+     * @param name a lowercase product name
+     * @param words the typed words, the last of which is ignored
+     * @return true if the name contains every word but the last
+     */
+    private static boolean containsWords(String name, String[] words) {
+
+        for (int i = 0; i < words.length - 1; i++) {
+            if (!name.contains(words[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return the number of nodes in the trie
+     */
+    int getNodeCount() {
+
+        return size;
+    }
+}
@@ -0,0 +1,510 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Dictionary compression for product descriptions. Descriptions are written
+ * from a small vocabulary of words and boilerplate, so instead of keeping
+ * every description as a String (and a lowercase copy of it for searching),
+ * each is split into tokens of a word and the spaces or punctuation after it,
+ * and stored as the ids of those tokens in a shared dictionary. Ids are
+ * written as variable-length numbers, so the first 127 different tokens take
+ * one byte each and the next sixteen thousand take two.
+ *
+ * The dictionary only grows, and stops growing at MAX_TOKENS. Tokens seen
+ * after that are kept in the text they appear in, character by character, so
+ * a catalog of unique words cannot make the dictionary bigger than the text.
+ *
+ * Searching does not need the text back: a Matcher works out once per search
+ * which tokens can be part of a match, and then only looks up each encoded
+ * token id (see Matcher).
+ *
+ * Encoding is synchronized; decoding and matching take no lock. Text encoded
+ * by one thread can be decoded by any other thread that it was safely
+ * published to (eg: through the store's volatile catalog).
+ *
+ * @author Josh Howson
+ */
+final class TextDictionary {
+
+    /**
+     * The most tokens the dictionary holds
+     */
+    static final int MAX_TOKENS = 1 << 16;
+
+    /**
+     * The dictionary shared by every product's description
+     */
+    static final TextDictionary DESCRIPTIONS = new TextDictionary();
+
+    /**
+     * The id written before a token that is not in the dictionary, followed
+     * by its length and its characters
+     */
+    private static final int LITERAL = 0;
+
+    /**
+     * A hash table of token ids, so a token can be looked up without cutting
+     * it out of its text first. Empty slots hold LITERAL. Guarded by this
+     * object's lock.
+     */
+    private int[] slots = new int[512];
+
+    /**
+     * Each token, by id. encode() writes new tokens into the array readers
+     * already hold, so only ids below published are safe to read.
+     */
+    private volatile String[] tokens = new String[256];
+
+    /**
+     * Each token in lowercase, by id. Like tokens, only ids below published
+     * are safe to read.
+     */
+    private volatile String[] lowerTokens = new String[256];
+
+    /**
+     * The number of ids, including LITERAL, whose token and lowercase token
+     * have both been written. Written last by encode(), so a reader that
+     * reads it first and the arrays after sees every id below it in both.
+     */
+    private volatile int published = 1;
+
+    /**
+     * True once any text has been encoded with tokens that are not in the
+     * dictionary
+     */
+    private volatile boolean literals;
+
+    /**
+     * The number of ids used, including LITERAL. Guarded by this object's
+     * lock.
+     */
+    private int size = 1;
+
+    /**
+     * Encodes a text, adding any new tokens to the dictionary while there is
+     * room
+     *
+     * @param text the text
+     * @return the encoded text
+     */
+    synchronized byte[] encode(String text) {
+
+        Output out = new Output(text.length() / 4 + 4);
+        String[] t = tokens;
+        String[] lower = lowerTokens;
+        boolean added = false;
+        char[] chars = text.toCharArray();
+        int start = 0;
+        while (start < chars.length) {
+            int end = tokenEnd(chars, start);
+            int slot = slot(chars, start, end, t);
+            int id = slots[slot];
+            if (id == LITERAL && size < MAX_TOKENS) {
+                if (size == t.length) {
+                    t = Arrays.copyOf(t, size * 2);
+                    lower = Arrays.copyOf(lower, size * 2);
+                }
+                id = size++;
+                t[id] = new String(chars, start, end - start);
+                lower[id] = t[id].toLowerCase();
+                slots[slot] = id;
+                if (size * 2 > slots.length) {
+                    rehash(t);
+                }
+                added = true;
+            }
+
+            if (id != LITERAL) {
+                out.write(id);
+            } else {
+                literals = true;
+                out.write(LITERAL);
+                out.write(end - start);
+                for (int i = start; i < end; i++) {
+                    out.write(chars[i]);
+                }
+            }
+            start = end;
+        }
+        if (added) {
+            lowerTokens = lower;
+            tokens = t;
+            published = size;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Finds the slot of a token in the hash table
+     *
+     * @param text the text the token is in
+     * @param start where the token starts
+     * @param end where the token ends
+     * @param t the tokens, which may not have been published yet
+     * @return the slot holding the token's id, or the empty slot it would go
+     * in
+     */
+    private int slot(char[] text, int start, int end, String[] t) {
+
+        //the same hash as String.hashCode(), so rehash() can use that
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int mask = slots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == LITERAL || equals(t[id], text, start, end)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     *
+     * @return true if a token is the same as the characters from start to end
+     */
+    private static boolean equals(String token, char[] text, int start, int end) {
+
+        if (token.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (token.charAt(i - start) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the size of the hash table
+     *
+     * @param t the tokens, which may not have been published yet
+     */
+    private void rehash(String[] t) {
+
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 1; id < size; id++) {
+            int hash = t[id].hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] != LITERAL) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    /**
+     * Decodes a text
+     *
+     * @param encoded the text, as returned by encode()
+     * @return the text
+     */
+    String decode(byte[] encoded) {
+
+        return decode(encoded, tokens, new StringBuilder(encoded.length * 6), false).toString();
+    }
+
+    /**
+     * Decodes a text into a buffer
+     *
+     * @param encoded the encoded text
+     * @param t the tokens, read from the volatile field by the caller
+     * @param out the buffer to append to
+     * @param lowercase true to append every token in lowercase
+     * @return out
+     */
+    private StringBuilder decode(byte[] encoded, String[] t, StringBuilder out, boolean lowercase) {
+
+        String[] lower = lowerTokens;
+        int[] at = {0};
+        while (at[0] < encoded.length) {
+            int id = read(encoded, at);
+            if (id != LITERAL) {
+                out.append(lowercase ? lower[id] : t[id]);
+            } else {
+                String literal = readLiteral(encoded, at);
+                out.append(lowercase ? literal.toLowerCase() : literal);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Creates a matcher for a query
+     *
+     * @param lowerQuery the query, in lowercase
+     * @return a matcher for texts encoded by this dictionary before now
+     */
+    Matcher matcher(String lowerQuery) {
+
+        return new Matcher(lowerQuery);
+    }
+
+    /**
+     *
+     * @return the number of tokens in the dictionary
+     */
+    synchronized int getTokenCount() {
+
+        return size - 1;
+    }
+
+    /**
+     * Finds where a token ends: after a run of letters and digits and the run
+     * of other characters that follows it
+     *
+     * @param text the text
+     * @param start where the token starts
+     * @return the index just past the token
+     */
+    private static int tokenEnd(char[] text, int start) {
+
+        int i = start;
+        while (i < text.length && Character.isLetterOrDigit(text[i])) {
+            i++;
+        }
+        while (i < text.length && !Character.isLetterOrDigit(text[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Reads a variable-length number: seven bits per byte, low bits first,
+     * with the top bit set on every byte but the last
+     *
+     * @param in the bytes
+     * @param at the position to read from, moved past the number
+     * @return the number
+     */
+    private static int read(byte[] in, int[] at) {
+
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in[at[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Reads the length and characters of a literal token
+     */
+    private static String readLiteral(byte[] in, int[] at) {
+
+        int length = read(in, at);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) read(in, at);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Checks encoded texts for a query, as String.contains() would on their
+     * lowercase text. Made for one search, on one thread.
+     *
+     * The query is split into pieces where the text would be split into
+     * tokens, at each start of a word after spaces or punctuation. A text
+     * splits at the same places, so the query is in the text if some token
+     * ends with the first piece, the tokens after it are the middle pieces
+     * and the token after those starts with the last piece. A query of one
+     * piece just has to be inside a token. Which tokens do each of these is
+     * worked out once, so checking a text only looks up its token ids.
+     */
+    final class Matcher {
+
+        /**
+         * The query, in lowercase
+         */
+        private final String query;
+
+        /**
+         * For each piece of the query, whether each token id can be in that
+         * place of a match: matches[piece][id]
+         */
+        private final boolean[][] matches;
+
+        /**
+         * The number of ids when the matcher was created. Texts encoded since
+         * may have ids it has not checked.
+         */
+        private final int known;
+
+        /**
+         * True if the query has too many pieces to track, so texts are
+         * decoded and searched instead
+         */
+        private final boolean decodeAll;
+
+        /**
+         * True if no text encoded before the matcher can contain the query,
+         * because some piece of it fits no token and no text has literals
+         */
+        private final boolean none;
+
+        /**
+         * Reused to hold texts that have to be decoded
+         */
+        private final StringBuilder buffer = new StringBuilder(1024);
+
+        private Matcher(String query) {
+
+            this.query = query;
+            //published before the arrays, see published
+            this.known = published;
+            boolean anyLiterals = literals;
+            String[] lower = lowerTokens;
+            ArrayList<String> pieces = new ArrayList<>();
+            char[] chars = query.toCharArray();
+            for (int start = 0; start < chars.length;) {
+                int end = tokenEnd(chars, start);
+                pieces.add(query.substring(start, end));
+                start = end;
+            }
+
+            int k = pieces.size();
+            decodeAll = k > Long.SIZE;
+            matches = new boolean[decodeAll ? 0 : k][known];
+            for (int id = 1; k > 0 && !decodeAll && id < known; id++) {
+                String token = lower[id];
+                if (k == 1) {
+                    matches[0][id] = token.contains(query);
+                    continue;
+                }
+                matches[0][id] = token.endsWith(pieces.get(0));
+                for (int p = 1; p < k - 1; p++) {
+                    matches[p][id] = token.equals(pieces.get(p));
+                }
+                matches[k - 1][id] = token.startsWith(pieces.get(k - 1));
+            }
+
+            boolean unmatched = false;
+            for (boolean[] piece : matches) {
+                int id = 1;
+                while (id < piece.length && !piece[id]) {
+                    id++;
+                }
+                unmatched |= id == piece.length;
+            }
+            none = unmatched && !anyLiterals;
+        }
+
+        /**
+         *
+         * @param encoded a text encoded before the matcher was created
+         * @return true if the text's lowercase contains the query
+         */
+        boolean contains(byte[] encoded) {
+
+            if (none) {
+                return false;
+            }
+            if (decodeAll) {
+                return decodedContains(encoded);
+            }
+            int k = matches.length;
+            if (k == 0) {
+                return true;
+            }
+
+            //bit p is set if the tokens just read match pieces 0 to p of a
+            //match that has not finished yet
+            boolean[] first = matches[0];
+            boolean[] last = matches[k - 1];
+            long partial = 0;
+            for (int i = 0; i < encoded.length;) {
+                //read() inline, as this runs for every token of every product
+                int id = encoded[i++];
+                if (id < 0) {
+                    id &= 0x7F;
+                    int shift = 7;
+                    byte b;
+                    do {
+                        b = encoded[i++];
+                        id |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                }
+                if (id == LITERAL || id >= known) {
+                    //a word the dictionary had no room for, or one added
+                    //since, so search the text
+                    return decodedContains(encoded);
+                }
+
+                if (k == 1) {
+                    if (first[id]) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (partial != 0 && (partial & (1L << (k - 2))) != 0 && last[id]) {
+                    return true;
+                }
+                long next = first[id] ? 1 : 0;
+                for (long rest = partial & ~(1L << (k - 2)); rest != 0; rest &= rest - 1) {
+                    int p = Long.numberOfTrailingZeros(rest) + 1;
+                    if (matches[p][id]) {
+                        next |= 1L << p;
+                    }
+                }
+                partial = next;
+            }
+            return false;
+        }
+
+        /**
+         * Checks a text the slow way, by decoding it
+         */
+        private boolean decodedContains(byte[] encoded) {
+
+            buffer.setLength(0);
+            return decode(encoded, tokens, buffer, true).indexOf(query) >= 0;
+        }
+    }
+
+    /**
+     * A growable buffer of variable-length numbers
+     */
+    private static final class Output {
+
+        private byte[] bytes;
+
+        private int length;
+
+        Output(int capacity) {
+
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * Appends a number that is not negative
+         */
+        void write(int value) {
+
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            while (value >= 0x80) {
+                bytes[length++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
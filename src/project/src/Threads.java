@@ -0,0 +1,37 @@
+package project.src;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors used to run many blocking tasks at once, such as HTTP
+ * requests or simulated shoppers. Because this class will not be
+ * instantiated, all of its methods are static.
+ *
+ * @author Josh Howson
+ */
+public class Threads {
+
+    /**
+     * Creates an executor that runs every task on a thread of its own: a
+     * virtual thread when the JVM supports them (Java 21 and up), otherwise a
+     * daemon thread from a cached pool. Found by reflection so the app still
+     * builds and runs on Java 8.
+     *
+     * @param name the name given to pool threads
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            System.out.println("Virtual threads unavailable, using a thread pool");
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
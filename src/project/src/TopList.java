@@ -0,0 +1,172 @@
+package project.src;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A list of at most a fixed number of product ids, ranked by their counts
+ * from highest to lowest. Counts only ever go up, so an update just moves an
+ * id towards the front of the list, which takes O(k). If counts can go down
+ * the list has to be cleared and filled again.
+ *
+ * Not thread-safe.
+ *
+ * @author Josh Howson
+ */
+final class TopList {
+
+    /**
+     * The ranked product ids
+     */
+    private final int[] ids;
+
+    /**
+     * The count of each id in ids
+     */
+    private final int[] counts;
+
+    /**
+     * The number of ids in the list
+     */
+    private int size;
+
+    /**
+     * Constructor for an empty list
+     *
+     * @param capacity the most ids the list keeps
+     */
+    TopList(int capacity) {
+
+        ids = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Records the new count of a product, adding it to the list if the count
+     * is high enough and moving it to its ranked position.
+     *
+     * @param id the product id
+     * @param count the product's new count
+     */
+    void update(int id, int count) {
+
+        int i = indexOf(id);
+        if (i < 0) {
+            if (size < ids.length) {
+                i = size++;
+            } else if (count > counts[size - 1]) {
+                //knock the lowest ranked product off the list
+                i = size - 1;
+            } else {
+                return;
+            }
+            ids[i] = id;
+        }
+        counts[i] = count;
+
+        //move towards the front until the list is ranked again
+        while (i > 0 && counts[i - 1] < counts[i]) {
+            swap(i, i - 1);
+            i--;
+        }
+    }
+
+    /**
+     * Removes a product from the list if it is in it
+     *
+     * @param id the product id to remove
+     */
+    void remove(int id) {
+
+        int i = indexOf(id);
+        if (i >= 0) {
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Empties the list
+     */
+    void clear() {
+
+        size = 0;
+    }
+
+    /**
+     *
+     * @return the number of ids in the list
+     */
+    int size() {
+
+        return size;
+    }
+
+    /**
+     *
+     * @param i the rank, from 0
+     * @return the id at that rank
+     */
+    int getId(int i) {
+
+        return ids[i];
+    }
+
+    /**
+     *
+     * @param i the rank, from 0
+     * @return the count of the id at that rank
+     */
+    int getCount(int i) {
+
+        return counts[i];
+    }
+
+    /**
+     * Looks up the products at the front of the list
+     *
+     * @param engine the store to look the products up in
+     * @param count the maximum number of products to return
+     * @param exclude ids of products to skip over, may be null
+     * @return up to count products in ranked order
+     */
+    ArrayList<Product> products(StoreEngine engine, int count, BitSet exclude) {
+
+        ArrayList<Product> result = new ArrayList<>();
+        for (int i = 0; i < size && result.size() < count; i++) {
+            if (exclude == null || !exclude.get(ids[i])) {
+                result.add(engine.getProduct(ids[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param id the product id to look for
+     * @return the index of the id, or -1 if it is not in the list
+     */
+    private int indexOf(int id) {
+
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Swaps two entries of the list
+     */
+    private void swap(int i, int j) {
+
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        int count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+}